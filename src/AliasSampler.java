@@ -0,0 +1,156 @@
+/**
+ * This class picks one of a fixed set of rooms at random, each with its own
+ * weight, in the same small amount of time however many rooms there are. It
+ * uses Vose's alias method: every room gets a slot, and each slot holds its
+ * own room for part of the time and another room, its alias, for the rest.
+ * Picking a room takes one random slot and one random fraction, both cut
+ * from a single random long.
+ *
+ * A sampler cannot be changed once built, so it can be shared by any number
+ * of threads, each drawing from its own random numbers.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.function.IntToDoubleFunction;
+import java.util.random.RandomGenerator;
+
+public class AliasSampler
+{
+    // the room each slot holds for part of the time
+    private int[] rooms;
+    // the room each slot holds for the rest of the time
+    private int[] aliases;
+    // how much of the time each slot holds its own room, out of 2^32
+    private long[] thresholds;
+
+    /**
+     * Build a sampler over the given rooms. A room is picked with a
+     * probability in proportion to its weight.
+     *
+     * @param rooms The ids of the rooms that can be picked
+     * @param weights The weight of each room, none of them negative
+     * @throws IllegalArgumentException if there are no rooms, the numbers of
+     *         rooms and weights differ, or the weights are not all usable
+     */
+    public AliasSampler(int[] rooms, double[] weights)
+    {
+        int n = rooms.length;
+        if (n == 0 || weights.length != n) {
+            throw new IllegalArgumentException("Need one weight for each of at least one room");
+        }
+        double total = 0;
+        for (double weight : weights) {
+            if (!(weight >= 0) || Double.isInfinite(weight)) {
+                throw new IllegalArgumentException("Bad weight: " + weight);
+            }
+            total += weight;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("The weights add up to nothing");
+        }
+
+        this.rooms = rooms.clone();
+        aliases = new int[n];
+        thresholds = new long[n];
+        // each slot's share, where an average slot has a share of 1
+        double[] share = new double[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smallCount = 0, largeCount = 0;
+        for (int i = 0; i < n; i++) {
+            share[i] = weights[i] * n / total;
+            if (share[i] < 1) {
+                small[smallCount++] = i;
+            } else {
+                large[largeCount++] = i;
+            }
+        }
+        // fill each small slot up to 1 with part of a large one
+        while (smallCount > 0 && largeCount > 0) {
+            int s = small[--smallCount];
+            int l = large[--largeCount];
+            thresholds[s] = toThreshold(share[s]);
+            aliases[s] = this.rooms[l];
+            share[l] -= 1 - share[s];
+            if (share[l] < 1) {
+                small[smallCount++] = l;
+            } else {
+                large[largeCount++] = l;
+            }
+        }
+        // what is left over is 1, give or take rounding
+        while (largeCount > 0) {
+            int l = large[--largeCount];
+            thresholds[l] = 1L << 32;
+            aliases[l] = this.rooms[l];
+        }
+        while (smallCount > 0) {
+            int s = small[--smallCount];
+            thresholds[s] = 1L << 32;
+            aliases[s] = this.rooms[s];
+        }
+    }
+
+    /**
+     * Build a sampler over the rooms of a world that pass a filter.
+     *
+     * @param world The world
+     * @param filter Whether the room with a given id can be picked
+     * @param weight The weight of the room with a given id
+     * @return The sampler
+     * @throws IllegalArgumentException if no room passes the filter
+     */
+    public static AliasSampler of(World world, IntPredicate filter, IntToDoubleFunction weight)
+    {
+        int size = world.size();
+        int[] rooms = new int[size];
+        double[] weights = new double[size];
+        int count = 0;
+        for (int id = 0; id < size; id++) {
+            if (filter.test(id)) {
+                rooms[count] = id;
+                weights[count] = weight.applyAsDouble(id);
+                count++;
+            }
+        }
+        return new AliasSampler(Arrays.copyOf(rooms, count), Arrays.copyOf(weights, count));
+    }
+
+    /**
+     * Pick a room.
+     *
+     * @param random Where the random numbers come from
+     * @return The id of the room
+     */
+    public int sample(RandomGenerator random)
+    {
+        long r = random.nextLong();
+        int slot = (int) (((r >>> 32) * rooms.length) >>> 32);
+        return ((r & 0xFFFFFFFFL) < thresholds[slot]) ? rooms[slot] : aliases[slot];
+    }
+
+    /**
+     * Returns the number of rooms that can be picked.
+     *
+     * @return The number of rooms
+     */
+    public int size()
+    {
+        return rooms.length;
+    }
+
+    /**
+     * Turns a share of a slot into a threshold out of 2^32.
+     *
+     * @param share The share, from 0 to 1
+     * @return The threshold
+     */
+    private static long toThreshold(double share)
+    {
+        return Math.min(1L << 32, Math.round(share * (1L << 32)));
+    }
+}
@@ -1,14 +1,26 @@
-
 /**
  * This class represents a specialized item in the game that can be charged and used
  * to teleport the player to the room where it was initially charged. The beamer can
  * be charged once per use and must be fired to initiate the teleportation process.
  *
+ * A charged beamer holds the room it was charged in, so each beamer takes whoever
+ * fires it back to its own room, however many beamers a player has charged. It
+ * holds the room by its id in its world, so a beamer lying about does not keep a
+ * room of a stored world in memory.
+ *
+ * A beamer never changes once made: charging or firing it gives a new beamer to
+ * carry in its place. A snapshot holding a beamer therefore always sees the beamer
+ * as it was when the snapshot was taken.
+ *
  * @author Lehem Temesgen
  * @version 03/14/2024
  */
 public class Beamer extends Item {
-    private boolean charged;
+    // the world and id of the room the beamer was charged in,
+    // or null and NO_ROOM if it is not charged
+    private final World world;
+    private final int destination;
+    private static final int NO_ROOM = -1;
     
     /**
      * Create a new Beamer item.
@@ -19,20 +31,46 @@ public class Beamer extends Item {
      */
     public Beamer(String description, double weight, String name) {
         super(description, weight, name);
-        charged = false;
+        world = null;
+        destination = NO_ROOM;
+    }
+    
+    /**
+     * Create a new Beamer item of the given type, such as the shared type
+     * of a world.
+     *
+     * @param type The kind of beamer
+     */
+    public Beamer(ItemType type) {
+        this(type, null, NO_ROOM);
     }
     
     /**
-     * Charges the beamer.
+     * Create a beamer of the given type, such as one charged in a room that
+     * is not in memory.
      *
-     * @return True if the beamer is successfully charged, false otherwise.
+     * @param type The kind of beamer
+     * @param world The world of the room the beamer was charged in, or null if it is not charged
+     * @param destination The id of the room the beamer was charged in
      */
-    public boolean charge() {
-        if (!charged) {
-            charged = true;
-            return true;
+    Beamer(ItemType type, World world, int destination) {
+        super(type);
+        this.world = world;
+        this.destination = (world == null) ? NO_ROOM : destination;
+    }
+    
+    /**
+     * Charges the beamer in a room, which firing it will go back to.
+     *
+     * @param room The room the beamer is charged in
+     * @return The charged beamer to carry in the place of this one, or null if
+     *         this one is already charged.
+     */
+    public Beamer charge(Room room) {
+        if (world == null) {
+            return new Beamer(getType(), room.getWorld(), room.getId());
         } else {
-            return false;
+            return null;
         }
     }
     
@@ -42,20 +80,49 @@ public class Beamer extends Item {
      * @return True if the Beamer is charged, false otherwise.
      */
     public boolean isCharged() {
-        return charged;
+        return world != null;
     } 
     
+    /**
+     * Returns the room the beamer was charged in.
+     *
+     * @return The room firing the beamer goes to, or null if it is not charged.
+     */
+    public Room getDestination() {
+        return (world == null) ? null : world.getRoom(destination);
+    }
+    
+    /**
+     * Returns the id of the room the beamer was charged in, without finding
+     * the room itself.
+     *
+     * @return The id of the room in its world, or -1 if it is not charged.
+     */
+    int getDestinationId() {
+        return destination;
+    }
+    
     /**
      * Fires the beamer.
      * 
-     * @return true if the beamer is fired, false if its not charged.
+     * @return The spent beamer to carry in the place of this one, or null if
+     *         this one is not charged.
      */
-    public boolean fire() {
-        if (charged) {
-            charged = false; // Reset charged status after firing
-            return true; // succesfully fired and teleported
+    public Beamer fire() {
+        if (world != null) {
+            return new Beamer(getType(), null, NO_ROOM); // succesfully fired and teleported
         } else {
-            return false; // not charged
+            return null; // not charged
         }
     }
+    
+    /**
+     * A beamer is charged or not on its own, so it is never stacked with
+     * other beamers.
+     *
+     * @return false
+     */
+    protected boolean isStackable() {
+        return false;
+    }
 }
@@ -0,0 +1,162 @@
+/**
+ * The test class BeamerTest. It checks that every charged beamer takes
+ * whoever fires it back to the room it was charged in, even when a player
+ * carries more than one, when it was charged by another player, and after
+ * the game is restored from a checkpoint.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BeamerTest
+{
+    private Game game;
+    private Session player;
+    private StringWriter output;    // what the player was told
+    private Path file;              // a checkpoint file
+
+    /**
+     * Start a game with one player outside the university.
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        game = new Game();
+        output = new StringWriter();
+        player = game.newSession(new BufferedSink(output, false));
+        file = Files.createTempFile("beamer", ".ckpt");
+    }
+
+    /**
+     * Delete the checkpoint file.
+     */
+    @After
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Process the commands on each line for a player.
+     *
+     * @param game The game
+     * @param session The player
+     * @param lines The commands
+     */
+    private static void play(Game game, Session session, String... lines)
+    {
+        for (String line : lines) {
+            Parser parser = new Parser(new StringReader(line + "\n"), null, game.getCommandWords());
+            game.processCommand(session, parser.getCommand());
+        }
+        session.flush();
+    }
+
+    /**
+     * Charge the beamer of the theatre and then that of the pub, and walk
+     * to the lab.
+     */
+    private void chargeBoth()
+    {
+        play(game, player, "go east", "take cookie", "eat", "take beamer", "charge",
+             "go west", "go west", "take cookie", "eat", "take beamer", "charge",
+             "go east", "go south");
+        assertEquals("lab", player.getCurrentRoom().getName());
+        assertEquals(2, player.getInventory().size());
+    }
+
+    /**
+     * Two beamers charged in different rooms each go back to their own room.
+     */
+    @Test
+    public void testTwoBeamers()
+    {
+        chargeBoth();
+        play(game, player, "fire");
+        assertEquals("theatre", player.getCurrentRoom().getName());
+        play(game, player, "fire");
+        assertEquals("pub", player.getCurrentRoom().getName());
+        output.getBuffer().setLength(0);
+        play(game, player, "fire");
+        assertEquals("pub", player.getCurrentRoom().getName());
+        assertTrue(output.toString().contains("not charged"));
+    }
+
+    /**
+     * The beamers are charged for the same rooms after a restore.
+     */
+    @Test
+    public void testTwoBeamersRestored() throws IOException
+    {
+        chargeBoth();
+        new Checkpointer(game, file).close();
+        Game restored = new Game();
+        restored.restore(file);
+        Session again = restored.getSession(player.getId());
+        again.setOutput(NullSink.INSTANCE);
+        assertEquals("lab", again.getCurrentRoom().getName());
+        play(restored, again, "fire");
+        assertEquals("theatre", again.getCurrentRoom().getName());
+        play(restored, again, "fire");
+        assertEquals("pub", again.getCurrentRoom().getName());
+    }
+
+    /**
+     * A beamer charged by one player and picked up by another takes the
+     * other player to where it was charged, and path knows it.
+     */
+    @Test
+    public void testChargedByAnotherPlayer()
+    {
+        play(game, player, "go east", "take cookie", "eat", "take beamer", "charge",
+             "drop beamer", "go west");
+        StringWriter otherOutput = new StringWriter();
+        Session other = game.newSession(new BufferedSink(otherOutput, false));
+        play(game, other, "take cookie", "go east", "eat", "take beamer", "go west", "go south");
+        assertEquals("lab", other.getCurrentRoom().getName());
+        otherOutput.getBuffer().setLength(0);
+        play(game, other, "path theatre");
+        assertTrue(otherOutput.toString().contains("fire"));
+        play(game, other, "fire");
+        assertEquals("theatre", other.getCurrentRoom().getName());
+    }
+
+    /**
+     * Charging and firing give a new beamer, leaving the old one as it was,
+     * and a beamer cannot be charged twice or fired uncharged.
+     */
+    @Test
+    public void testBeamerNeverChanges()
+    {
+        Room theatre = game.getWorld().getRoom("theatre");
+        Beamer beamer = new Beamer("a beamer", 1.0, "Beamer");
+        Beamer charged = beamer.charge(theatre);
+        assertNotNull(charged);
+        assertFalse(beamer.isCharged());
+        assertNull(beamer.getDestination());
+        assertSame(theatre, charged.getDestination());
+        assertNull(charged.charge(theatre));
+        assertNull(beamer.fire());
+
+        Beamer spent = charged.fire();
+        assertNotNull(spent);
+        assertFalse(spent.isCharged());
+        assertTrue(charged.isCharged());
+    }
+}
@@ -0,0 +1,501 @@
+/**
+ * This class measures how fast the main parts of the game run: parsing,
+ * dispatching commands with and without metrics, moving between rooms
+ * through their exit maps and through an ExitGraph, finding items and
+ * taking them all at once, transporting, finding routes, whole scripted
+ * playthroughs, taking snapshots for checkpoints, journaling commands and
+ * replaying them to recover a game, and many players fighting over the
+ * same items at once.
+ * The worlds used are made of copies of the university campus, from the
+ * single built-in campus of 6 rooms up to a world of a million rooms, so
+ * that a change that slows down big worlds shows up as well as one that
+ * slows down every command.
+ *
+ * Every benchmark is warmed up before it is measured, and the median time
+ * per operation of several measured rounds is reported. That parsing
+ * allocates nothing once warmed up is checked by ParserTest.
+ *
+ * The project has no build tool to bring in a harness such as JMH, so this
+ * is a plain program that does the warming up and the rounds itself. To
+ * catch a change that slows things down, the times can be kept in a
+ * baseline file: when the file is given and does not exist yet, the times
+ * of the run are written to it, and when it does exist, the run fails if
+ * any benchmark is more than REGRESSION_LIMIT times slower than it was, or
+ * than the limit given. Times of one benchmark can vary a good deal from
+ * one run to the next on a busy machine, so the limit is not tight.
+ *
+ * Usage: java Benchmarks [largest world size [baseline file [limit]]]
+ * (a world of a million rooms needs a heap of a few gigabytes, e.g. -Xmx4g)
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+public class Benchmarks
+{
+    // the number of rounds run before measuring, and measured
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+    // the number of operations in each round
+    private static final int OPERATIONS = 200000;
+    // how many times slower than its baseline a benchmark may run before the run fails
+    public static final double REGRESSION_LIMIT = 1.5;
+
+    // the commands of the scripted playthrough
+    private static final String[] SCRIPT = {
+        "look", "go east", "take cookie", "eat", "take beamer", "charge",
+        "go west", "go south", "go east", "fire", "back", "stackBack",
+        "drop", "go west", "go west", "go east", "help", "dance"
+    };
+
+    // results are added here so that the work cannot be optimised away
+    private static volatile long consumed;
+    // the time per operation of each benchmark run, by name and world size
+    private static Properties times = new Properties();
+
+    /**
+     * Something that is measured, one operation at a time.
+     */
+    private interface Operation
+    {
+        /**
+         * Run one operation.
+         *
+         * @param i The number of the operation in its round
+         * @return A value depending on the work done
+         */
+        long run(int i);
+    }
+
+    /**
+     * Run every benchmark, for worlds up to the given size, and compare
+     * the times with a baseline file if one is given.
+     *
+     * @param args The largest world size, in rooms, defaulting to a million,
+     *        the baseline file and how many times slower than it is allowed
+     * @throws IOException if the journal or the baseline file cannot be written
+     * @throws IllegalStateException if a benchmark is slower than its baseline allows
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int largest = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+        System.out.printf("%-28s %10s %12s%n", "benchmark", "rooms", "ns/op");
+
+        benchmarkParser();
+        for (int rooms = 6; rooms <= largest; rooms *= 10) {
+            Game game = campusWorld(rooms / 6);
+            benchmarkWorld(game);
+            benchmarkRoutes(game);
+            if (rooms < largest && rooms * 10 > largest) {
+                rooms = largest / 10;
+            }
+        }
+        benchmarkItems(10);
+        benchmarkItems(10000);
+        benchmarkContention(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        benchmarkJournal();
+        if (args.length > 1) {
+            double limit = (args.length > 2) ? Double.parseDouble(args[2]) : REGRESSION_LIMIT;
+            checkBaseline(Paths.get(args[1]), limit);
+        }
+    }
+
+    /**
+     * Compare the times of this run with those in a baseline file, or write
+     * them to the file if it does not exist yet.
+     *
+     * @param path The baseline file
+     * @param limit How many times slower than its baseline a benchmark may run
+     * @throws IOException if the file cannot be read or written
+     * @throws IllegalStateException if a benchmark is slower than its baseline allows
+     */
+    private static void checkBaseline(Path path, double limit) throws IOException
+    {
+        if (!Files.exists(path)) {
+            try (Writer out = Files.newBufferedWriter(path)) {
+                times.store(out, "Benchmarks baseline, ns/op");
+            }
+            System.out.println("Baseline written to " + path);
+            return;
+        }
+        Properties baseline = new Properties();
+        try (Reader in = Files.newBufferedReader(path)) {
+            baseline.load(in);
+        }
+        StringBuilder slower = new StringBuilder();
+        for (String name : times.stringPropertyNames()) {
+            String before = baseline.getProperty(name);
+            if (before == null) {
+                continue;
+            }
+            double was = Double.parseDouble(before);
+            double now = Double.parseDouble(times.getProperty(name));
+            if (now > was * limit) {
+                slower.append(String.format("%n    %s: %.1f ns/op, was %.1f", name, now, was));
+            }
+        }
+        if (slower.length() > 0) {
+            throw new IllegalStateException("Slower than the baseline in " + path + ":" + slower);
+        }
+        System.out.println("No benchmark is slower than the baseline in " + path);
+    }
+
+    /**
+     * Build a world of copies of the university campus. The entrance of
+     * each copy is linked "up" to the next copy and "down" to the previous.
+     *
+     * @param copies The number of copies of the campus
+     * @return A game played in the world
+     */
+    public static Game campusWorld(int copies)
+    {
+        World world = new World();
+        Room start = Game.createRooms(world, "");
+        Room previous = start;
+        for (int i = 1; i < copies; i++) {
+            Room entrance = Game.createRooms(world, "#" + i);
+            previous.setExit("up", entrance);
+            entrance.setExit("down", previous);
+            previous = entrance;
+        }
+        return new Game(world, start);
+    }
+
+    /**
+     * Measure the parser on the commands of the scripted playthrough.
+     */
+    private static void benchmarkParser()
+    {
+        String input = script(OPERATIONS);
+        CommandWords commands = new CommandWords();
+        Parser[] parser = new Parser[1];
+        measure("Parser.getCommand", 0, () -> {
+            parser[0] = new Parser(new StringReader(input), null, commands);
+        }, i -> parser[0].getCommand().getIndex());
+    }
+
+    /**
+     * Measure dispatch, movement, descriptions, transporting and the
+     * scripted playthrough in one world.
+     *
+     * @param game A game played in the world
+     */
+    private static void benchmarkWorld(Game game)
+    {
+        World world = game.getWorld();
+        int rooms = world.size();
+        Random random = new Random(42);
+        int[] ids = new int[OPERATIONS];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = random.nextInt(rooms);
+        }
+        String[] directions = { "east", "west", "north", "south", "up", "down" };
+
+        Session session = game.newSession(NullSink.INSTANCE);
+        Command help = new Command(CommandWord.HELP, null);
+        Command unknown = new Command(null, null);
+        measure("Game.processCommand", rooms, null,
+            i -> game.processCommand(session, (i & 1) == 0 ? help : unknown) ? 1 : 0);
+        Metrics metrics = new Metrics(game);
+        measure("Game.processCommand (metrics)", rooms, null,
+            i -> game.processCommand(session, (i & 1) == 0 ? help : unknown) ? 1 : 0);
+        game.removeListener(metrics);
+
+        measure("Room.getExit", rooms, null, i -> {
+            Room exit = world.getRoom(ids[i]).getExit(directions[i % directions.length]);
+            return (exit == null) ? 0 : exit.getId();
+        });
+        ExitGraph graph = ExitGraph.of(world);
+        int[] directionIds = new int[directions.length];
+        for (int i = 0; i < directions.length; i++) {
+            directionIds[i] = graph.getDirection(directions[i]);
+        }
+        measure("ExitGraph.getExit", rooms, null,
+            i -> graph.getExit(ids[i], directionIds[i % directionIds.length]));
+        measure("Room.getLongDescription", rooms, null,
+            i -> world.getRoom(ids[i]).getLongDescription().length());
+
+        TransporterRoom transporter = (TransporterRoom) world.getRoom("transporter");
+        SplittableRandom seeded = new SplittableRandom(42);
+        AliasSampler campus = transporter.getDestinations();
+        // transport to any room of the world
+        transporter.setDestinations(null);
+        measure("TransporterRoom.getExit", rooms, null,
+            i -> transporter.getExit("east", seeded).getId());
+        // transport only to ordinary rooms, some more likely than others
+        transporter.setDestinations(AliasSampler.of(world,
+            id -> !(world.getRoom(id) instanceof TransporterRoom), id -> 1 + id % 3));
+        measure("TransporterRoom (weighted)", rooms, null,
+            i -> transporter.getExit("east", seeded).getId());
+        transporter.setDestinations(campus);
+
+        String input = script(OPERATIONS);
+        Session[] player = new Session[1];
+        Parser[] parser = new Parser[1];
+        measure("scripted playthrough", rooms, () -> {
+            if (player[0] != null) {
+                game.endSession(player[0]);
+            }
+            player[0] = game.newSession(NullSink.INSTANCE);
+            parser[0] = new Parser(new StringReader(input), null, game.getCommandWords());
+        }, i -> game.processCommand(player[0], parser[0].getCommand()) ? 1 : 0);
+
+        // each snapshot holds the rooms changed by one command of the playthrough,
+        // and how long it takes is how long commands are paused by a checkpoint
+        measure("Game.takeSnapshot", rooms, 2000, () -> {
+            if (player[0] != null) {
+                game.endSession(player[0]);
+            }
+            player[0] = game.newSession(NullSink.INSTANCE);
+            parser[0] = new Parser(new StringReader(input), null, game.getCommandWords());
+        }, i -> {
+            game.processCommand(player[0], parser[0].getCommand());
+            return game.takeSnapshot().getRoomCount();
+        });
+    }
+
+    /**
+     * Measure finding routes between random rooms, with a search from both
+     * ends and with the landmark index.
+     *
+     * @param game A game played in the world
+     */
+    private static void benchmarkRoutes(Game game)
+    {
+        World world = game.getWorld();
+        int rooms = world.size();
+        int operations = 2000;
+        Random random = new Random(42);
+        int[] from = new int[operations];
+        int[] to = new int[operations];
+        for (int i = 0; i < operations; i++) {
+            from[i] = random.nextInt(rooms);
+            to[i] = random.nextInt(rooms);
+        }
+        RouteFinder finder = new RouteFinder(world.getExitGraph(), world.getTransporters());
+        measure("RouteFinder (both ways)", rooms, operations, null, i -> {
+            int[] route = finder.findRoute(from[i], to[i]);
+            return (route == null) ? -1 : route.length;
+        });
+        finder.buildLandmarks(8);
+        measure("RouteFinder (landmarks)", rooms, operations, null, i -> {
+            int[] route = finder.findRoute(from[i], to[i]);
+            return (route == null) ? -1 : route.length;
+        });
+    }
+
+    /**
+     * Measure finding items by name in a room holding many items, and a
+     * player taking all of them at once and dropping them again.
+     *
+     * @param count The number of items in the room
+     */
+    private static void benchmarkItems(int count)
+    {
+        World world = new World();
+        Room room = new Room(world, "storeroom", "in a storeroom");
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = "Thing" + i;
+            room.addItem(new Item("a thing", 1.0, names[i]));
+        }
+        measure("Room.itemInRoom (" + count + " items)", 1, null,
+            i -> room.itemInRoom(names[i % count]).getName().length());
+
+        // light enough that all of them can be carried at once
+        for (Item item : room.getItemList()) {
+            room.removeItem(item);
+            room.addItem(new Item("a feather", 0.001, item.getName()));
+        }
+        Game game = new Game(world, room);
+        Session player = game.newSession(NullSink.INSTANCE);
+        player.addPickups(Integer.MAX_VALUE / 2);
+        Command takeAll = new Command(CommandWord.TAKE, "all");
+        Command dropAll = new Command(CommandWord.DROP, "all");
+        measure("take all/drop all (" + count + ")", 1, OPERATIONS / count, null, i -> {
+            game.processCommand(player, ((i & 1) == 0) ? takeAll : dropAll);
+            return player.getInventory().size();
+        });
+    }
+
+    /**
+     * Measure players taking and dropping cookies in one room, all at once
+     * on their own threads. There are fewer cookies than players, so they
+     * are always fighting over them. GameTest checks that no cookie is
+     * duplicated or lost on the way.
+     *
+     * @param threads The number of players
+     */
+    private static void benchmarkContention(int threads)
+    {
+        World world = new World();
+        Room room = new Room(world, "canteen", "in the canteen");
+        int cookies = threads / 2 + 1;
+        for (int i = 0; i < cookies; i++) {
+            room.addItem(new Item("a cookie", 0.1, "Cookie"));
+        }
+        Game game = new Game(world, room);
+        Session[] players = new Session[threads];
+        for (int i = 0; i < threads; i++) {
+            players[i] = game.newSession(NullSink.INSTANCE);
+        }
+        Command take = new Command(CommandWord.TAKE, "cookie");
+        Command drop = new Command(CommandWord.DROP, null);
+
+        int operations = OPERATIONS / threads;
+        double time = measure("take/drop (" + threads + " threads)", 1, 1, null, round -> {
+            Thread[] running = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                Session player = players[t];
+                running[t] = new Thread(() -> {
+                    for (int i = 0; i < operations; i++) {
+                        Inventory inventory = player.getInventory();
+                        game.processCommand(player, inventory.isEmpty() ? take : drop);
+                    }
+                });
+                running[t].start();
+            }
+            for (Thread t : running) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return room.getItemList().size();
+        });
+        report("take/drop (per command)", 1, time / (operations * threads));
+    }
+
+    /**
+     * Measure the scripted playthrough with every command journaled, and
+     * recovering the game by replaying the journal. Recovery is reported
+     * per command replayed.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    private static void benchmarkJournal() throws IOException
+    {
+        Path directory = Files.createTempDirectory("journal");
+        Game game = new Game();
+        Journal journal = new Journal(directory);
+        game.setJournal(journal);
+        String input = script(OPERATIONS);
+        Session[] player = new Session[1];
+        Parser[] parser = new Parser[1];
+        measure("journaled playthrough", 6, () -> {
+            player[0] = game.newSession(NullSink.INSTANCE);
+            parser[0] = new Parser(new StringReader(input), null, game.getCommandWords());
+        }, i -> game.processCommand(player[0], parser[0].getCommand()) ? 1 : 0);
+        journal.close();
+
+        long commands = OPERATIONS * (WARMUP_ROUNDS + MEASURED_ROUNDS);
+        double time = measure("Journal.recover (all)", 6, 1, null, i -> {
+            try {
+                return new Journal(directory).recover(new Game());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        report("Journal.recover (per cmd)", 6, time / commands);
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * Run an operation for several rounds and print the median time per
+     * operation of the measured rounds.
+     *
+     * @param name The name of the benchmark
+     * @param rooms The number of rooms in the world, or 0 if there is no world
+     * @param setup Run before each round, or null if nothing is needed
+     * @param operation The operation to measure
+     */
+    private static void measure(String name, int rooms, Runnable setup, Operation operation)
+    {
+        measure(name, rooms, OPERATIONS, setup, operation);
+    }
+
+    /**
+     * Run an operation for several rounds and print the median time per
+     * operation of the measured rounds.
+     *
+     * @param name The name of the benchmark
+     * @param rooms The number of rooms in the world, or 0 if there is no world
+     * @param operations The number of operations in each round
+     * @param setup Run before each round, or null if nothing is needed
+     * @param operation The operation to measure
+     * @return The median time per operation, in nanoseconds
+     */
+    private static double measure(String name, int rooms, int operations, Runnable setup,
+                                  Operation operation)
+    {
+        double[] results = new double[MEASURED_ROUNDS];
+        long total = 0;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            if (setup != null) {
+                setup.run();
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                total += operation.run(i);
+            }
+            long elapsed = System.nanoTime() - start;
+            if (round >= WARMUP_ROUNDS) {
+                results[round - WARMUP_ROUNDS] = (double) elapsed / operations;
+            }
+        }
+        consumed += total;
+        Arrays.sort(results);
+        report(name, rooms, results[MEASURED_ROUNDS / 2]);
+        return results[MEASURED_ROUNDS / 2];
+    }
+
+    /**
+     * Print the time per operation of a benchmark, and keep it to compare
+     * with the baseline.
+     *
+     * @param name The name of the benchmark
+     * @param rooms The number of rooms in the world, or 0 if there is no world
+     * @param nanos The time per operation, in nanoseconds
+     */
+    private static void report(String name, int rooms, double nanos)
+    {
+        System.out.printf("%-28s %10d %12.1f%n", name, rooms, nanos);
+        times.setProperty(name + " @" + rooms, Double.toString(nanos));
+    }
+
+    /**
+     * Returns the scripted playthrough repeated to the given number of lines.
+     *
+     * @param lines The number of lines
+     * @return The commands, one per line
+     */
+    private static String script(int lines)
+    {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            s.append(SCRIPT[i % SCRIPT.length]).append('\n');
+        }
+        return s.toString();
+    }
+}
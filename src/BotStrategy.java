@@ -0,0 +1,208 @@
+/**
+ * This enumeration lists the ways a simulated player can play, for load
+ * testing a game with many players at once. Each strategy picks a bot's
+ * next command from the state of its session alone, so a bot needs nothing
+ * but its session and its own random numbers, and any number of bots can
+ * share a game.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+public enum BotStrategy
+{
+    /**
+     * Wander from room to room through random exits, looking around now
+     * and then.
+     */
+    WALK("walk") {
+        Command next(Session session, RandomGenerator random)
+        {
+            return (random.nextInt(8) == 0) ? LOOK : walk(session, random);
+        }
+    },
+
+    /**
+     * Find a cookie and eat it, then pick up whatever can be carried with
+     * the pickups it gave, dropping everything once the load gets heavy.
+     */
+    COLLECT("collect") {
+        Command next(Session session, RandomGenerator random)
+        {
+            Inventory inventory = session.getInventory();
+            if (inventory.size() >= 8) {
+                return DROP_ALL;
+            }
+            Command eat = eatFirst(session);
+            if (eat != null) {
+                return eat;
+            }
+            List<Item> items = session.getCurrentRoom().getItemList();
+            if (!items.isEmpty() && random.nextInt(2) == 0) {
+                Item item = items.get(random.nextInt(items.size()));
+                return new Command(CommandWord.TAKE, item.getName());
+            }
+            return walk(session, random);
+        }
+    },
+
+    /**
+     * Find a beamer, then charge it, wander off and fire it to go back,
+     * over and over.
+     */
+    BEAMER("beamer") {
+        Command next(Session session, RandomGenerator random)
+        {
+            Beamer beamer = null;
+            for (Item item : session.getInventory()) {
+                if (item instanceof Beamer) {
+                    beamer = (Beamer) item;
+                }
+            }
+            if (beamer == null) {
+                Command eat = eatFirst(session);
+                if (eat != null) {
+                    return eat;
+                }
+                if (session.getCurrentRoom().itemInRoom("beamer") != null) {
+                    return TAKE_BEAMER;
+                }
+                return walk(session, random);
+            }
+            if (!beamer.isCharged()) {
+                return CHARGE;
+            }
+            return (random.nextInt(4) == 0) ? FIRE : walk(session, random);
+        }
+    },
+
+    /**
+     * Walk forward and step back through the room history, so the history
+     * keeps growing and shrinking.
+     */
+    HISTORY("history") {
+        Command next(Session session, RandomGenerator random)
+        {
+            switch (random.nextInt(4)) {
+                case 0:
+                    return BACK;
+                case 1:
+                    return STACK_BACK;
+                default:
+                    return walk(session, random);
+            }
+        }
+    };
+
+    // the commands that never change
+    private static final Command LOOK = new Command(CommandWord.LOOK, null);
+    private static final Command EAT = new Command(CommandWord.EAT, null);
+    private static final Command BACK = new Command(CommandWord.BACK, null);
+    private static final Command STACK_BACK = new Command(CommandWord.STACK_BACK, null);
+    private static final Command CHARGE = new Command(CommandWord.CHARGE, null);
+    private static final Command FIRE = new Command(CommandWord.FIRE, null);
+    private static final Command TAKE_COOKIE = new Command(CommandWord.TAKE, "cookie");
+    private static final Command TAKE_BEAMER = new Command(CommandWord.TAKE, "beamer");
+    private static final Command DROP_ALL = new Command(CommandWord.DROP, "all");
+
+    // the name of the strategy on the command line
+    private final String name;
+
+    /**
+     * Create a strategy.
+     *
+     * @param name The name of the strategy on the command line
+     */
+    BotStrategy(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * Pick the next command of a bot.
+     *
+     * @param session The session of the bot
+     * @param random The bot's own random numbers
+     * @return The command to run
+     */
+    abstract Command next(Session session, RandomGenerator random);
+
+    /**
+     * Returns the name of the strategy on the command line.
+     *
+     * @return The name
+     */
+    public String toString()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the strategy with the given name.
+     *
+     * @param name The name of the strategy on the command line
+     * @return The strategy
+     * @throws IllegalArgumentException if there is no strategy with that name
+     */
+    public static BotStrategy forName(String name)
+    {
+        for (BotStrategy strategy : values()) {
+            if (strategy.name.equalsIgnoreCase(name)) {
+                return strategy;
+            }
+        }
+        throw new IllegalArgumentException("No bot strategy called " + name);
+    }
+
+    /**
+     * Returns a command going through a random exit of the bot's room, or
+     * back if the room has no exits.
+     *
+     * @param session The session of the bot
+     * @param random The bot's own random numbers
+     * @return The command
+     */
+    private static Command walk(Session session, RandomGenerator random)
+    {
+        Room room = session.getCurrentRoom();
+        if (room instanceof TransporterRoom) {
+            return new Command(CommandWord.GO, "east"); // any direction leads somewhere random
+        }
+        // the exit graph has the exits of stored rooms too, without reading
+        // the rooms they lead to
+        ExitGraph graph = room.getWorld().getExitGraph();
+        int first = graph.getFirstExit(room.getId());
+        int count = graph.getEndExit(room.getId()) - first;
+        if (count == 0) {
+            return BACK;
+        }
+        int direction = graph.getExitDirection(first + random.nextInt(count));
+        return new Command(CommandWord.GO, graph.getDirectionName(direction));
+    }
+
+    /**
+     * Returns the command that gets the bot closer to being able to pick up
+     * items, if it cannot yet: eating a cookie it carries or taking one
+     * from the room.
+     *
+     * @param session The session of the bot
+     * @return The command, or null if the bot can already pick up items or
+     *         there is no cookie to be had here
+     */
+    private static Command eatFirst(Session session)
+    {
+        if (session.getNumPickup() > 0) {
+            return null;
+        }
+        if (session.getInventory().find("cookie") != null) {
+            return EAT;
+        }
+        if (session.getCurrentRoom().itemInRoom("cookie") != null) {
+            return TAKE_COOKIE;
+        }
+        return null;
+    }
+}
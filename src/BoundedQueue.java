@@ -0,0 +1,142 @@
+/**
+ * This class is a queue of fixed capacity that any number of threads may add
+ * to and take from at once without locks. Each slot of a ring of slots has a
+ * sequence number telling whether it is ready to be filled or to be emptied
+ * on the current lap of the ring, so a thread claims a slot with a single
+ * compare-and-set of the head or tail count, and never waits for another
+ * thread unless that thread is in the middle of filling or emptying the very
+ * slot it wants.
+ *
+ * A full queue refuses what is offered rather than waiting for room, so the
+ * thread offering can decide what to do instead, such as stop reading its
+ * input, and an empty queue returns null.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class BoundedQueue<E>
+{
+    // the elements, and the sequence number of each slot
+    private AtomicReferenceArray<E> elements;
+    private AtomicLongArray sequences;
+    private int mask;
+    // the number of elements ever taken, and ever added
+    private AtomicLong head;
+    private AtomicLong tail;
+
+    /**
+     * Create an empty queue.
+     *
+     * @param capacity The most elements the queue holds, rounded up to a power of two
+     * @throws IllegalArgumentException if the capacity is less than one or too large
+     */
+    public BoundedQueue(int capacity)
+    {
+        if (capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Bad queue capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size *= 2;
+        }
+        elements = new AtomicReferenceArray<E>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+        head = new AtomicLong();
+        tail = new AtomicLong();
+    }
+
+    /**
+     * Add an element at the tail of the queue, if there is room for it.
+     *
+     * @param element The element, which must not be null
+     * @return true if the element was added, false if the queue is full
+     */
+    public boolean offer(E element)
+    {
+        while (true) {
+            long position = tail.get();
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.set(slot, element);
+                    // the slot may now be emptied on this lap
+                    sequences.set(slot, position + 1);
+                    return true;
+                }
+            } else if (difference < 0) {
+                // the slot still holds an element from the lap before
+                return false;
+            }
+            // another thread has taken this position, try the next
+        }
+    }
+
+    /**
+     * Take the element at the head of the queue.
+     *
+     * @return The element, or null if the queue is empty
+     */
+    public E poll()
+    {
+        while (true) {
+            long position = head.get();
+            int slot = (int) position & mask;
+            long difference = sequences.get(slot) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = elements.get(slot);
+                    elements.set(slot, null);
+                    // the slot may now be filled on the next lap
+                    sequences.set(slot, position + mask + 1);
+                    return element;
+                }
+            } else if (difference < 0) {
+                // the slot has not been filled on this lap yet
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the queue is empty. With other threads at work, the
+     * answer may be out of date as soon as it is given.
+     *
+     * @return true if the queue holds no elements
+     */
+    public boolean isEmpty()
+    {
+        return size() == 0;
+    }
+
+    /**
+     * Returns the number of elements in the queue. With other threads at
+     * work, the answer may be out of date as soon as it is given.
+     *
+     * @return The number of elements
+     */
+    public int size()
+    {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    /**
+     * Returns the most elements the queue holds.
+     *
+     * @return The capacity
+     */
+    public int getCapacity()
+    {
+        return mask + 1;
+    }
+}
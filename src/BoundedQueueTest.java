@@ -0,0 +1,145 @@
+/**
+ * The test class BoundedQueueTest. It checks that a bounded queue hands out
+ * its elements in order, refuses elements once full, and loses or repeats
+ * nothing when many threads add to and take from it at once.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import org.junit.Test;
+
+public class BoundedQueueTest
+{
+    /**
+     * The capacity is rounded up to a power of two.
+     */
+    @Test
+    public void testCapacity()
+    {
+        assertEquals(1, new BoundedQueue<Integer>(1).getCapacity());
+        assertEquals(8, new BoundedQueue<Integer>(5).getCapacity());
+        assertEquals(16, new BoundedQueue<Integer>(16).getCapacity());
+    }
+
+    /**
+     * A capacity of less than one is refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadCapacity()
+    {
+        new BoundedQueue<Integer>(0);
+    }
+
+    /**
+     * Elements come out in the order they went in, over several laps of
+     * the ring.
+     */
+    @Test
+    public void testFirstInFirstOut()
+    {
+        BoundedQueue<Integer> queue = new BoundedQueue<Integer>(4);
+        int next = 0;
+        for (int i = 0; i < 20; i++) {
+            assertTrue(queue.offer(i));
+            if (i % 2 == 1) {
+                assertEquals(Integer.valueOf(next++), queue.poll());
+                assertEquals(Integer.valueOf(next++), queue.poll());
+            }
+        }
+        while (!queue.isEmpty()) {
+            assertEquals(Integer.valueOf(next++), queue.poll());
+        }
+        assertEquals(20, next);
+    }
+
+    /**
+     * A full queue refuses what is offered, and an empty one returns null.
+     */
+    @Test
+    public void testFullAndEmpty()
+    {
+        BoundedQueue<String> queue = new BoundedQueue<String>(2);
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.offer("a"));
+        assertTrue(queue.offer("b"));
+        assertFalse(queue.offer("c"));
+        assertEquals(2, queue.size());
+        assertEquals("a", queue.poll());
+        assertTrue(queue.offer("c"));
+        assertEquals("b", queue.poll());
+        assertEquals("c", queue.poll());
+        assertNull(queue.poll());
+        assertEquals(0, queue.size());
+    }
+
+    /**
+     * Producers and consumers working at once pass every element through
+     * exactly once, and each producer's elements come out in its order.
+     */
+    @Test
+    public void testManyThreads() throws InterruptedException
+    {
+        final int producers = 4;
+        final int consumers = 4;
+        final int each = 50000;
+        BoundedQueue<Integer> queue = new BoundedQueue<Integer>(64);
+        // how many times each element was taken
+        AtomicIntegerArray taken = new AtomicIntegerArray(producers * each);
+        // whether a consumer saw some producer's elements out of order
+        AtomicIntegerArray disordered = new AtomicIntegerArray(consumers);
+
+        Thread[] threads = new Thread[producers + consumers];
+        for (int p = 0; p < producers; p++) {
+            int first = p * each;
+            threads[p] = new Thread(() -> {
+                for (int i = first; i < first + each; i++) {
+                    while (!queue.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+        }
+        for (int c = 0; c < consumers; c++) {
+            int consumer = c;
+            threads[producers + c] = new Thread(() -> {
+                int[] last = new int[producers];
+                Arrays.fill(last, -1);
+                for (int i = 0; i < producers * each / consumers; i++) {
+                    Integer element;
+                    while ((element = queue.poll()) == null) {
+                        Thread.yield();
+                    }
+                    taken.incrementAndGet(element);
+                    int producer = element / each;
+                    if (element <= last[producer]) {
+                        disordered.set(consumer, 1);
+                    }
+                    last[producer] = element;
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < taken.length(); i++) {
+            assertEquals("element " + i, 1, taken.get(i));
+        }
+        for (int c = 0; c < consumers; c++) {
+            assertEquals(0, disordered.get(c));
+        }
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * This class collects the output for one player in memory and writes it all
+ * at once when flushed. Since the game flushes once per command, the
+ * underlying writer is only touched once for each command, however many lines
+ * the command prints.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+public class BufferedSink implements OutputSink
+{
+    private Writer writer;          // where the output is written
+    private boolean autoFlush;      // whether the writer is flushed too
+    private StringBuilder buffer;   // output not written yet
+
+    /**
+     * Create a sink writing to the given writer, and flushing the writer
+     * whenever the sink is flushed.
+     *
+     * @param writer Where the output is written when flushed
+     */
+    public BufferedSink(Writer writer)
+    {
+        this(writer, true);
+    }
+
+    /**
+     * Create a sink writing to the given writer.
+     *
+     * @param writer Where the output is written when flushed
+     * @param autoFlush true to flush the writer whenever the sink is flushed,
+     *                  false to leave that to the owner of the writer
+     */
+    public BufferedSink(Writer writer, boolean autoFlush)
+    {
+        this.writer = writer;
+        this.autoFlush = autoFlush;
+        buffer = new StringBuilder(1024);
+    }
+
+    /**
+     * Print some text to the player.
+     *
+     * @param text The text to print
+     */
+    public void print(String text)
+    {
+        buffer.append(text);
+    }
+
+    /**
+     * Print a line of output to the player.
+     *
+     * @param line The line to print
+     */
+    public void println(String line)
+    {
+        buffer.append(line).append(System.lineSeparator());
+    }
+
+    /**
+     * Print an empty line to the player.
+     */
+    public void println()
+    {
+        buffer.append(System.lineSeparator());
+    }
+
+    /**
+     * Write the output collected so far, flushing the writer if
+     * this sink was asked to.
+     */
+    public void flush()
+    {
+        try {
+            writer.append(buffer);
+            if (autoFlush) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            buffer.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,337 @@
+/**
+ * This class saves a running game to a checkpoint file, so that it can be
+ * restored after a crash. The file starts with a snapshot of every room that
+ * differs from the world as it was built, followed by a snapshot every so
+ * often of only the rooms that changed since the one before. Every snapshot
+ * also holds every session, so the last snapshot in the file says which
+ * sessions were playing.
+ *
+ * If the game journals its commands, every snapshot also starts a new
+ * journal file, and the journal files before a snapshot are deleted once it
+ * is on the disk.
+ *
+ * Since every snapshot holds every session, the file would grow for as long
+ * as the game runs. Once it is more than twice the size it had when it was
+ * last rewritten, its snapshots are merged into one, which is written to a
+ * new file that replaces the old one.
+ *
+ * Commands only have to wait while a snapshot is taken, which only shares
+ * the changed rooms' items and the sessions' inventories and histories
+ * rather than copying them. Writing the snapshot to the file and forcing it
+ * to the disk is done afterwards, on the checkpoint thread, while commands
+ * go on.
+ *
+ * The file starts with the magic number "WOWS" and the format version. Each
+ * snapshot is written as its length, its CRC-32 checksum and its bytes, so a
+ * snapshot cut short by a crash is noticed and left out when restoring.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+public class Checkpointer implements AutoCloseable
+{
+    // "WOWS" in ASCII, the first four bytes of every checkpoint file
+    private static final int MAGIC = 0x574F5753;
+    private static final int VERSION = 6;
+
+    // how many times bigger than when it was last rewritten the file may grow
+    private static final int GROWTH_LIMIT = 2;
+
+    private Game game;
+    private Path path;
+    private FileChannel channel;                // the checkpoint file
+    // the size of the file when it was last rewritten
+    private long compactedSize;
+    private ScheduledExecutorService thread;    // takes and writes checkpoints
+    // snapshots taken but not yet written, because writing them failed,
+    // and their bytes
+    private List<Snapshot> unwritten;
+    private List<ByteBuffer> unwrittenBytes;
+    // how long commands had to wait for the last snapshot, in nanoseconds
+    private volatile long lastPause;
+
+    /**
+     * Create a checkpoint file for a game, holding a first snapshot of every
+     * room that differs from the world as it was built. Any file already at
+     * the path, such as the one the game was restored from, is only replaced
+     * once the new file has been written.
+     *
+     * @param game The game to save
+     * @param path The checkpoint file
+     * @throws IOException if the file cannot be written
+     */
+    public Checkpointer(Game game, Path path) throws IOException
+    {
+        this.game = game;
+        this.path = path;
+        unwritten = new ArrayList<Snapshot>();
+        unwrittenBytes = new ArrayList<ByteBuffer>();
+        Snapshot snapshot = takeSnapshot();
+        compactedSize = replaceFile(snapshot);
+        game.snapshotSaved(snapshot);
+        channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        thread = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread t = new Thread(task, "checkpoint");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Start writing a checkpoint in the background at a fixed rate.
+     *
+     * @param period The time between checkpoints, in milliseconds
+     */
+    public void start(long period)
+    {
+        thread.scheduleAtFixedRate(() -> {
+            try {
+                write();
+            } catch (IOException e) {
+                System.err.println("Checkpoint failed: " + e.getMessage());
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write a checkpoint now, waiting until it is on the disk.
+     *
+     * @throws IOException if the checkpoint cannot be written
+     */
+    public void checkpoint() throws IOException
+    {
+        try {
+            thread.submit(() -> { write(); return null; }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing a checkpoint", e);
+        } catch (ExecutionException e) {
+            throw (e.getCause() instanceof IOException)
+                ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Returns how long commands had to wait while the last snapshot was
+     * taken.
+     *
+     * @return The pause, in nanoseconds
+     */
+    public long getLastPause()
+    {
+        return lastPause;
+    }
+
+    /**
+     * Write a last checkpoint, then stop checkpointing and close the file.
+     *
+     * @throws IOException if the last checkpoint cannot be written
+     */
+    public void close() throws IOException
+    {
+        try {
+            checkpoint();
+        } finally {
+            thread.shutdown();
+            channel.close();
+        }
+    }
+
+    /**
+     * Read every complete snapshot in a checkpoint file, stopping at the
+     * first one that was cut short or is damaged.
+     *
+     * @param path The checkpoint file
+     * @param world The world the game was saved from, built the same way
+     * @return The snapshots, oldest first
+     * @throws IOException if the file cannot be read or is not a checkpoint file
+     * @throws IllegalStateException if the file was saved from a different world
+     */
+    public static List<Snapshot> read(Path path, World world) throws IOException
+    {
+        List<Snapshot> snapshots = new ArrayList<Snapshot>();
+        long size = Files.size(path);
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file, 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a checkpoint file: " + path);
+            }
+            while (true) {
+                byte[] bytes;
+                int checksum;
+                try {
+                    int length = in.readInt();
+                    if (length < 0 || length > size) {
+                        break; // the length itself was damaged
+                    }
+                    bytes = new byte[length];
+                    checksum = in.readInt();
+                    in.readFully(bytes);
+                } catch (EOFException e) {
+                    break; // the last snapshot was cut short
+                }
+                CRC32 crc = new CRC32();
+                crc.update(bytes);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                snapshots.add(Snapshot.read(new DataInputStream(new ByteArrayInputStream(bytes)), world));
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Take a snapshot of the game and append it to the file. The rooms in a
+     * snapshot are not in the next one, so if writing fails the snapshot is
+     * kept and written again, ahead of the next one, next time. If the file
+     * has grown too big, it is then rewritten as one snapshot.
+     *
+     * @throws IOException if the snapshot cannot be written
+     */
+    private void write() throws IOException
+    {
+        Snapshot snapshot = takeSnapshot();
+        unwritten.add(snapshot);
+        unwrittenBytes.add(encode(snapshot));
+        long end = channel.size();
+        try {
+            for (ByteBuffer bytes : unwrittenBytes) {
+                writeFully(channel, bytes);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            for (ByteBuffer bytes : unwrittenBytes) {
+                bytes.rewind();
+            }
+            try {
+                channel.truncate(end);  // leave no half-written snapshot behind
+            } catch (IOException t) {
+                e.addSuppressed(t);
+            }
+            throw e;
+        }
+        List<Snapshot> written = new ArrayList<Snapshot>(unwritten);
+        unwritten.clear();
+        unwrittenBytes.clear();
+        for (Snapshot saved : written) {
+            game.snapshotSaved(saved);
+        }
+        if (channel.size() > GROWTH_LIMIT * compactedSize) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrite the file as one snapshot, merged from every snapshot in it.
+     * The file is replaced in one step, so a crash leaves either the old
+     * file or the new one.
+     *
+     * @throws IOException if the file cannot be read or written
+     */
+    private void compact() throws IOException
+    {
+        compactedSize = replaceFile(Snapshot.merge(read(path, game.getWorld())));
+        FileChannel compacted = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        channel.close();
+        channel = compacted;
+    }
+
+    /**
+     * Write a new file holding only the given snapshot, and put it in the
+     * place of the checkpoint file once it is on the disk.
+     *
+     * @param snapshot The snapshot
+     * @return The size of the new file, in bytes
+     * @throws IOException if the file cannot be written
+     */
+    private long replaceFile(Snapshot snapshot) throws IOException
+    {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        long size;
+        try (FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            writeFully(file, header);
+            writeFully(file, encode(snapshot));
+            file.force(true);
+            size = file.size();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return size;
+    }
+
+    /**
+     * Take a snapshot of the game, remembering how long it took.
+     *
+     * @return The snapshot
+     */
+    private Snapshot takeSnapshot()
+    {
+        long start = System.nanoTime();
+        Snapshot snapshot = game.takeSnapshot();
+        lastPause = System.nanoTime() - start;
+        return snapshot;
+    }
+
+    /**
+     * Turn a snapshot into its length, checksum and bytes.
+     *
+     * @param snapshot The snapshot
+     * @return The bytes to write to the file
+     * @throws IOException if the snapshot cannot be written
+     */
+    private static ByteBuffer encode(Snapshot snapshot) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);    // the length and checksum, filled in below
+        out.writeInt(0);
+        snapshot.write(out);
+        out.flush();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 8, buffer.limit() - 8);
+        buffer.putInt(0, buffer.limit() - 8);
+        buffer.putInt(4, (int) crc.getValue());
+        return buffer;
+    }
+
+    /**
+     * Write all of a buffer to a channel.
+     *
+     * @param channel The channel
+     * @param buffer The bytes to write
+     * @throws IOException if the bytes cannot be written
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * The test class CheckpointerTest. It checks that a game restored from a
+ * checkpoint file is the game that was saved, that a file of many small
+ * checkpoints is compacted rather than left to grow, that a stack of items
+ * is saved at the cost of one, and that a snapshot keeps the items as they
+ * were when it was taken.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.TreeMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CheckpointerTest
+{
+    private Game game;
+    private Session player;
+    private Path file;          // the checkpoint file
+
+    /**
+     * Start a game with one player, and find a place for its checkpoint.
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        game = new Game();
+        player = game.newSession(NullSink.INSTANCE);
+        file = Files.createTempFile("game", ".ckpt");
+    }
+
+    /**
+     * Delete the checkpoint file.
+     */
+    @After
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Describe everything in a game that a restore or recovery must bring back.
+     *
+     * @param game The game
+     * @return A description of every room and every player
+     */
+    static String describe(Game game)
+    {
+        StringBuilder description = new StringBuilder();
+        World world = game.getWorld();
+        for (int id = 0; id < world.size(); id++) {
+            description.append(world.getRoom(id).getLongDescription()).append('\n');
+        }
+        TreeMap<Integer, Session> sessions = new TreeMap<Integer, Session>();
+        for (Session session : game.getSessions()) {
+            sessions.put(session.getId(), session);
+        }
+        for (Session session : sessions.values()) {
+            description.append(session.getId()).append(": ")
+                .append(session.getCurrentRoom().getName()).append(", carrying");
+            for (Item item : session.getInventory()) {
+                description.append(' ').append(item.getName());
+                if (item instanceof Beamer && ((Beamer) item).isCharged()) {
+                    description.append(" for ").append(((Beamer) item).getDestination().getName());
+                }
+            }
+            description.append(", ")
+                .append(session.getNumPickup()).append(" pickups, ")
+                .append(session.getHistory().length).append(" rooms back\n");
+        }
+        return description.toString();
+    }
+
+    /**
+     * Process the commands on each line for a player.
+     *
+     * @param session The player
+     * @param lines The commands
+     */
+    private void play(Session session, String... lines)
+    {
+        for (String line : lines) {
+            Parser parser = new Parser(new StringReader(line + "\n"), null, game.getCommandWords());
+            game.processCommand(session, parser.getCommand());
+        }
+    }
+
+    /**
+     * Restore the checkpoint file into a new game.
+     *
+     * @return The restored game
+     */
+    private Game restore() throws IOException
+    {
+        Game restored = new Game();
+        restored.restore(file);
+        return restored;
+    }
+
+    /**
+     * A game saved after items were moved about, and after another player
+     * joined and one left, is restored as it was saved.
+     */
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        Checkpointer checkpointer = new Checkpointer(game, file);
+        play(player, "go east", "take cookie", "eat", "take beamer", "charge",
+             "go west", "go south", "drop", "take cookie");
+        checkpointer.checkpoint();
+        Session other = game.newSession(NullSink.INSTANCE);
+        play(other, "go west");
+        game.endSession(player);
+        checkpointer.close();
+
+        Game restored = restore();
+        assertEquals(describe(game), describe(restored));
+        Session again = restored.getSession(other.getId());
+        assertEquals("pub", again.getCurrentRoom().getName());
+        assertEquals("outside", again.getPreviousRoom().getName());
+        assertEquals(1, restored.getSessions().size());
+    }
+
+    /**
+     * A player's inventory, pickups and way back are saved.
+     */
+    @Test
+    public void testPlayerSaved() throws IOException
+    {
+        play(player, "go east", "take cookie", "eat", "take beamer", "charge",
+             "go west", "go south", "take cookie");
+        new Checkpointer(game, file).close();
+
+        Session again = restore().getSession(player.getId());
+        assertEquals("lab", again.getCurrentRoom().getName());
+        assertEquals(2, again.getInventory().size());
+        assertEquals(player.getNumPickup(), again.getNumPickup());
+        assertEquals(player.getHistory().length, again.getHistory().length);
+    }
+
+    /**
+     * A file checkpointed after every command is compacted now and then,
+     * so it stays small, and still restores the game as it was.
+     */
+    @Test
+    public void testCompaction() throws IOException
+    {
+        Checkpointer checkpointer = new Checkpointer(game, file);
+        long first = Files.size(file);
+        String[] lines = { "go east", "take cookie", "take beamer", "charge", "go west",
+                           "drop", "go south", "take computer", "fire", "drop" };
+        long largest = 0;
+        for (int i = 0; i < 60; i++) {
+            play(player, lines[i % lines.length]);
+            checkpointer.checkpoint();
+            largest = Math.max(largest, Files.size(file));
+        }
+        checkpointer.close();
+
+        assertTrue("file grew to " + largest + " bytes", largest < 8 * Math.max(first, 256));
+        assertTrue(Checkpointer.read(file, game.getWorld()).size() < 60);
+        assertEquals(describe(game), describe(restore()));
+    }
+
+    /**
+     * Save a new game with cookies added to the lab.
+     *
+     * @param cookies The number of cookies to add
+     * @return The game
+     */
+    private Game saveCookies(int cookies) throws IOException
+    {
+        Game saved = new Game();
+        Room lab = saved.getWorld().getRoom("lab");
+        for (int i = 0; i < cookies; i++) {
+            lab.addItem(new Item("a cookie", 0.1, "Cookie"));
+        }
+        new Checkpointer(saved, file).close();
+        return saved;
+    }
+
+    /**
+     * A room holding a great many cookies takes no more of the file than a
+     * room holding a few, and gets all of them back.
+     */
+    @Test
+    public void testStacksSavedOnce() throws IOException
+    {
+        saveCookies(1);
+        long few = Files.size(file);
+        Game saved = saveCookies(10000);
+        assertEquals(few, Files.size(file));
+
+        Room restored = restore().getWorld().getRoom("lab");
+        Item cookie = restored.itemInRoom("Cookie");
+        int cookies = 0;
+        for (Item item : restored.getItemList()) {
+            if (item.equals(cookie)) {
+                cookies++;
+            }
+        }
+        assertEquals(10001, cookies);
+        assertEquals(saved.getWorld().getRoom("lab").getItems(), restored.getItems());
+    }
+
+    /**
+     * A snapshot keeps the items of a room as they were when it was taken,
+     * however the room changes after.
+     */
+    @Test
+    public void testSnapshotUnchanged() throws IOException
+    {
+        Room outside = game.getWorld().getRoom("outside");
+        play(player, "take cookie");
+        String before = outside.getItems();
+        Snapshot snapshot = game.takeSnapshot();
+        play(player, "eat", "go east", "take beamer", "go west", "drop all");
+        outside.addItem(new Item("a pebble", 0.01, "Pebble"));
+        assertNotEquals(before, outside.getItems());
+        game.snapshotSaved(snapshot);
+
+        Game restored = new Game();
+        snapshot.restoreRooms(restored.getWorld());
+        assertEquals(before, restored.getWorld().getRoom("outside").getItems());
+    }
+}
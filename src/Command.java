@@ -8,18 +8,49 @@
 
 public class Command
 {
+    private int index;
     private String commandWord;
     private String secondWord;
 
     /**
-     * Create a command object. First and second word must be supplied, but
-     * either one, or both, can be null.
+     * Create a command object for one of the words of CommandWord. First
+     * and second word must be supplied, but either one, or both, can be null.
      * 
      * @param firstWord The first word of the command. Null if the command was not recognised.
      * @param secondWord The second word of the command
      */
-    public Command(String firstWord, String secondWord)
+    public Command(CommandWord firstWord, String secondWord)
     {
+        if (firstWord == null) {
+            set(-1, null, secondWord);
+        } else {
+            set(firstWord.ordinal(), firstWord.getWord(), secondWord);
+        }
+    }
+
+    /**
+     * Create a command object for a command word of CommandWords.
+     * 
+     * @param index The index of the command word in CommandWords. -1 if the command was not recognised.
+     * @param firstWord The first word of the command. Null if the command was not recognised.
+     * @param secondWord The second word of the command
+     */
+    public Command(int index, String firstWord, String secondWord)
+    {
+        set(index, firstWord, secondWord);
+    }
+
+    /**
+     * Change the words of this command, so that a parser can reuse one
+     * command object for every line it reads.
+     * 
+     * @param index The index of the command word in CommandWords. -1 if the command was not recognised.
+     * @param firstWord The first word of the command. Null if the command was not recognised.
+     * @param secondWord The second word of the command
+     */
+    void set(int index, String firstWord, String secondWord)
+    {
+        this.index = index;
         commandWord = firstWord;
         this.secondWord = secondWord;
     }
@@ -35,6 +66,17 @@ public class Command
         return commandWord;
     }
 
+    /**
+     * Return the index of the command word in CommandWords. If the
+     * command was not understood, the result is -1.
+     * 
+     * @return The index of the command word, or -1 if not understood
+     */
+    public int getIndex()
+    {
+        return index;
+    }
+
     /**
      * Returns the second word of the command.  Returns null if there was no
      * second word.
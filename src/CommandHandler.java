@@ -0,0 +1,18 @@
+/**
+ * This interface is implemented by anything that carries out a command for
+ * a player. Each command word in CommandWords has one handler.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+public interface CommandHandler
+{
+    /**
+     * Carry out a command for a player.
+     *
+     * @param session The session of the player
+     * @param command The command to be processed
+     * @return true if the command ends the game, false otherwise
+     */
+    boolean execute(Session session, Command command);
+}
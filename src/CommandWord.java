@@ -0,0 +1,46 @@
+/**
+ * This enumeration lists the command words of the game, each with the word
+ * the player types to use it.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+public enum CommandWord
+{
+    GO("go"), QUIT("quit"), HELP("help"), LOOK("look"), EAT("eat"), BACK("back"),
+    STACK_BACK("stackBack"), TAKE("take"), DROP("drop"), CHARGE("charge"), FIRE("fire"),
+    PATH("path"), INVENTORY("inventory");
+
+    // the word the player types
+    private final String word;
+
+    /**
+     * Create a command word.
+     *
+     * @param word The word the player types
+     */
+    CommandWord(String word)
+    {
+        this.word = word;
+    }
+
+    /**
+     * Returns the word the player types for this command.
+     *
+     * @return The command word as a String
+     */
+    public String getWord()
+    {
+        return word;
+    }
+
+    /**
+     * Returns the word the player types for this command.
+     *
+     * @return The command word as a String
+     */
+    public String toString()
+    {
+        return word;
+    }
+}
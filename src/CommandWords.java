@@ -1,54 +1,253 @@
 /**
  * This class holds a set of valid command words that the player can use
- * in the game. It is used to recognise commands as they are typed in.
- * 
+ * in the game, together with the handler that carries out each one. It is
+ * used to recognise commands as they are typed in and to dispatch them.
+ *
+ * Every command word has an index. The words of CommandWord come first, at
+ * the index of their ordinal, and any words registered later follow them.
+ * The words are kept in a small hash table, so a word is recognised with a
+ * single lookup straight from the characters that were read, and a command
+ * is dispatched by indexing the handler array.
+ *
+ * Words should be registered before any player starts typing commands.
+ *
  * @author Lehem Temesgen
  * @version 03/14/2024
  */
 
+import java.util.Arrays;
+
 public class CommandWords
 {
-    // a constant array that holds all valid command words
-    private static final String[] validCommands = {
-        "go", "quit", "help", "look", "eat", "back", "stackBack", "take", "drop", "charge", "fire"
-    };
+    // the command words, by index
+    private String[] words;
+    // the handler of each command word, by index
+    private CommandHandler[] handlers;
+    // the number of command words
+    private int count;
+
+    // the index plus one of each command word, placed by the hash of
+    // its word, or zero for an empty slot
+    private int[] table;
+
+    // the list of command words, as shown by help
+    private String commandList;
 
     /**
-     * Constructor - initialise the command words.
+     * Constructor - initialise the command words of CommandWord,
+     * without handlers.
      */
     public CommandWords() {
+        words = new String[16];
+        handlers = new CommandHandler[16];
+        count = 0;
+        table = new int[32];
+        for (CommandWord command : CommandWord.values()) {
+            register(command.getWord(), null);
+        }
+    }
+
+    /**
+     * Add a command word, or replace the handler of an existing one.
+     *
+     * @param word The word the player types
+     * @param handler The handler that carries out the command
+     * @return The index of the command word
+     */
+    public int register(String word, CommandHandler handler)
+    {
+        int index = lookup(word);
+        if (index < 0) {
+            index = count++;
+            if (index == words.length) {
+                words = Arrays.copyOf(words, index * 2);
+                handlers = Arrays.copyOf(handlers, index * 2);
+            }
+            words[index] = word;
+            if (count * 2 > table.length) {
+                rebuildTable(table.length * 2);
+            } else {
+                place(index);
+            }
+            commandList = null;
+        }
+        handlers[index] = handler;
+        return index;
+    }
 
+    /**
+     * Set the handler of one of the command words of CommandWord.
+     *
+     * @param command The command word
+     * @param handler The handler that carries out the command
+     */
+    public void setHandler(CommandWord command, CommandHandler handler)
+    {
+        handlers[command.ordinal()] = handler;
     }
 
     /**
-     * Check whether a given String is a valid command word. 
-     * 
+     * Check whether a given String is a valid command word.
+     *
      * @param aString The String to check
      * @return true if it is valid, false otherwise
      */
     public boolean isCommand(String aString)
     {
-        for(int i = 0; i < validCommands.length; i++) {
-            if(validCommands[i].equals(aString))
-                return true;
+        return aString != null && lookup(aString) >= 0;
+    }
+
+    /**
+     * Find the index of the given command word.
+     *
+     * @param aString The word to look up
+     * @return The index of the command word, or -1 if the word is not a command
+     */
+    public int lookup(String aString)
+    {
+        return lookup(aString, 0, aString.length());
+    }
+
+    /**
+     * Find the index of the command word spelled by a range of characters.
+     *
+     * @param chars The characters holding the word
+     * @param start The index of the first character of the word
+     * @param length The number of characters in the word
+     * @return The index of the command word, or -1 if the word is not a command
+     */
+    public int lookup(CharSequence chars, int start, int length)
+    {
+        int mask = table.length - 1;
+        int slot = hash(chars, start, length) & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            if (matches(words[entry - 1], chars, start, length)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
         }
-        // if we get here, the string was not found in the commands
-        return false;
+        // if we get here, the word was not found in the commands
+        return -1;
+    }
+
+    /**
+     * Returns the command word with the given index.
+     *
+     * @param index The index of the command word
+     * @return The command word as a String
+     */
+    public String getWord(int index)
+    {
+        return words[index];
+    }
+
+    /**
+     * Returns the handler of the command word with the given index.
+     *
+     * @param index The index of the command word
+     * @return The handler, or null if the command word has none
+     */
+    public CommandHandler getHandler(int index)
+    {
+        return handlers[index];
+    }
+
+    /**
+     * Returns the number of command words, which is one more than the
+     * highest index.
+     *
+     * @return The number of command words
+     */
+    public int size()
+    {
+        return count;
     }
 
     /**
      * Returns a String containing all valid commands.
-     * 
+     *
      * @return a String of the valid commands
      */
-    public String getCommandList() 
+    public String getCommandList()
+    {
+        if (commandList == null) {
+            // let's use a StringBuilder (not required)
+            StringBuilder s = new StringBuilder();
+            for(int i = 0; i < count; i++) {
+                s.append(words[i]).append("  ");
+            }
+            commandList = s.toString().trim(); // removes spaces from beginning/end
+        }
+        return commandList;
+    }
+
+    /**
+     * Put a command word into the hash table.
+     *
+     * @param index The index of the command word
+     */
+    private void place(int index)
+    {
+        int mask = table.length - 1;
+        String word = words[index];
+        int slot = hash(word, 0, word.length()) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    /**
+     * Replace the hash table with a bigger one holding every command word.
+     *
+     * @param size The number of slots of the new table, a power of two
+     */
+    private void rebuildTable(int size)
+    {
+        table = new int[size];
+        for (int i = 0; i < count; i++) {
+            place(i);
+        }
+    }
+
+    /**
+     * Compute the hash of a range of characters, the same way for a
+     * String as for any other sequence of characters.
+     *
+     * @param chars The characters to hash
+     * @param start The index of the first character
+     * @param length The number of characters
+     * @return The hash of the characters
+     */
+    static int hash(CharSequence chars, int start, int length)
+    {
+        int h = 0;
+        for (int i = start; i < start + length; i++) {
+            h = 31 * h + chars.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Check whether a word is spelled by a range of characters.
+     *
+     * @param word The word to compare with
+     * @param chars The characters to compare
+     * @param start The index of the first character
+     * @param length The number of characters
+     * @return true if the characters spell the word, false otherwise
+     */
+    static boolean matches(String word, CharSequence chars, int start, int length)
     {
-        // let's use a StringBuilder (not required)
-        StringBuilder s = new StringBuilder();
-        for(String command: validCommands) {
-            s.append(command + "  ");
+        if (word.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != chars.charAt(start + i)) {
+                return false;
+            }
         }
-        String str = s.toString(); 
-        return str.trim(); // removes spaces from beginning/end
+        return true;
     }
 }
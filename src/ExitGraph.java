@@ -0,0 +1,281 @@
+/**
+ * This class holds the exits of every room of a world in a few flat arrays of
+ * ints, rather than in a HashMap for each room. Directions are stored once, in
+ * a table, and exits refer to them by their small index. The exits of all
+ * rooms are kept in one array ordered by room, with an array of offsets
+ * saying where the exits of each room start:
+ *
+ *     offsets:  the exits of room r are exits (offsets[r]) to (offsets[r+1] - 1)
+ *     exits:    exit e leads in direction exits[2e] to room exits[2e+1]
+ *
+ * The arrays can live on the Java heap, in memory outside of the heap, or in
+ * a mapped file, so an exit takes 8 bytes wherever it is kept, and a world
+ * of millions of rooms does not need millions of HashMaps.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ExitGraph
+{
+    // the directions, by index
+    private String[] directions;
+    // the index of each direction
+    private HashMap<String, Integer> directionIndex;
+    // where the exits of each room start, with one extra entry for the end
+    private IntBuffer offsets;
+    // direction and target room of each exit
+    private IntBuffer exits;
+
+    /**
+     * Create a graph from its arrays.
+     *
+     * @param directions The directions, by index
+     * @param offsets Where the exits of each room start, one more than the number of rooms
+     * @param exits The direction and target room of each exit
+     */
+    public ExitGraph(String[] directions, IntBuffer offsets, IntBuffer exits)
+    {
+        this.directions = directions;
+        this.offsets = offsets;
+        this.exits = exits;
+        directionIndex = new HashMap<String, Integer>();
+        for (int i = 0; i < directions.length; i++) {
+            directionIndex.put(directions[i], i);
+        }
+    }
+
+    /**
+     * Build the graph of the exits of every room of a world.
+     *
+     * @param world The world
+     * @return The graph of its exits, kept on the heap
+     */
+    public static ExitGraph of(World world)
+    {
+        Builder builder = new Builder();
+        for (int id = 0; id < world.size(); id++) {
+            builder.addRoom();
+            for (Map.Entry<String, Room> exit : world.getRoom(id).getExits().entrySet()) {
+                builder.addExit(exit.getKey(), exit.getValue().getId());
+            }
+        }
+        return builder.build(false);
+    }
+
+    /**
+     * Returns the number of rooms in the graph.
+     *
+     * @return The number of rooms
+     */
+    public int size()
+    {
+        return offsets.limit() - 1;
+    }
+
+    /**
+     * Returns the index of a direction.
+     *
+     * @param direction The direction, such as "east"
+     * @return The index of the direction, or -1 if no exit leads that way
+     */
+    public int getDirection(String direction)
+    {
+        Integer index = directionIndex.get(direction);
+        return (index == null) ? -1 : index;
+    }
+
+    /**
+     * Returns the direction with the given index.
+     *
+     * @param index The index of the direction
+     * @return The direction, such as "east"
+     */
+    public String getDirectionName(int index)
+    {
+        return directions[index];
+    }
+
+    /**
+     * Returns the room reached by leaving a room in a direction.
+     *
+     * @param room The id of the room being left
+     * @param direction The index of the direction
+     * @return The id of the room in that direction, or -1 if there is no exit that way
+     */
+    public int getExit(int room, int direction)
+    {
+        int end = offsets.get(room + 1);
+        for (int exit = offsets.get(room); exit < end; exit++) {
+            if (exits.get(2 * exit) == direction) {
+                return exits.get(2 * exit + 1);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the first exit of a room.
+     *
+     * @param room The id of the room
+     * @return The index of its first exit
+     */
+    public int getFirstExit(int room)
+    {
+        return offsets.get(room);
+    }
+
+    /**
+     * Returns the index just past the last exit of a room.
+     *
+     * @param room The id of the room
+     * @return The index after its last exit
+     */
+    public int getEndExit(int room)
+    {
+        return offsets.get(room + 1);
+    }
+
+    /**
+     * Returns the direction of an exit.
+     *
+     * @param exit The index of the exit
+     * @return The index of its direction
+     */
+    public int getExitDirection(int exit)
+    {
+        return exits.get(2 * exit);
+    }
+
+    /**
+     * Returns the room an exit leads to.
+     *
+     * @param exit The index of the exit
+     * @return The id of the room it leads to
+     */
+    public int getExitTarget(int exit)
+    {
+        return exits.get(2 * exit + 1);
+    }
+
+    /**
+     * Add the directions of the exits of a room to a string.
+     *
+     * @param room The id of the room
+     * @param s Where the directions are added, each after a space
+     */
+    public void appendExits(int room, StringBuilder s)
+    {
+        int end = offsets.get(room + 1);
+        for (int exit = offsets.get(room); exit < end; exit++) {
+            s.append(' ').append(directions[exits.get(2 * exit)]);
+        }
+    }
+
+    /**
+     * This class builds an exit graph one room at a time. Rooms are added
+     * in the order of their ids, each followed by its exits.
+     */
+    public static class Builder
+    {
+        private String[] directions = new String[8];
+        private HashMap<String, Integer> directionIndex = new HashMap<String, Integer>();
+        private int directionCount;
+        private int[] offsets = new int[1024];
+        private int roomCount;
+        private int[] exits = new int[2048];
+        private int exitCount;
+
+        /**
+         * Start the exits of the next room.
+         *
+         * @return The id of the room
+         */
+        public int addRoom()
+        {
+            if (roomCount + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[roomCount] = exitCount;
+            roomCount++;
+            return roomCount - 1;
+        }
+
+        /**
+         * Add an exit to the last room added.
+         *
+         * @param direction The direction of the exit
+         * @param target The id of the room it leads to
+         */
+        public void addExit(String direction, int target)
+        {
+            Integer index = directionIndex.get(direction);
+            if (index == null) {
+                index = directionCount;
+                if (directionCount == directions.length) {
+                    directions = Arrays.copyOf(directions, directionCount * 2);
+                }
+                directions[directionCount++] = direction;
+                directionIndex.put(direction, index);
+            }
+            addExit(index.intValue(), target);
+        }
+
+        /**
+         * Add an exit to the last room added, in a direction that has
+         * already been used.
+         *
+         * @param direction The index of the direction of the exit
+         * @param target The id of the room it leads to
+         */
+        public void addExit(int direction, int target)
+        {
+            if (2 * exitCount + 2 > exits.length) {
+                exits = Arrays.copyOf(exits, exits.length * 2);
+            }
+            exits[2 * exitCount] = direction;
+            exits[2 * exitCount + 1] = target;
+            exitCount++;
+        }
+
+        /**
+         * Build the graph of the rooms and exits added so far.
+         *
+         * @param offHeap true to keep the arrays outside the Java heap
+         * @return The graph
+         */
+        public ExitGraph build(boolean offHeap)
+        {
+            offsets[roomCount] = exitCount;
+            return new ExitGraph(Arrays.copyOf(directions, directionCount),
+                buffer(offsets, roomCount + 1, offHeap), buffer(exits, 2 * exitCount, offHeap));
+        }
+
+        /**
+         * Returns the start of an array as an IntBuffer.
+         *
+         * @param array The array
+         * @param length The number of ints to keep
+         * @param offHeap true to copy them outside the Java heap
+         * @return The buffer
+         */
+        private static IntBuffer buffer(int[] array, int length, boolean offHeap)
+        {
+            if (!offHeap) {
+                return IntBuffer.wrap(Arrays.copyOf(array, length));
+            }
+            IntBuffer buffer = ByteBuffer.allocateDirect(length * 4)
+                .order(ByteOrder.nativeOrder()).asIntBuffer();
+            buffer.put(array, 0, length);
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
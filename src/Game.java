@@ -1,4 +1,20 @@
-import java.util.Stack;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
 /**
  *  "World of Wander" is a fun text-based adventure game where users can explore different
  *  rooms and interact with the environment.
@@ -13,35 +29,87 @@ import java.util.Stack;
 
 public class Game 
 {
-    private Parser parser;
-    private Room currentRoom;
-    private Room previousRoom;
-    private Stack<Room> previousRoomStack;
-    // store the item the user is interacting with
-    private Item playerItem;
-    // track the user's number of pickups
-    private int numPickup;
-    // track the room to teleport to
-    private Room destinationRoom;    
+    // listeners are told how long one command in this many of each player took
+    public static final int TIMING_INTERVAL = 8;
+
+    private CommandWords commands;  // holds all valid command words
+    // the rooms of this game
+    private World world;
+    // the room every new player starts in
+    private Room startRoom;
+    // finds routes between rooms, created when first needed
+    private RouteFinder routeFinder;
+    // every session playing this game, by id
+    private ConcurrentHashMap<Integer, Session> sessions;
+    private AtomicInteger nextSessionId;
+    // commands hold this for reading, and snapshots for writing
+    private StampedLock stateLock;
+    // the locks commands run on threads of their own, such as the shards of
+    // a ShardedGame, hold instead, which snapshots also hold for writing
+    private volatile StampedLock[] commandLocks;
+    // the number of the last snapshot, or of the last journal file if higher
+    private long snapshotSequence;
+    // where commands are journaled, or null if they are not
+    private Journal journal;
+    // told about everything the players do, replaced whenever one is added or removed
+    private volatile GameListener[] listeners;
+    // how many rooms each player's history holds, and whether it collapses A to B to A
+    private volatile int historyCapacity;
+    private volatile boolean collapseHistory;
     
     /**
-     * Create the game and initialise its internal map, as well
-     * as the previous room and previous room stack.
+     * Create the game and initialise its internal map. The map is shared
+     * by every session playing this game.
      */
     public Game() 
     {
-        createRooms();
-        parser = new Parser();
-        previousRoom = null;
-        previousRoomStack = new Stack<Room>();
-        playerItem = null;
-        numPickup = 0;
+        this(new World(), null);
+        startRoom = createRooms(world, "");
+    }
+
+    /**
+     * Create a game played in an existing world, such as a bigger world
+     * built for testing.
+     * 
+     * @param world The world shared by every session playing this game
+     * @param startRoom The room every new player starts in
+     */
+    public Game(World world, Room startRoom)
+    {
+        this.world = world;
+        this.startRoom = startRoom;
+        sessions = new ConcurrentHashMap<Integer, Session>();
+        nextSessionId = new AtomicInteger();
+        stateLock = new StampedLock();
+        commandLocks = new StampedLock[0];
+        listeners = new GameListener[0];
+        historyCapacity = RoomHistory.DEFAULT_CAPACITY;
+        commands = new CommandWords();
+        commands.setHandler(CommandWord.HELP, (session, command) -> { printHelp(session); return false; });
+        commands.setHandler(CommandWord.GO, (session, command) -> { goRoom(session, command); return false; });
+        commands.setHandler(CommandWord.QUIT, this::quit);
+        commands.setHandler(CommandWord.LOOK, (session, command) -> { look(session, command); return false; });
+        commands.setHandler(CommandWord.EAT, (session, command) -> { eat(session, command); return false; });
+        commands.setHandler(CommandWord.BACK, (session, command) -> { back(session, command); return false; });
+        commands.setHandler(CommandWord.STACK_BACK, (session, command) -> { stackBack(session, command); return false; });
+        commands.setHandler(CommandWord.TAKE, (session, command) -> { take(session, command); return false; });
+        commands.setHandler(CommandWord.DROP, (session, command) -> { drop(session, command); return false; });
+        commands.setHandler(CommandWord.CHARGE, (session, command) -> { charge(session, command); return false; });
+        commands.setHandler(CommandWord.FIRE, (session, command) -> { fire(session, command); return false; });
+        commands.setHandler(CommandWord.PATH, (session, command) -> { path(session, command); return false; });
+        commands.setHandler(CommandWord.INVENTORY, (session, command) -> { inventory(session, command); return false; });
     }
 
     /**
-     * Create all the rooms and link their exits together.
+     * Create all the rooms of the university campus in a world and link
+     * their exits together. The suffix is added to the name of every room,
+     * so that the campus can be built several times in the same world.
+     * 
+     * @param world The world to add the rooms to
+     * @param suffix The text added to the name of every room
+     * @return The room outside the main entrance, where the game starts
      */
-    private void createRooms()
+    public static Room createRooms(World world, String suffix)
     {
         Room outside, theatre, pub, lab, office;
         Item chair1, chair2, chair3, chair4, bar, computer1, 
@@ -51,33 +119,33 @@ public class Game
         TransporterRoom transporterRoom;
         
         // create some items
-        chair1 = new Item("a wooden chair",5.0,"Chair");
-        chair2 = new Item("a wooden chair",5.0,"Chair");
-        chair3 = new Item("a wooden chair",5.0,"Chair");
-        chair4 = new Item("a wooden chair",5.0,"Chair");
-        bar = new Item("a long bar with stools",95.67,"Bar");
-        computer1 = new Item("a PC",10.0,"Computer");
-        computer2 = new Item("a Mac",5.0,"Computer");
-        computer3 = new Item("a PC",10.0,"Computer");
-        tree1 = new Item("a fir tree",500.5,"Tree");
-        tree2 = new Item("a fir tree",500.5,"Tree");
-        cookie1 = new Item("a cookie",0.1,"Cookie");
-        cookie2 = new Item("a cookie",0.1,"Cookie");
-        cookie3 = new Item("a cookie",0.1,"Cookie");
-        cookie4 = new Item("a cookie",0.1,"Cookie");
-        cookie5 = new Item("a cookie",0.1,"Cookie");
-        beamer1 = new Beamer("a beamer",1.0,"Beamer");
-        beamer2 = new Beamer("a beamer",1.0,"Beamer");
+        chair1 = new Item(world.getItemType("a wooden chair",5.0,"Chair"));
+        chair2 = new Item(world.getItemType("a wooden chair",5.0,"Chair"));
+        chair3 = new Item(world.getItemType("a wooden chair",5.0,"Chair"));
+        chair4 = new Item(world.getItemType("a wooden chair",5.0,"Chair"));
+        bar = new Item(world.getItemType("a long bar with stools",95.67,"Bar"));
+        computer1 = new Item(world.getItemType("a PC",10.0,"Computer"));
+        computer2 = new Item(world.getItemType("a Mac",5.0,"Computer"));
+        computer3 = new Item(world.getItemType("a PC",10.0,"Computer"));
+        tree1 = new Item(world.getItemType("a fir tree",500.5,"Tree"));
+        tree2 = new Item(world.getItemType("a fir tree",500.5,"Tree"));
+        cookie1 = new Item(world.getItemType("a cookie",0.1,"Cookie"));
+        cookie2 = new Item(world.getItemType("a cookie",0.1,"Cookie"));
+        cookie3 = new Item(world.getItemType("a cookie",0.1,"Cookie"));
+        cookie4 = new Item(world.getItemType("a cookie",0.1,"Cookie"));
+        cookie5 = new Item(world.getItemType("a cookie",0.1,"Cookie"));
+        beamer1 = new Beamer(world.getItemType("a beamer",1.0,"Beamer"));
+        beamer2 = new Beamer(world.getItemType("a beamer",1.0,"Beamer"));
        
         // create the rooms
-        outside = new Room("outside the main entrance of the university");
-        theatre = new Room("in a lecture theatre");
-        pub = new Room("in the campus pub");
-        lab = new Room("in a computing lab");
-        office = new Room("in the computing admin office");
+        outside = new Room(world, "outside" + suffix, "outside the main entrance of the university");
+        theatre = new Room(world, "theatre" + suffix, "in a lecture theatre");
+        pub = new Room(world, "pub" + suffix, "in the campus pub");
+        lab = new Room(world, "lab" + suffix, "in a computing lab");
+        office = new Room(world, "office" + suffix, "in the computing admin office");
         
         // Create transporter room
-        transporterRoom = new TransporterRoom("in a mysterious transporter room");
+        transporterRoom = new TransporterRoom(world, "transporter" + suffix, "in a mysterious transporter room");
     
         // put items in the rooms
         outside.addItem(tree1);
@@ -113,7 +181,12 @@ public class Game
 
         office.setExit("west", lab);
 
-        currentRoom = outside;  // start game outside
+        // the transporter sends the player to any other room of this campus
+        transporterRoom.setDestinations(new AliasSampler(
+            new int[] { outside.getId(), theatre.getId(), pub.getId(), lab.getId(), office.getId() },
+            new double[] { 1, 1, 1, 1, 1 }));
+
+        return outside;  // start game outside
     }
     
     /**
@@ -121,100 +194,613 @@ public class Game
      */
     public void play() 
     {            
-        printWelcome();
-
+        Writer console = new OutputStreamWriter(System.out);
+        Session session = newSession(new BufferedSink(console));
+        play(session, new Parser(System.in, new PrintWriter(console), commands));
+    }
+    
+    /**
+     * Replay a recorded list of commands without the console, as one
+     * session. No prompts are printed, and the output is buffered and only
+     * flushed once the replay has finished, so that it can be compared
+     * with the output of an earlier run.
+     * 
+     * @param input The commands to replay, one per line
+     * @param output Where the output of the game is written
+     */
+    public void replay(Reader input, Writer output)
+    {
+        Writer out = new BufferedWriter(output, 1 << 16);
+        Session session = newSession(new BufferedSink(out, false));
+        play(session, new Parser(input, null, commands));
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    /**
+     * Play the game for one session, reading its commands from the given
+     * parser. Loops until that player quits, then ends the session. The
+     * output of each command is sent to the player once the command has
+     * been processed.
+     * 
+     * @param session The session of the player
+     * @param parser The source of the player's commands
+     */
+    public void play(Session session, Parser parser)
+    {
+        play(session, parser, this::processCommand);
+    }
+    
+    /**
+     * Play the game for one session as above, handing each command to
+     * the given runner, such as a ShardedGame, rather than processing it
+     * here. If reading a command or sending the output fails, such as when
+     * the player's connection is reset, the session is ended all the same
+     * before the exception is passed on, so that it is not saved forever.
+     * 
+     * @param session The session of the player
+     * @param parser The source of the player's commands
+     * @param runner What processes each command of the player
+     * @throws UncheckedIOException if the player's input or output fails
+     */
+    public void play(Session session, Parser parser, CommandHandler runner)
+    {
         // Enter the main command loop.  Here we repeatedly read commands and
         // execute them until the game is over.
                 
         boolean finished = false;
-        while (! finished) {
-            Command command = parser.getCommand();
-            finished = processCommand(command);
-            // Print the room desFcription whenever the player enters a room or uses the "look" command
-            if (command.getCommandWord().equals("go") || command.getCommandWord().equals("look")) {
-                roomDescription();
+        try {
+            startPlay(session);
+            sendOutput(session);
+            while (! finished) {
+                Command command = parser.getCommand();
+                finished = runner.execute(session, command);
+                sendOutput(session);
+            }
+        } finally {
+            if (! finished) {
+                endSession(session);    // the player is gone, so no goodbye
+            }
+        }
+        endPlay(session);
+        sendOutput(session);
+    }
+    
+    /**
+     * Start play for a session by welcoming the player. The output is left
+     * for the caller to send.
+     * 
+     * @param session The session of a new player
+     */
+    public void startPlay(Session session)
+    {
+        printWelcome(session);
+    }
+    
+    /**
+     * End play for a session whose player has quit, saying goodbye and
+     * ending the session. The output is left for the caller to send.
+     * 
+     * @param session The session of the player
+     */
+    public void endPlay(Session session)
+    {
+        session.println("Thank you for playing.  Good bye.");
+        endSession(session);
+    }
+    
+    /**
+     * Returns whether the commands journaled up to a position are safely on
+     * the disk, so that their output may be sent, without waiting for them.
+     * Without a journal, there is nothing to wait for.
+     * 
+     * @param position A position in the journal, such as that of a session
+     * @return true if the output may be sent, false otherwise
+     */
+    public boolean isDurable(long position)
+    {
+        return journal == null || journal.isDurable(position);
+    }
+    
+    /**
+     * Send a player the output of their commands, once the commands are
+     * safely in the journal.
+     * 
+     * @param session The session of the player
+     */
+    private void sendOutput(Session session)
+    {
+        if (journal != null) {
+            journal.awaitDurable(session.getJournalPosition());
+        }
+        session.flush();
+    }
+    
+    /**
+     * Returns the command words of this game. New commands can be added
+     * by registering them here before any session starts.
+     * 
+     * @return The command words and their handlers
+     */
+    public CommandWords getCommandWords()
+    {
+        return commands;
+    }
+    
+    /**
+     * Returns the world of this game.
+     * 
+     * @return The world shared by every session
+     */
+    public World getWorld()
+    {
+        return world;
+    }
+    
+    /**
+     * Create a new session for a player, starting in the start room.
+     * 
+     * @param out Where the output for the player is written
+     * @return The new session
+     */
+    public Session newSession(OutputSink out)
+    {
+        return openSession(nextSessionId.getAndIncrement(), out);
+    }
+    
+    /**
+     * Create a session with the given id, such as one being replayed from
+     * the journal.
+     * 
+     * @param id The id of the session
+     * @return The new session
+     */
+    Session openSession(int id)
+    {
+        return openSession(id, NullSink.INSTANCE);
+    }
+    
+    /**
+     * Create a session with the given id, starting in the start room, and
+     * journal its start.
+     * 
+     * @param id The id of the session
+     * @param out Where the output for the player is written
+     * @return The new session
+     */
+    private Session openSession(int id, OutputSink out)
+    {
+        Session session = new Session(id, startRoom, out);
+        if (historyCapacity != RoomHistory.DEFAULT_CAPACITY || collapseHistory) {
+            session.setHistoryLimit(historyCapacity, collapseHistory);
+        }
+        nextSessionId.accumulateAndGet(id + 1, Math::max);
+        long stamp = stateLock.readLock();
+        try {
+            if (journal == null) {
+                sessions.put(id, session);
+            } else {
+                synchronized (journal) {
+                    session.setJournalPosition(journal.startSession(session));
+                    sessions.put(id, session);
+                }
+            }
+        } finally {
+            stateLock.unlockRead(stamp);
+        }
+        return session;
+    }
+    
+    /**
+     * End a session, so that it is no longer saved.
+     * 
+     * @param session The session of a player who has left
+     */
+    public void endSession(Session session)
+    {
+        long stamp = stateLock.readLock();
+        try {
+            if (journal == null) {
+                sessions.remove(session.getId());
+            } else {
+                synchronized (journal) {
+                    session.setJournalPosition(journal.endSession(session));
+                    sessions.remove(session.getId());
+                }
+            }
+        } finally {
+            stateLock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * Returns the session with the given id, such as one restored from a
+     * checkpoint file.
+     * 
+     * @param id The id of the session
+     * @return The session, or null if there is no session with that id
+     */
+    public Session getSession(int id)
+    {
+        return sessions.get(id);
+    }
+    
+    /**
+     * Returns every session playing this game.
+     * 
+     * @return The sessions, which cannot be changed
+     */
+    public Collection<Session> getSessions()
+    {
+        return Collections.unmodifiableCollection(sessions.values());
+    }
+    
+    /**
+     * Set how many rooms each new player's history of rooms left holds, for
+     * stackBack, and whether going from one room to another and straight
+     * back leaves it as it was. Once a history is full, the oldest room is
+     * forgotten for each new one.
+     * 
+     * @param capacity The most rooms a history holds
+     * @param collapse Whether going from A to B and straight back to A
+     *        leaves the history as it was
+     * @throws IllegalArgumentException if the capacity is less than one
+     */
+    public void setHistoryLimit(int capacity, boolean collapse)
+    {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Bad history capacity: " + capacity);
+        }
+        historyCapacity = capacity;
+        collapseHistory = collapse;
+    }
+    
+    /**
+     * Tell a listener about everything the players of this game do from
+     * now on. With no listeners, commands are not timed at all.
+     * 
+     * @param listener The listener
+     */
+    public synchronized void addListener(GameListener listener)
+    {
+        GameListener[] added = Arrays.copyOf(listeners, listeners.length + 1);
+        added[listeners.length] = listener;
+        listeners = added;
+    }
+    
+    /**
+     * Stop telling a listener what the players do.
+     * 
+     * @param listener The listener
+     */
+    public synchronized void removeListener(GameListener listener)
+    {
+        List<GameListener> remaining = new ArrayList<GameListener>(Arrays.asList(listeners));
+        remaining.remove(listener);
+        listeners = remaining.toArray(new GameListener[remaining.size()]);
+    }
+    
+    /**
+     * Journal every command of this game from now on. The journal should
+     * first have recovered anything it holds into this game.
+     * 
+     * @param journal The journal
+     * @throws IOException if the first journal file cannot be created
+     */
+    public void setJournal(Journal journal) throws IOException
+    {
+        long[] stamps = lockState();
+        try {
+            startJournalFile(journal, ++snapshotSequence);
+            this.journal = journal;
+        } finally {
+            unlockState(stamps);
+        }
+    }
+    
+    /**
+     * Take a snapshot of the rooms that changed since the last snapshot and
+     * of every session. Commands wait while the snapshot is taken, so that
+     * it never holds half of a command. If commands are journaled, the
+     * journal moves on to a new file following the snapshot.
+     * 
+     * @return The snapshot
+     * @throws UncheckedIOException if a new journal file cannot be created
+     */
+    public Snapshot takeSnapshot()
+    {
+        long[] stamps = lockState();
+        try {
+            Snapshot snapshot = Snapshot.capture(world, sessions.values(), ++snapshotSequence);
+            if (journal != null) {
+                startJournalFile(journal, snapshotSequence);
+            }
+            return snapshot;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            unlockState(stamps);
+        }
+    }
+    
+    /**
+     * Create a lock for commands that run on a thread of their own, such
+     * as a shard of a ShardedGame, to hold instead of the lock of the game.
+     * Snapshots wait for the commands holding it as for any other command.
+     * 
+     * @return The new lock
+     */
+    StampedLock newCommandLock()
+    {
+        StampedLock lock = new StampedLock();
+        long stamp = stateLock.writeLock();
+        try {
+            StampedLock[] locks = Arrays.copyOf(commandLocks, commandLocks.length + 1);
+            locks[commandLocks.length] = lock;
+            commandLocks = locks;
+        } finally {
+            stateLock.unlockWrite(stamp);
+        }
+        return lock;
+    }
+    
+    /**
+     * Wait for every command to finish, and hold off new ones, by taking
+     * the lock of the game and every command lock for writing.
+     * 
+     * @return The stamps of the locks, for unlockState
+     */
+    private long[] lockState()
+    {
+        long stamp = stateLock.writeLock();
+        // no command lock is added while the lock of the game is held
+        StampedLock[] locks = commandLocks;
+        long[] stamps = new long[locks.length + 1];
+        stamps[0] = stamp;
+        for (int i = 0; i < locks.length; i++) {
+            stamps[i + 1] = locks[i].writeLock();
+        }
+        return stamps;
+    }
+    
+    /**
+     * Let commands run again after lockState.
+     * 
+     * @param stamps The stamps returned by lockState
+     */
+    private void unlockState(long[] stamps)
+    {
+        StampedLock[] locks = commandLocks;
+        for (int i = locks.length - 1; i >= 0; i--) {
+            locks[i].unlockWrite(stamps[i + 1]);
+        }
+        stateLock.unlockWrite(stamps[0]);
+    }
+    
+    /**
+     * Start a new journal file, with a new seed for the random numbers of
+     * the world so that the file can be replayed on its own.
+     * 
+     * @param journal The journal
+     * @param sequence The number of the snapshot the file follows
+     * @throws IOException if the file cannot be created
+     */
+    private void startJournalFile(Journal journal, long sequence) throws IOException
+    {
+        long seed = ThreadLocalRandom.current().nextLong();
+        journal.startFile(sequence, seed);
+        world.setSeed(seed);
+    }
+    
+    /**
+     * Called once a snapshot is safely in a checkpoint file, so that the
+     * journal files before it can be deleted, and the world can keep the
+     * items saved more compactly.
+     * 
+     * @param snapshot The snapshot that was saved
+     * @throws IOException if an old journal file cannot be deleted
+     */
+    void snapshotSaved(Snapshot snapshot) throws IOException
+    {
+        snapshot.itemsSaved(world);
+        if (journal != null) {
+            journal.deleteBefore(snapshot.getSequence());
+        }
+    }
+    
+    /**
+     * Returns the number of the last snapshot taken or restored, or of the
+     * last journal file if that is higher.
+     * 
+     * @return The snapshot number
+     */
+    public long getSnapshotSequence()
+    {
+        return snapshotSequence;
+    }
+    
+    /**
+     * Make sure the next snapshot has a higher number than the given one.
+     * 
+     * @param sequence A snapshot or journal file number already used
+     */
+    void skipSnapshotSequence(long sequence)
+    {
+        snapshotSequence = Math.max(snapshotSequence, sequence);
+    }
+    
+    /**
+     * Restore the rooms and sessions saved in a checkpoint file. The world
+     * of this game must be built the same way as that of the saved game,
+     * and the sessions playing this game are replaced by the saved ones.
+     * 
+     * @param path The checkpoint file
+     * @throws IOException if the file cannot be read
+     * @throws IllegalStateException if the file was saved from a different world
+     */
+    public void restore(Path path) throws IOException
+    {
+        List<Snapshot> snapshots = Checkpointer.read(path, world);
+        long[] stamps = lockState();
+        try {
+            for (Snapshot snapshot : snapshots) {
+                snapshot.restoreRooms(world);
+                snapshotSequence = snapshot.getSequence();
+            }
+            if (!snapshots.isEmpty()) {
+                sessions.clear();
+                for (Session session : snapshots.get(snapshots.size() - 1).restoreSessions(world)) {
+                    session.setHistoryLimit(historyCapacity, collapseHistory);
+                    sessions.put(session.getId(), session);
+                    nextSessionId.accumulateAndGet(session.getId() + 1, Math::max);
+                }
             }
+        } finally {
+            unlockState(stamps);
         }
-        System.out.println("Thank you for playing.  Good bye.");
     }
     
     /**
      * Prints the description of a room including the items inside and the items being carried.
+     * 
+     * @param session The session of the player
      */
-    private void roomDescription(){
-        System.out.println(currentRoom.getLongDescription());
+    private void roomDescription(Session session){
+        session.println(session.getCurrentRoom().getLongDescription());
         
-        if (playerItem!=null){
-            System.out.println("You are carrying: " + playerItem.getDescription());
-        } else {
-            System.out.println("You are not carrying anything.");
+        printInventory(session);
+    }
+    
+    /**
+     * Prints the items being carried, one per line.
+     * 
+     * @param session The session of the player
+     */
+    private void printInventory(Session session){
+        Inventory inventory = session.getInventory();
+        if (inventory.isEmpty()) {
+            session.println("You are not carrying anything.");
+            return;
+        }
+        StringBuilder s = new StringBuilder("You are carrying:");
+        for (Item item : inventory.stacks()) {
+            s.append("\n    ");
+            Room.appendStack(s, item, inventory.count(item));
         }
+        session.println(s.toString());
     }
     
     /**
      * Print out the opening message for the player.
+     * 
+     * @param session The session of the player
      */
-    private void printWelcome()
+    private void printWelcome(Session session)
     {
-        System.out.println();
-        System.out.println("Welcome to the World of Wander!");
-        System.out.println("World of Wander is an adventure game where you can explore rooms and interact with the environment!.");
-        System.out.println("Type 'help' if you need help.");
-        System.out.println();
-        roomDescription();
+        session.println();
+        session.println("Welcome to the World of Wander!");
+        session.println("World of Wander is an adventure game where you can explore rooms and interact with the environment!.");
+        session.println("Type 'help' if you need help.");
+        session.println();
+        roomDescription(session);
     }
 
     /**
-     * Given a command, processes the command.
+     * Given a command, processes the command for a session.
      * 
+     * @param session The session of the player
      * @param command The command to be processed
      * @return true If the command ends the game, false otherwise
      */
-    private boolean processCommand(Command command) 
+    public boolean processCommand(Session session, Command command) 
     {
-        boolean wantToQuit = false;
+        return processCommand(session, command, null);
+    }
 
-        if(command.isUnknown()) {
-            System.out.println("I don't know what you mean...");
+    /**
+     * Given a command, processes the command for a session, holding the
+     * given command lock rather than the lock of the game, such as on the
+     * thread of a shard. Every command run holding the same command lock
+     * must run on the same thread, and only touch rooms no other thread
+     * changes; its journal record is then only written in order with the
+     * other commands of that thread, without holding up other threads.
+     * 
+     * @param session The session of the player
+     * @param command The command to be processed
+     * @param lock A lock from newCommandLock, or null for the lock of the game
+     * @return true If the command ends the game, false otherwise
+     */
+    boolean processCommand(Session session, Command command, StampedLock lock) 
+    {
+        if(command.isUnknown() || commands.getHandler(command.getIndex()) == null) {
+            session.println("I don't know what you mean...");
             return false;
         }
 
-        String commandWord = command.getCommandWord();
-        if (commandWord.equals("help")) {
-            printHelp();
-        }
-        else if (commandWord.equals("go")) {
-            goRoom(command);
-        }
-        else if (commandWord.equals("quit")) {
-            wantToQuit = quit(command);
-        }
-        else if (commandWord.equals("look")) {
-            look(command);
-        }
-        else if (commandWord.equals("eat")) {
-            eat(command);
+        CommandHandler handler = commands.getHandler(command.getIndex());
+        GameListener[] listeners = this.listeners;
+        if (listeners.length == 0) {
+            return execute(session, command, handler, lock);
         }
-        else if (commandWord.equals("back")) {
-            back(command);
-        }
-        else if (commandWord.equals("stackBack")) {
-            stackBack(command);
-        }
-        else if (commandWord.equals("take")) {
-            take(command);
-        }
-        else if (commandWord.equals("drop")) {
-            drop(command);
+        // reading the clock can cost more than a quick command, so only one
+        // command in TIMING_INTERVAL of each player is timed
+        Room from = session.getCurrentRoom();
+        boolean finished;
+        long nanos = -1;
+        if (session.countCommand() % TIMING_INTERVAL == 0) {
+            long start = System.nanoTime();
+            finished = execute(session, command, handler, lock);
+            nanos = System.nanoTime() - start;
+        } else {
+            finished = execute(session, command, handler, lock);
         }
-        else if (commandWord.equals("charge")) {
-            charge(command);
+        Room to = session.getCurrentRoom();
+        for (GameListener listener : listeners) {
+            listener.commandProcessed(session, command, nanos);
+            if (to != from) {
+                listener.roomEntered(session, from, to);
+            }
         }
-        else if (commandWord.equals("fire")) {
-            fire(command);
+        return finished;
+    }
+
+    /**
+     * Run a command with the handler of its command word.
+     * 
+     * @param session The session of the player
+     * @param command The command to be processed
+     * @param handler The handler of the command word
+     * @param lock The command lock to hold, or null for the lock of the game
+     * @return true If the command ends the game, false otherwise
+     */
+    private boolean execute(Session session, Command command, CommandHandler handler, StampedLock lock)
+    {
+        // the handler of the command word does the work, while no snapshot is
+        // taken; a journaled command is written to the journal first, and
+        // journaled commands run one at a time, so they can be replayed in order
+        StampedLock held = (lock == null) ? stateLock : lock;
+        long stamp = held.readLock();
+        try {
+            if (journal == null) {
+                return handler.execute(session, command);
+            }
+            if (lock != null) {
+                // the commands of one thread are in order anyway, and commands
+                // of different threads touch different rooms, so any order of
+                // them replays the same
+                session.setJournalPosition(journal.command(session, command));
+                return handler.execute(session, command);
+            }
+            synchronized (journal) {
+                session.setJournalPosition(journal.command(session, command));
+                return handler.execute(session, command);
+            }
+        } finally {
+            held.unlockRead(stamp);
         }
-        // else command not recognised.
-        return wantToQuit;
     }
 
     // implementations of user commands:
@@ -223,14 +809,16 @@ public class Game
      * Print out some help information.
      * Here we print a cryptic message and a list of the 
      * command words.
+     * 
+     * @param session The session of the player
      */
-    private void printHelp() 
+    private void printHelp(Session session) 
     {
-        System.out.println("You are lost. You are alone. You wander");
-        System.out.println("around at the university.");
-        System.out.println();
-        System.out.println("Your command words are:");
-        System.out.println(parser.getCommands());
+        session.println("You are lost. You are alone. You wander");
+        session.println("around at the university.");
+        session.println();
+        session.println("Your command words are:");
+        session.println(commands.getCommandList());
     }
     
     /** 
@@ -238,32 +826,36 @@ public class Game
      * room, otherwise print an error message.
      * If we go to a new room, update previous room and previous room stack.
      * 
+     * @param session The session of the player
      * @param command The command to be processed
      */
-    private void goRoom(Command command) 
+    private void goRoom(Session session, Command command) 
     {
         if(!command.hasSecondWord()) {
             // if there is no second word, we don't know where to go...
-            System.out.println("Go where?");
+            session.println("Go where?");
         } else {
             String direction = command.getSecondWord();
+            Room currentRoom = session.getCurrentRoom();
         
             if (currentRoom instanceof TransporterRoom) {
-            // Get the next room randomly from the transporter room
-            currentRoom = currentRoom.getExit(direction);
+            // Get the next room randomly from the transporter room, with the player's own random numbers
+            TransporterRoom transporter = (TransporterRoom) currentRoom;
+            session.setCurrentRoom(transporter.getExit(direction, session.getRandom(world.getSeed())));
+            for (GameListener listener : listeners) {
+                listener.transported(session, transporter, session.getCurrentRoom());
+            }
             } else {
                 // Try to leave current room.
                 Room nextRoom = currentRoom.getExit(direction);
                 if (nextRoom == null) {
-                    System.out.println("There is no door!");
+                    session.println("There is no door!");
                 }
                 else {
-                    previousRoom = currentRoom; // store the previous room
-                    previousRoomStack.push(currentRoom); // and add to previous room stack
-                    currentRoom = nextRoom;
+                    session.enterRoom(nextRoom);
                 }
             }
-            roomDescription();            
+            roomDescription(session);            
         }
     }
 
@@ -271,13 +863,14 @@ public class Game
      * "Quit" was entered. Check the rest of the command to see
      * whether we really quit the game.
      * 
+     * @param session The session of the player
      * @param command The command to be processed
      * @return true, if this command quits the game, false otherwise
      */
-    private boolean quit(Command command) 
+    private boolean quit(Session session, Command command) 
     {
         if(command.hasSecondWord()) {
-            System.out.println("Quit what?");
+            session.println("Quit what?");
             return false;
         }
         else {
@@ -289,16 +882,17 @@ public class Game
      * "Look" was entered. Check the rest of the command to see
      * whether we really want to look.
      * 
+     * @param session The session of the player
      * @param command The command to be processed
      */
-    private void look(Command command) 
+    private void look(Session session, Command command) 
     {
         if(command.hasSecondWord()) {
-            System.out.println("Look what?");
+            session.println("Look what?");
         }
         else {
             // output the long description of this room
-            roomDescription();
+            roomDescription(session);
         }
     }
     
@@ -306,22 +900,24 @@ public class Game
      * "Eat" was entered. Check the rest of the command to see
      * whether we really want to eat.
      * 
+     * @param session The session of the player
      * @param command The command to be processed
      */
-    private void eat(Command command) 
+    private void eat(Session session, Command command) 
     {        
         if(command.hasSecondWord()) {
-            System.out.println("Eat what?");
+            session.println("Eat what?");
         } else {
-            String itemName = command.getSecondWord();
-            if (playerItem == null) {
-                System.out.println("You are not holding anything to eat.");
-            } else if (playerItem.getName().equalsIgnoreCase("cookie")) {
-                System.out.println("You have eaten the cookie and are no longer hungry.");
-                playerItem = null; // Remove the eaten cookie from the player's inventory
-                numPickup += 5;
+            Inventory inventory = session.getInventory();
+            Item cookie = inventory.find("cookie");
+            if (inventory.isEmpty()) {
+                session.println("You are not holding anything to eat.");
+            } else if (cookie != null) {
+                session.println("You have eaten the cookie and are no longer hungry.");
+                inventory.remove(cookie); // Remove the eaten cookie from the player's inventory
+                session.addPickups(5);
             } else {
-                System.out.println("You have no cookie to eat.");
+                session.println("You have no cookie to eat.");
             }
         }     
     }
@@ -330,26 +926,21 @@ public class Game
      * "Back" was entered. Check the rest of the command to see
      * whether we really quit the game.
      * 
+     * @param session The session of the player
      * @param command The command to be processed
      */
-    private void back(Command command) 
+    private void back(Session session, Command command) 
     {
         if(command.hasSecondWord()) {
-            System.out.println("Back what?");
+            session.println("Back what?");
         }
         else {
             // go back to the previous room, if possible
-            if (previousRoom==null) {
-                System.out.println("No room to go back to.");
+            if (!session.back()) {
+                session.println("No room to go back to.");
             } else {
-                // go back and swap previous and current rooms,
-                // and put current room on previous room stack
-                Room temp = currentRoom;
-                currentRoom = previousRoom;
-                previousRoom = temp;
-                previousRoomStack.push(temp);
                 // and print description
-                roomDescription();
+                roomDescription(session);
             }
         }
     }
@@ -358,24 +949,21 @@ public class Game
      * "StackBack" was entered. Check the rest of the command to see
      * whether we really want to stackBack.
      * 
+     * @param session The session of the player
      * @param command The command to be processed
      */
-    private void stackBack(Command command) 
+    private void stackBack(Session session, Command command) 
     {
         if(command.hasSecondWord()) {
-            System.out.println("StackBack what?");
+            session.println("StackBack what?");
         }
         else {
             // step back one room in our stack of rooms history, if possible
-            if (previousRoomStack.isEmpty()) {
-                System.out.println("No room to go stack back to.");
+            if (!session.stackBack()) {
+                session.println("No room to go stack back to.");
             } else {
-                // current room becomes previous room, and
-                // current room is taken from the top of the stack
-                previousRoom = currentRoom;
-                currentRoom = previousRoomStack.pop();
                 // and print description
-                roomDescription();
+                roomDescription(session);
             }
         }
     }
@@ -384,33 +972,44 @@ public class Game
      * "Take" was entered. Check the rest of the command to see
      * whether we really want to pick up an item.
      * 
+     * @param session The session of the player
      * @param command The command to be processed
      */
-    private void take(Command command) {
+    private void take(Session session, Command command) {
         if (!command.hasSecondWord()) {
-            System.out.println("Take what?");
+            session.println("Take what?");
         } else {
             String itemName = command.getSecondWord();
-            Item itemToTake = currentRoom.itemInRoom(itemName);
-            if(itemName.equalsIgnoreCase("Cookie")){
-                if(itemToTake != null){
-                    System.out.println("You picked up a cookie.");
-                    playerItem = itemToTake;
-                    currentRoom.removeItem(itemToTake);
+            Room currentRoom = session.getCurrentRoom();
+            Inventory inventory = session.getInventory();
+            // the item is only taken if it fits, which adds to what is carried
+            int carried = inventory.size();
+            if(itemName.equalsIgnoreCase("all")){
+                takeAll(session);
+            } else if(itemName.equalsIgnoreCase("Cookie")){
+                // find and remove the item in one step, so no one else can take it too
+                Item itemToTake = currentRoom.takeItem(itemName, inventory::add);
+                if(itemToTake == null){
+                    session.println("There is no cookie in the room.");
+                } else if(inventory.size() > carried){
+                    session.println("You picked up a cookie.");
+                    itemTaken(session, currentRoom, itemToTake);
                 } else {
-                    System.out.println("There is no cookie in the room.");
+                    session.println("You are carrying too much to pick up a cookie.");
                 }
-            } else if (numPickup > 0){
-                if(itemToTake != null){
-                    playerItem = itemToTake;
-                    currentRoom.removeItem(itemToTake);
-                    System.out.println("You picked up a " + itemName);
-                    numPickup--;
+            } else if (session.getNumPickup() > 0){
+                Item itemToTake = currentRoom.takeItem(itemName, inventory::add);
+                if(itemToTake == null){
+                    session.println("That item is not in the room.");
+                } else if(inventory.size() > carried){
+                    session.println("You picked up a " + itemName);
+                    session.addPickups(-1);
+                    itemTaken(session, currentRoom, itemToTake);
                 } else {
-                    System.out.println("That item is not in the room.");
+                    session.println("The " + itemName + " is too heavy to carry.");
                 }
             } else {
-                System.out.println("You can't pick up items until you eat a cookie.");
+                session.println("You can't pick up items until you eat a cookie.");
             }
         }
     }
@@ -419,35 +1018,163 @@ public class Game
      * "Drop" was entered. Check the rest of the command to see
      * whether we really want to drop an item.
      *
+     * @param session The session of the player
      * @param command The command to be processed
      */
-    private void drop(Command command) {
-        if(playerItem != null){
-            currentRoom.addItem(playerItem);
-            System.out.println("You have dropped " + playerItem.getName() + ".");
-            playerItem = null;
+    private void drop(Session session, Command command) {
+        Inventory inventory = session.getInventory();
+        if (inventory.isEmpty()) {
+            session.println("You have nothing to drop.");
+        } else if (command.hasSecondWord() && command.getSecondWord().equalsIgnoreCase("all")) {
+            List<Item> dropped = inventory.removeAll();
+            session.getCurrentRoom().addItems(dropped);
+            session.println("You have dropped " + listNames(dropped) + ".");
+            for (Item item : dropped) {
+                itemDropped(session, session.getCurrentRoom(), item);
+            }
+        } else if (command.hasSecondWord() || inventory.size() == 1) {
+            // with only one item carried, "drop" on its own drops it
+            Item playerItem = command.hasSecondWord()
+                ? inventory.find(command.getSecondWord()) : inventory.iterator().next();
+            if (playerItem == null) {
+                session.println("You are not carrying that.");
+            } else {
+                inventory.remove(playerItem);
+                session.getCurrentRoom().addItem(playerItem);
+                session.println("You have dropped " + playerItem.getName() + ".");
+                itemDropped(session, session.getCurrentRoom(), playerItem);
+            }
+        } else {
+            session.println("Drop what?");
+        }
+    }
+    
+    /**
+     * "Take all" was entered. Pick up every item in the room that can be
+     * carried, going through the room's items once. Cookies can always be
+     * picked up, and every other item uses up a pickup.
+     *
+     * @param session The session of the player
+     */
+    private void takeAll(Session session) {
+        Inventory inventory = session.getInventory();
+        List<Item> taken = session.getCurrentRoom().takeItems(item -> {
+            if (item.getName().equalsIgnoreCase("Cookie")) {
+                return inventory.add(item);
+            }
+            if (session.getNumPickup() > 0 && inventory.add(item)) {
+                session.addPickups(-1);
+                return true;
+            }
+            return false;
+        });
+        if (taken.isEmpty()) {
+            session.println("There is nothing here you can pick up.");
         } else {
-            System.out.println("You have nothing to drop.");
+            session.println("You picked up " + listNames(taken) + ".");
+            for (Item item : taken) {
+                itemTaken(session, session.getCurrentRoom(), item);
+            }
+        }
+    }
+    
+    /**
+     * Tell the listeners that a player has taken an item.
+     *
+     * @param session The session of the player
+     * @param room The room the item was taken from
+     * @param item The item
+     */
+    private void itemTaken(Session session, Room room, Item item) {
+        for (GameListener listener : listeners) {
+            listener.itemTaken(session, room, item);
+        }
+    }
+    
+    /**
+     * Tell the listeners that a player has dropped an item.
+     *
+     * @param session The session of the player
+     * @param room The room the item was dropped in
+     * @param item The item
+     */
+    private void itemDropped(Session session, Room room, Item item) {
+        for (GameListener listener : listeners) {
+            listener.itemDropped(session, room, item);
+        }
+    }
+    
+    /**
+     * "Inventory" was entered. Print the items being carried and how much
+     * they weigh.
+     *
+     * @param session The session of the player
+     * @param command The command to be processed
+     */
+    private void inventory(Session session, Command command) {
+        if (command.hasSecondWord()) {
+            session.println("Inventory what?");
+            return;
+        }
+        printInventory(session);
+        Inventory inventory = session.getInventory();
+        session.println("You are carrying " + inventory.getWeight() + "kg of the "
+            + inventory.getCapacity() + "kg you can carry.");
+    }
+    
+    /**
+     * Returns the names of some items, separated by commas.
+     *
+     * @param items The items
+     * @return The names of the items
+     */
+    private static String listNames(List<Item> items) {
+        StringBuilder s = new StringBuilder();
+        for (Item item : items) {
+            if (s.length() > 0) {
+                s.append(", ");
+            }
+            s.append(item.getName());
+        }
+        return s.toString();
+    }
+    
+    /**
+     * Returns the first beamer the player is carrying that is or is not
+     * charged.
+     *
+     * @param session The session of the player
+     * @param charged Whether the beamer should be charged
+     * @return The beamer, or null if no such beamer is carried
+     */
+    private static Beamer carriedBeamer(Session session, boolean charged) {
+        for (Item item : session.getInventory()) {
+            if (item instanceof Beamer && ((Beamer) item).isCharged() == charged) {
+                return (Beamer) item;
+            }
         }
+        return null;
     }
     
     /**
      * "Charge" was entered. Check the rest of the command to see
      * whether we are carrying a beamer.
      *
+     * @param session The session of the player
      * @param command The command to be processed
      */
-    private void charge(Command command) {
-        if (playerItem instanceof Beamer) {
-            Beamer beamer = (Beamer) playerItem;
-            if (beamer.charge()){
-                System.out.println("Beamer is now charged.");
-                destinationRoom = currentRoom;
-            } else {
-                System.out.println("Beamer is already charged");
+    private void charge(Session session, Command command) {
+        Beamer beamer = carriedBeamer(session, false);
+        if (beamer != null) {
+            session.getInventory().replace(beamer, beamer.charge(session.getCurrentRoom()));
+            session.println("Beamer is now charged.");
+            for (GameListener listener : listeners) {
+                listener.beamerCharged(session, session.getCurrentRoom());
             }
+        } else if (carriedBeamer(session, true) != null) {
+            session.println("Beamer is already charged");
         } else {
-            System.out.println("You are not carrying a Beamer.");
+            session.println("You are not carrying a Beamer.");
         }
     }
     
@@ -455,23 +1182,87 @@ public class Game
      * "Fire" was entered. Check the rest of the command to see
      * whether we really want to drop an item.
      *
+     * @param session The session of the player
      * @param command The command to be processed
      */
-    private void fire(Command command) {
-        if (playerItem instanceof Beamer) {
-            Beamer beamer = (Beamer) playerItem;
-            if (beamer.isCharged()) { // Check if Beamer is charged before firing
-                if (beamer.fire()) {
-                    previousRoom = currentRoom; // Store the current room as previous room
-                    previousRoomStack.push(currentRoom); // Push current room to stack
-                    currentRoom = destinationRoom; // Teleport to the destination room
-                    roomDescription();
+    private void fire(Session session, Command command) {
+        Beamer beamer = carriedBeamer(session, true);
+        if (beamer != null) { // Check if Beamer is charged before firing
+            Beamer fired = beamer.fire();
+            if (fired != null) {
+                session.getInventory().replace(beamer, fired);
+                // Teleport to the room the beamer was charged in, remembering where we were
+                Room from = session.getCurrentRoom();
+                session.enterRoom(beamer.getDestination());
+                for (GameListener listener : listeners) {
+                    listener.beamerFired(session, from, session.getCurrentRoom());
                 }
-            } else {
-                System.out.println("Beamer is not charged!");
+                roomDescription(session);
             }
+        } else if (carriedBeamer(session, false) != null) {
+            session.println("Beamer is not charged!");
         } else {
-            System.out.println("You must be carrying a beamer to fire it.");
+            session.println("You must be carrying a beamer to fire it.");
+        }
+    }
+    
+    /**
+     * "Path" was entered. Check the rest of the command to see which
+     * room the player wants to get to, and print the way there.
+     *
+     * @param session The session of the player
+     * @param command The command to be processed
+     */
+    private void path(Session session, Command command) {
+        if (!command.hasSecondWord()) {
+            session.println("Path to where?");
+            return;
+        }
+        Room target = world.getRoom(command.getSecondWord());
+        if (target == null) {
+            session.println("There is no room called " + command.getSecondWord() + ".");
+            return;
+        }
+        // the beamer fire would use can take the player back to where it was charged
+        int beamerRoom = -1;
+        Beamer beamer = carriedBeamer(session, true);
+        if (beamer != null) {
+            beamerRoom = beamer.getDestinationId();
+        }
+        RouteFinder finder = getRouteFinder();
+        int[] route = finder.findRoute(session.getCurrentRoom().getId(), target.getId(), beamerRoom);
+        if (route == null) {
+            session.println("You can't get there from here.");
+        } else if (route.length == 0) {
+            session.println("You are already there.");
+        } else {
+            ExitGraph graph = finder.getGraph();
+            StringBuilder s = new StringBuilder("The way to " + target.getName() + " is:");
+            for (int step : route) {
+                s.append(' ');
+                if (step == RouteFinder.FIRE_BEAMER) {
+                    s.append("fire");
+                } else {
+                    s.append(graph.getDirectionName(graph.getExitDirection(step)));
+                }
+            }
+            session.println(s.toString());
+        }
+    }
+    
+    /**
+     * Returns the route finder of this game, creating it the first time
+     * it is needed. Every player's "path" shares it. No landmark index is
+     * built, as the search from both ends is the faster of the two in the
+     * campus copies and generated worlds the game is played in.
+     *
+     * @return The route finder for the world of this game
+     */
+    public synchronized RouteFinder getRouteFinder()
+    {
+        if (routeFinder == null) {
+            routeFinder = new RouteFinder(world.getExitGraph(), world.getTransporters());
         }
+        return routeFinder;
     }
 }
\ No newline at end of file
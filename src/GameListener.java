@@ -0,0 +1,95 @@
+/**
+ * This interface is told what the players of a game do: every command they
+ * run and how long it took, the rooms they enter, the transporters and
+ * beamers they use and the items they take and drop. Listeners are added to
+ * a Game, and every method does nothing unless it is overridden.
+ *
+ * The methods are called on the thread of the player, while the command is
+ * running, so many of them can be called at once for different players.
+ * They must be quick and safe to call from many threads, and must not run
+ * commands themselves.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+public interface GameListener
+{
+    /**
+     * A command has been run. Only one command in Game.TIMING_INTERVAL of
+     * each player is timed, since reading the clock costs about as much as
+     * a quick command.
+     *
+     * @param session The session of the player
+     * @param command The command
+     * @param nanos How long the command took, in nanoseconds, or -1 if it
+     *        was not timed
+     */
+    default void commandProcessed(Session session, Command command, long nanos)
+    {
+    }
+
+    /**
+     * A player has entered a room, by any means.
+     *
+     * @param session The session of the player
+     * @param from The room the player left
+     * @param to The room the player entered
+     */
+    default void roomEntered(Session session, Room from, Room to)
+    {
+    }
+
+    /**
+     * A player has been sent to a random room by a transporter room.
+     *
+     * @param session The session of the player
+     * @param transporter The transporter room
+     * @param to The room the player was sent to
+     */
+    default void transported(Session session, TransporterRoom transporter, Room to)
+    {
+    }
+
+    /**
+     * A player has charged a beamer.
+     *
+     * @param session The session of the player
+     * @param room The room the beamer will take the player back to
+     */
+    default void beamerCharged(Session session, Room room)
+    {
+    }
+
+    /**
+     * A player has fired a beamer.
+     *
+     * @param session The session of the player
+     * @param from The room the player left
+     * @param to The room the beamer took the player to
+     */
+    default void beamerFired(Session session, Room from, Room to)
+    {
+    }
+
+    /**
+     * A player has taken an item out of a room.
+     *
+     * @param session The session of the player
+     * @param room The room
+     * @param item The item
+     */
+    default void itemTaken(Session session, Room room, Item item)
+    {
+    }
+
+    /**
+     * A player has dropped an item in a room.
+     *
+     * @param session The session of the player
+     * @param room The room
+     * @param item The item
+     */
+    default void itemDropped(Session session, Room room, Item item)
+    {
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * This class lets many players wander the same World of Wander at once over
+ * local network connections. Every connection gets its own Session and Parser,
+ * while the rooms and items are shared through a single Game.
+ *
+ * Each connection is handled on its own virtual thread when the Java runtime
+ * supports them, otherwise on a pooled platform thread.
+ *
+ * Usage: java GameServer [port [world.wow|- [checkpoint file [journal directory]]]]
+ * When a checkpoint file is given, the game is restored from it if it exists
+ * and saved to it every second while the server runs. When a journal
+ * directory is given as well, every command is journaled there, and the
+ * commands since the last checkpoint are replayed when the server starts.
+ *
+ * What the players do is counted by Metrics, which can be watched through
+ * JMX while the server runs and is printed when it stops.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.management.JMException;
+
+public class GameServer
+{
+    // the port used when none is given
+    public static final int DEFAULT_PORT = 4444;
+    // the time between checkpoints, in milliseconds
+    private static final long CHECKPOINT_PERIOD = 1000;
+
+    private Game game;
+    private int port;
+    private ExecutorService executor;
+
+    /**
+     * Create a server for the given game, listening on the given port.
+     *
+     * @param game The game shared by every connection
+     * @param port The local port to listen on
+     */
+    public GameServer(Game game, int port)
+    {
+        this.game = game;
+        this.port = port;
+        executor = newConnectionExecutor();
+    }
+
+    /**
+     * Accept connections until the server is stopped, starting a session
+     * for each one.
+     *
+     * @throws IOException if the server socket cannot be opened
+     */
+    public void run() throws IOException
+    {
+        try (ServerSocket server = new ServerSocket(port, 0, InetAddress.getLoopbackAddress())) {
+            while (!server.isClosed()) {
+                Socket socket = server.accept();
+                executor.execute(() -> serve(socket));
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Play the game over one connection until the player quits or
+     * disconnects. Either way, the player's session is ended.
+     *
+     * @param socket The connection to the player
+     */
+    void serve(Socket socket)
+    {
+        try (Socket s = socket) {
+            InputStream in = s.getInputStream();
+            Writer out = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8);
+            Session session = game.newSession(new BufferedSink(out));
+            game.play(session, new Parser(in, new PrintWriter(out), game.getCommandWords()));
+        } catch (IOException | UncheckedIOException e) {
+            // the player disconnected, and play has ended the session
+        }
+    }
+
+    /**
+     * Returns an executor running every task on a new virtual thread if the
+     * runtime has them, or on a cached pool of platform threads otherwise.
+     *
+     * @return The executor for connections
+     */
+    private static ExecutorService newConnectionExecutor()
+    {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Start a server for a new game. The port may be given as the first
+     * argument, a compiled world file to play in as the second ("-" for the
+     * built-in campus), a checkpoint file as the third and a journal
+     * directory as the fourth.
+     *
+     * @param args The command line arguments
+     * @throws IOException if a file cannot be read or written or the server socket cannot be opened
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        new GameServer(createGame(args), port).run();
+    }
+
+    /**
+     * Create the game for a server from the command line arguments: the
+     * world from the second, and the checkpoint file and journal directory
+     * from the third and fourth, if given. Checkpoints are started, and the
+     * game's Metrics registered and printed when the server stops.
+     *
+     * @param args The command line arguments of the server
+     * @return The game
+     * @throws IOException if a file cannot be read or written
+     */
+    static Game createGame(String[] args) throws IOException
+    {
+        Game game;
+        if (args.length > 1 && !args[1].equals("-")) {
+            StoredWorld world = StoredWorld.open(Paths.get(args[1]));
+            game = new Game(world, world.getStartRoom());
+        } else {
+            game = new Game();
+        }
+        if (args.length > 2) {
+            Path path = Paths.get(args[2]);
+            if (Files.exists(path)) {
+                game.restore(path);
+            }
+            if (args.length > 3) {
+                Journal journal = new Journal(Paths.get(args[3]));
+                long start = System.nanoTime();
+                long commands = journal.recover(game);
+                long elapsed = Math.max(1, System.nanoTime() - start);
+                System.err.printf("Replayed %d commands in %d ms (%.0f commands/s)%n",
+                                  commands, elapsed / 1000000, commands * 1e9 / elapsed);
+                game.setJournal(journal);
+            }
+            Checkpointer checkpointer = new Checkpointer(game, path);
+            checkpointer.start(CHECKPOINT_PERIOD);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    checkpointer.close();
+                } catch (IOException e) {
+                    System.err.println("Last checkpoint failed: " + e.getMessage());
+                }
+            }));
+        }
+        Metrics metrics = new Metrics(game);
+        try {
+            metrics.register();
+        } catch (JMException e) {
+            System.err.println("Metrics are not shown through JMX: " + e.getMessage());
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(metrics.getReport())));
+        return game;
+    }
+}
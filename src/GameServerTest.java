@@ -0,0 +1,118 @@
+/**
+ * The test class GameServerTest. It checks that a player's session is ended
+ * whether the player quits or their connection is cut off in mid-game, so
+ * that no session is left behind to be saved in every checkpoint.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GameServerTest
+{
+    private Game game;
+    private GameServer server;
+    private ServerSocket listener;  // accepts the connection of the test
+    private Socket client;          // the player's end of the connection
+    private Thread serving;         // serves the connection
+
+    /**
+     * Connect a player to a server for a new game.
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        game = new Game();
+        server = new GameServer(game, 0);
+        listener = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        client = new Socket(listener.getInetAddress(), listener.getLocalPort());
+        Socket accepted = listener.accept();
+        serving = new Thread(() -> server.serve(accepted));
+        serving.start();
+    }
+
+    /**
+     * Close the sockets.
+     */
+    @After
+    public void tearDown() throws IOException
+    {
+        client.close();
+        listener.close();
+    }
+
+    /**
+     * Send a line to the server.
+     *
+     * @param line The line, without its line terminator
+     */
+    private void send(String line) throws IOException
+    {
+        OutputStream out = client.getOutputStream();
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Read from the server until the given text has been sent.
+     *
+     * @param text The text to wait for
+     */
+    private void await(String text) throws IOException
+    {
+        InputStream in = client.getInputStream();
+        StringBuilder received = new StringBuilder();
+        byte[] buffer = new byte[4096];
+        while (received.indexOf(text) < 0) {
+            int count = in.read(buffer);
+            assertTrue("the server stopped before sending " + text, count >= 0);
+            received.append(new String(buffer, 0, count, StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * A player who quits has their session ended.
+     */
+    @Test
+    public void testQuit() throws IOException, InterruptedException
+    {
+        send("go east");
+        await("lecture theatre");
+        assertEquals(1, game.getSessions().size());
+        send("quit");
+        serving.join(10000);
+        assertFalse(serving.isAlive());
+        assertTrue(game.getSessions().isEmpty());
+    }
+
+    /**
+     * A player whose connection is reset in mid-game has their session
+     * ended too.
+     */
+    @Test
+    public void testConnectionReset() throws IOException, InterruptedException
+    {
+        send("go east");
+        await("lecture theatre");
+        assertEquals(1, game.getSessions().size());
+        client.setSoLinger(true, 0);    // close with a reset rather than an end of input
+        client.close();
+        serving.join(10000);
+        assertFalse(serving.isAlive());
+        assertTrue(game.getSessions().isEmpty());
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * The test class GameTest. It checks that players taking and dropping the
+ * same items at once, each on a thread of its own, never duplicate or lose
+ * an item.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class GameTest
+{
+    // the number of commands each player gives
+    private static final int OPERATIONS = 20000;
+
+    /**
+     * Players fight over fewer cookies than there are players, in one room.
+     * The cookies are all alike, so the room keeps them as one stack, and a
+     * cookie taken twice shows up as more cookies carried than there are.
+     */
+    @Test
+    public void testTakeAndDropAtOnce() throws InterruptedException
+    {
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        World world = new World();
+        Room room = new Room(world, "canteen", "in the canteen");
+        int cookies = threads / 2 + 1;
+        for (int i = 0; i < cookies; i++) {
+            room.addItem(new Item("a cookie", 0.1, "Cookie"));
+        }
+        // how many cookies the players carry, and how many times that was
+        // more than there are
+        AtomicInteger carried = new AtomicInteger();
+        AtomicInteger clashes = new AtomicInteger();
+        Game game = new Game(world, room);
+        Command take = new Command(CommandWord.TAKE, "cookie");
+        Command drop = new Command(CommandWord.DROP, null);
+
+        Session[] players = new Session[threads];
+        Thread[] running = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            Session player = game.newSession(NullSink.INSTANCE);
+            players[t] = player;
+            running[t] = new Thread(() -> {
+                Inventory inventory = player.getInventory();
+                for (int i = 0; i < OPERATIONS; i++) {
+                    if (inventory.isEmpty()) {
+                        game.processCommand(player, take);
+                        if (!inventory.isEmpty() && carried.incrementAndGet() > cookies) {
+                            clashes.incrementAndGet();
+                        }
+                    } else {
+                        carried.decrementAndGet();
+                        game.processCommand(player, drop);
+                    }
+                }
+            });
+        }
+        for (Thread t : running) {
+            t.start();
+        }
+        for (Thread t : running) {
+            t.join();
+        }
+
+        // every cookie must be in the room or carried, once
+        int found = room.getItemList().size();
+        for (Session player : players) {
+            found += player.getInventory().size();
+        }
+        assertEquals(0, clashes.get());
+        assertEquals(cookies, found);
+    }
+}
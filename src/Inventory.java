@@ -0,0 +1,265 @@
+/**
+ * This class holds the items a player is carrying. Items are found by name
+ * without searching through every item, and the total weight is kept up to
+ * date as items come and go, so checking whether one more item can be
+ * carried takes the same time however much is carried.
+ *
+ * Equal items, such as several cookies, are kept as one stack with a count.
+ *
+ * The weights are added up in grams, as whole numbers, so taking and dropping
+ * items many times never leaves the total a little off.
+ *
+ * The items can be shared with a snapshot without copying them: the
+ * inventory copies them before its next change instead.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+public class Inventory implements Iterable<Item>
+{
+    // the weight a player can carry, in kilograms, unless told otherwise
+    public static final double DEFAULT_CAPACITY = 100.0;
+
+    // the items carried, indexed by name
+    private ItemIndex items;
+    // whether the items are shared, and must be copied before a change
+    private boolean shared;
+    // the most and the total weight that can be carried, in grams
+    private long capacity;
+    private long weight;
+
+    /**
+     * Create an empty inventory that can carry the default weight.
+     */
+    public Inventory()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create an empty inventory that can carry up to the given weight.
+     *
+     * @param capacity The most weight that can be carried, in kilograms
+     */
+    public Inventory(double capacity)
+    {
+        items = new ItemIndex();
+        this.capacity = grams(capacity);
+        weight = 0;
+    }
+
+    /**
+     * Returns whether an item is light enough to be carried along with
+     * everything already carried.
+     *
+     * @param item The item
+     * @return true if the item can be carried, false if it is too heavy
+     */
+    public boolean canCarry(Item item)
+    {
+        return weight + grams(item.getWeight()) <= capacity;
+    }
+
+    /**
+     * Add an item, if it is light enough to be carried.
+     *
+     * @param item The item to add
+     * @return true if the item was added, false if it is too heavy
+     */
+    public boolean add(Item item)
+    {
+        if (!canCarry(item)) {
+            return false;
+        }
+        changeItems().add(item);
+        weight += grams(item.getWeight());
+        return true;
+    }
+
+    /**
+     * Remove an item.
+     *
+     * @param item The item to remove
+     * @return true if the item was carried, false otherwise
+     */
+    public boolean remove(Item item)
+    {
+        if (!items.contains(item)) {
+            return false;
+        }
+        changeItems().remove(item);
+        weight -= grams(item.getWeight());
+        return true;
+    }
+
+    /**
+     * Put an item in the place of one carried, such as a beamer just
+     * charged in the place of the beamer it was.
+     *
+     * @param item The item carried
+     * @param replacement The item to carry instead
+     * @return true if the item was carried, false otherwise
+     */
+    public boolean replace(Item item, Item replacement)
+    {
+        if (!items.contains(item)) {
+            return false;
+        }
+        changeItems().replace(item, replacement);
+        weight += grams(replacement.getWeight()) - grams(item.getWeight());
+        return true;
+    }
+
+    /**
+     * Remove every item.
+     *
+     * @return The items that were carried, in the order they were added
+     */
+    public List<Item> removeAll()
+    {
+        List<Item> removed = new ArrayList<Item>(items.size());
+        for (Item item : items) {
+            removed.add(item);
+        }
+        items = new ItemIndex();
+        shared = false;
+        weight = 0;
+        return removed;
+    }
+
+    /**
+     * Find the first item added with the given name, ignoring case.
+     *
+     * @param name The name of the item
+     * @return The item, or null if no item with that name is carried
+     */
+    public Item find(String name)
+    {
+        return items.find(name);
+    }
+
+    /**
+     * Returns whether an item is carried.
+     *
+     * @param item The item
+     * @return true if the item is carried, false otherwise
+     */
+    public boolean contains(Item item)
+    {
+        return items.contains(item);
+    }
+
+    /**
+     * Returns how many items equal to the given one are carried.
+     *
+     * @param item The item
+     * @return The number of items in its stack, or 0 if there are none
+     */
+    public int count(Item item)
+    {
+        return items.count(item);
+    }
+
+    /**
+     * Returns one item of each stack of equal items carried.
+     *
+     * @return The first item of every stack, in the order they were added
+     */
+    public Set<Item> stacks()
+    {
+        return items.stacks();
+    }
+
+    /**
+     * Returns the number of items carried.
+     *
+     * @return The number of items
+     */
+    public int size()
+    {
+        return items.size();
+    }
+
+    /**
+     * Returns whether nothing is carried.
+     *
+     * @return true if no item is carried, false otherwise
+     */
+    public boolean isEmpty()
+    {
+        return items.size() == 0;
+    }
+
+    /**
+     * Returns the total weight of the items carried.
+     *
+     * @return The weight, in kilograms
+     */
+    public double getWeight()
+    {
+        return weight / 1000.0;
+    }
+
+    /**
+     * Returns the most weight that can be carried.
+     *
+     * @return The weight, in kilograms
+     */
+    public double getCapacity()
+    {
+        return capacity / 1000.0;
+    }
+
+    /**
+     * Returns the items carried, in the order they were added.
+     *
+     * @return An iterator over the items
+     */
+    public Iterator<Item> iterator()
+    {
+        return items.iterator();
+    }
+
+    /**
+     * Returns the items carried, to be shared with a snapshot. They are
+     * never changed again; the inventory copies them before its next change.
+     *
+     * @return The items carried
+     */
+    ItemIndex share()
+    {
+        shared = true;
+        return items;
+    }
+
+    /**
+     * Returns the items, copying them first if they are shared.
+     *
+     * @return The items, which may be changed
+     */
+    private ItemIndex changeItems()
+    {
+        if (shared) {
+            items = items.copy();
+            shared = false;
+        }
+        return items;
+    }
+
+    /**
+     * Turns a weight in kilograms into whole grams.
+     *
+     * @param kilograms The weight
+     * @return The weight in grams
+     */
+    private static long grams(double kilograms)
+    {
+        return Math.round(kilograms * 1000);
+    }
+}
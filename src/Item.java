@@ -1,53 +1,126 @@
 /**
  * This class represents an item that can be placed in any of the rooms within the game. Each item has a
  * description, weight, and a name for identification. Players can interact with these items while exploring rooms.
- * 
+ *
+ * The name, description and weight are held by the item's ItemType, which is shared by every item of the same
+ * kind in a world, so an item itself is only a small handle. Plain items have nothing of their own, so two items
+ * of the same kind are equal, and a room or inventory holding several of them only keeps a count. Items with a
+ * state of their own, such as beamers, are only equal to themselves.
+ *
  * @author Lehem Temesgen
  * @version 03/14/2024
  */
 public class Item
 {
-    // description of the item
-    private String description;
-    
-    // weight of the item in kilgrams 
-    private double weight;
-    
-    // shorter name for an item
-    private String name;
-
-    /**
-     * Constructor for objects of class Item.
-     * 
+    // the kind of item, shared by every item of the same kind
+    private final ItemType type;
+
+    /**
+     * Constructor for objects of class Item. The item gets a type of its
+     * own; items of a world should be made from the world's shared type,
+     * from World.getItemType, instead.
+     *
      * @param description The description of the item
      * @param weight The weight of the item
      * @param name The name of the item
      */
     public Item(String description, double weight, String name)
     {
-        this.description = description;
-        this.weight = weight;
-        this.name = name;
+        this(new ItemType(description, weight, name));
     }
-       
+
+    /**
+     * Create an item of the given type.
+     *
+     * @param type The kind of item
+     */
+    public Item(ItemType type)
+    {
+        this.type = type;
+    }
+
     /**
      * Returns a description of the item, including its
      * name, description and weight.
-     * 
+     *
      * @return  A description of the item
      */
     public String getDescription()
     {
-        return name + ": " + description + " that weighs " + weight + "kg.";
+        return type.getDescription();
     }
-    
+
     /**
      * Gets the name of the item.
-     * 
+     *
      * @return The name of the item
      */
     public String getName() {
-        return name;
+        return type.getName();
+    }
+
+    /**
+     * Gets the description of the item, without its name and weight.
+     *
+     * @return The description of the item
+     */
+    public String getShortDescription() {
+        return type.getShortDescription();
+    }
+
+    /**
+     * Gets the weight of the item.
+     *
+     * @return The weight of the item in kilograms
+     */
+    public double getWeight() {
+        return type.getWeight();
+    }
+
+    /**
+     * Gets the kind of the item.
+     *
+     * @return The type shared by every item of the same kind
+     */
+    public ItemType getType() {
+        return type;
+    }
+
+    /**
+     * Returns whether this item has no state of its own, so that it can be
+     * stacked with any other item of the same type.
+     *
+     * @return true for a plain item, false for an item with a state of its own
+     */
+    protected boolean isStackable() {
+        return true;
+    }
+
+    /**
+     * Returns whether another object is the same item. Plain items of the
+     * same kind are the same, since nothing tells them apart.
+     *
+     * @param obj The other object
+     * @return true if the other object is the same item
+     */
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != getClass() || !isStackable()) {
+            return false;
+        }
+        ItemType other = ((Item) obj).type;
+        return type == other || type.equals(other);
+    }
+
+    /**
+     * Returns a hash code for the item.
+     *
+     * @return The hash code
+     */
+    public int hashCode() {
+        return isStackable() ? type.hashCode() : System.identityHashCode(this);
     }
 
 }
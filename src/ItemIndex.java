@@ -0,0 +1,336 @@
+/**
+ * This class holds a collection of items, indexed by their name so that an
+ * item can be found, added or removed without searching through every item.
+ * Names are matched ignoring case, and the items are listed in the order in
+ * which they were added.
+ *
+ * Items that are equal, such as plain items of the same type, are kept as
+ * one stack: the first of them and a count. Adding another only adds one to
+ * the count, and listing the items lists the first one as many times as
+ * there are in the stack.
+ *
+ * An index can be copied, so that a room or inventory can hand its items to
+ * a snapshot as they are and go on changing a copy of them instead.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Predicate;
+
+public class ItemIndex implements Iterable<Item>
+{
+    // how many of each item there are, in the order they were first added
+    private LinkedHashMap<Item, Count> items;
+    // the items with each name, keyed by the lower case name
+    private HashMap<String, LinkedHashSet<Item>> itemsByName;
+    // the number of items, counting every item in every stack
+    private int size;
+
+    /**
+     * The number of items in a stack.
+     */
+    private static class Count
+    {
+        int value;
+    }
+
+    /**
+     * Create an empty collection of items.
+     */
+    public ItemIndex()
+    {
+        items = new LinkedHashMap<Item, Count>();
+        itemsByName = new HashMap<String, LinkedHashSet<Item>>();
+    }
+
+    /**
+     * Create a copy of a collection of items, with the same stacks in the
+     * same order.
+     *
+     * @return The copy
+     */
+    public ItemIndex copy()
+    {
+        ItemIndex copy = new ItemIndex();
+        for (Map.Entry<Item, Count> entry : items.entrySet()) {
+            Count count = new Count();
+            count.value = entry.getValue().value;
+            copy.items.put(entry.getKey(), count);
+        }
+        for (Map.Entry<String, LinkedHashSet<Item>> entry : itemsByName.entrySet()) {
+            copy.itemsByName.put(entry.getKey(), new LinkedHashSet<Item>(entry.getValue()));
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Add an item to the collection, on top of the stack of equal items if
+     * there is one.
+     *
+     * @param item The item to add
+     */
+    public void add(Item item)
+    {
+        Count count = items.get(item);
+        if (count == null) {
+            count = new Count();
+            items.put(item, count);
+            itemsByName.computeIfAbsent(key(item.getName()), k -> new LinkedHashSet<Item>()).add(item);
+        }
+        count.value++;
+        size++;
+    }
+
+    /**
+     * Add a number of items equal to the given one to the collection at
+     * once, on top of their stack if there is one. Items that are never
+     * stacked must be added one at a time.
+     *
+     * @param item The item to add
+     * @param count How many of it to add
+     * @throws IllegalArgumentException if the count is less than one, or
+     *         more than one for an item that is never stacked
+     */
+    public void add(Item item, int count)
+    {
+        if (count < 1 || (count > 1 && !item.isStackable())) {
+            throw new IllegalArgumentException("Bad number of items: " + count);
+        }
+        add(item);
+        items.get(item).value += count - 1;
+        size += count - 1;
+    }
+
+    /**
+     * Remove one item from the collection.
+     *
+     * @param item The item to remove
+     * @return true if the item was in the collection, false otherwise
+     */
+    public boolean remove(Item item)
+    {
+        Count count = items.get(item);
+        if (count == null) {
+            return false;
+        }
+        size--;
+        if (--count.value == 0) {
+            items.remove(item);
+            unindex(item);
+        }
+        return true;
+    }
+
+    /**
+     * Put an item in the place of another, such as a beamer just charged in
+     * the place of the beamer it was. If the item replaced is a stack of
+     * more than one, or the new item already has a stack, one is taken off
+     * the old stack and one put on the new one instead.
+     *
+     * @param item The item to replace
+     * @param replacement The item to put in its place
+     * @return true if the item was in the collection, false otherwise
+     */
+    public boolean replace(Item item, Item replacement)
+    {
+        Count count = items.get(item);
+        if (count == null) {
+            return false;
+        }
+        if (count.value > 1 || items.containsKey(replacement)) {
+            remove(item);
+            add(replacement);
+            return true;
+        }
+        LinkedHashMap<Item, Count> replaced = new LinkedHashMap<Item, Count>();
+        for (Map.Entry<Item, Count> entry : items.entrySet()) {
+            replaced.put(entry.getKey().equals(item) ? replacement : entry.getKey(), entry.getValue());
+        }
+        items = replaced;
+        String key = key(item.getName());
+        if (key.equals(key(replacement.getName()))) {
+            LinkedHashSet<Item> named = new LinkedHashSet<Item>();
+            for (Item other : itemsByName.get(key)) {
+                named.add(other.equals(item) ? replacement : other);
+            }
+            itemsByName.put(key, named);
+        } else {
+            unindex(item);
+            itemsByName.computeIfAbsent(key(replacement.getName()), k -> new LinkedHashSet<Item>()).add(replacement);
+        }
+        return true;
+    }
+
+    /**
+     * Remove the items a filter accepts, going through the stacks once.
+     * The filter is asked about each item in order, one at a time, so it may
+     * keep the items it accepts, such as by putting them in an inventory.
+     * Once it turns down an item of a stack, the rest of that stack is left.
+     *
+     * @param filter Whether to remove an item
+     * @return The items removed, in order
+     */
+    public List<Item> removeIf(Predicate<Item> filter)
+    {
+        List<Item> removed = new ArrayList<Item>();
+        Iterator<Map.Entry<Item, Count>> it = items.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Item, Count> entry = it.next();
+            Item item = entry.getKey();
+            Count count = entry.getValue();
+            while (count.value > 0 && filter.test(item)) {
+                count.value--;
+                size--;
+                removed.add(item);
+            }
+            if (count.value == 0) {
+                it.remove();
+                unindex(item);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Remove every item from the collection.
+     */
+    public void clear()
+    {
+        items.clear();
+        itemsByName.clear();
+        size = 0;
+    }
+
+    /**
+     * Find the first added item with the given name, ignoring case.
+     *
+     * @param name The name of the item
+     * @return The item, or null if there is no item with that name
+     */
+    public Item find(String name)
+    {
+        LinkedHashSet<Item> named = itemsByName.get(key(name));
+        if (named == null) {
+            return null;
+        }
+        return named.iterator().next();
+    }
+
+    /**
+     * Returns whether an item is in the collection.
+     *
+     * @param item The item
+     * @return true if the item is in the collection, false otherwise
+     */
+    public boolean contains(Item item)
+    {
+        return items.containsKey(item);
+    }
+
+    /**
+     * Returns how many items equal to the given one are in the collection.
+     *
+     * @param item The item
+     * @return The number of items in its stack, or 0 if there are none
+     */
+    public int count(Item item)
+    {
+        Count count = items.get(item);
+        return (count == null) ? 0 : count.value;
+    }
+
+    /**
+     * Returns the number of items in the collection, counting every item in
+     * every stack.
+     *
+     * @return The number of items
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns one item of each stack, in the order they were first added.
+     * Use count to find how many there are of each.
+     *
+     * @return The first item of every stack, which cannot be changed
+     */
+    public Set<Item> stacks()
+    {
+        return Collections.unmodifiableSet(items.keySet());
+    }
+
+    /**
+     * Returns the items in the order they were added, with an item repeated
+     * as many times as there are in its stack.
+     *
+     * @return An iterator over the items
+     */
+    public Iterator<Item> iterator()
+    {
+        Iterator<Map.Entry<Item, Count>> stacks = items.entrySet().iterator();
+        return new Iterator<Item>() {
+            private Item item;      // the item of the current stack
+            private int left;       // how many more times to return it
+
+            public boolean hasNext()
+            {
+                return left > 0 || stacks.hasNext();
+            }
+
+            public Item next()
+            {
+                if (left == 0) {
+                    if (!stacks.hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    Map.Entry<Item, Count> entry = stacks.next();
+                    item = entry.getKey();
+                    left = entry.getValue().value;
+                }
+                left--;
+                return item;
+            }
+        };
+    }
+
+    /**
+     * Remove a stack that is now empty from the index of names.
+     *
+     * @param item The item of the stack
+     */
+    private void unindex(Item item)
+    {
+        String key = key(item.getName());
+        LinkedHashSet<Item> named = itemsByName.get(key);
+        named.remove(item);
+        if (named.isEmpty()) {
+            itemsByName.remove(key);
+        }
+    }
+
+    /**
+     * Returns the key an item name is indexed under.
+     *
+     * @param name The name of an item
+     * @return The name in lower case
+     */
+    private static String key(String name)
+    {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * This class represents a kind of item: its name, description and weight.
+ * Every item of the same kind in a world shares one ItemType, so the five
+ * cookies of the campus, or the millions of chairs of a generated world, do
+ * not each hold their own copy of the same strings. The world keeps the
+ * types: asking it for a type that already exists returns the existing one,
+ * and the types go when the world does.
+ *
+ * The description shown to players, and the hash code, are worked out once,
+ * when the type is created.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+public final class ItemType
+{
+    private final String name;          // shorter name for an item
+    private final String description;   // description of the item
+    private final double weight;        // weight of the item in kilograms
+    // the description shown to players, with the name and weight
+    private final String fullDescription;
+    private final int hash;
+
+    /**
+     * Create an item type. Use World.getItemType to get the shared type of
+     * a world instead.
+     *
+     * @param description The description of the item
+     * @param weight The weight of the item
+     * @param name The name of the item
+     */
+    ItemType(String description, double weight, String name)
+    {
+        this.description = description;
+        this.weight = weight;
+        this.name = name;
+        fullDescription = name + ": " + description + " that weighs " + weight + "kg.";
+        hash = (name.hashCode() * 31 + description.hashCode()) * 31 + Double.hashCode(weight);
+    }
+
+    /**
+     * Returns whether this is the kind of item with the given name,
+     * description and weight.
+     *
+     * @param description The description of the item
+     * @param weight The weight of the item
+     * @param name The name of the item
+     * @return true if this type has that name, description and weight
+     */
+    public boolean is(String description, double weight, String name)
+    {
+        return this.name.equals(name) && this.description.equals(description)
+            && Double.compare(this.weight, weight) == 0;
+    }
+
+    /**
+     * Returns the name of this type of item.
+     *
+     * @return The name of the item
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns the description of this type of item, without its name and
+     * weight.
+     *
+     * @return The description of the item
+     */
+    public String getShortDescription()
+    {
+        return description;
+    }
+
+    /**
+     * Returns the weight of this type of item.
+     *
+     * @return The weight of the item in kilograms
+     */
+    public double getWeight()
+    {
+        return weight;
+    }
+
+    /**
+     * Returns a description of this type of item, including its name,
+     * description and weight.
+     *
+     * @return A description of the item
+     */
+    public String getDescription()
+    {
+        return fullDescription;
+    }
+
+    /**
+     * Returns whether another object is the same kind of item.
+     *
+     * @param obj The other object
+     * @return true if it has the same name, description and weight
+     */
+    public boolean equals(Object obj)
+    {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ItemType)) {
+            return false;
+        }
+        ItemType other = (ItemType) obj;
+        return hash == other.hash && is(other.description, other.weight, other.name);
+    }
+
+    /**
+     * Returns a hash code for this kind of item.
+     *
+     * @return The hash code
+     */
+    public int hashCode()
+    {
+        return hash;
+    }
+}
@@ -0,0 +1,545 @@
+/**
+ * This class is a write-ahead journal of everything the players of a game do.
+ * Every command that is processed, and every session that starts or ends, is
+ * written to the journal before it changes the game, so after a crash the
+ * game can be rebuilt by restoring the last checkpoint and replaying the
+ * journal on top of it. Without a checkpoint file, the journal is replayed on
+ * top of the world as it was built.
+ *
+ * The journal is a chain of files in a directory, journal-N.log, where N is
+ * the number of the snapshot the file follows. Every time the game takes a
+ * snapshot it starts a new file, and once that snapshot is safely in the
+ * checkpoint file, the older journal files are deleted. Taking checkpoints
+ * is therefore also what keeps the journal short.
+ *
+ * Records are written straight into memory-mapped chunks of the file, one
+ * command at a time. A separate thread forces them to the disk, as many at
+ * once as have been written since it last did, and a player only sees the
+ * output of a command once its record is on the disk. Many players waiting
+ * for the disk therefore share one write to it.
+ *
+ * Each file starts with a header: the magic number "WOWJ", the version, the
+ * snapshot number, the seed the world's random numbers were started from,
+ * the chunk size, and how many records the file before it holds. Each
+ * record is its length, its CRC-32 checksum and then its kind, session id,
+ * command index and second word. A chunk with no room left for the next record is ended
+ * with -1, and the journal ends at a length of 0.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+public class Journal implements AutoCloseable
+{
+    // "WOWJ" in ASCII, the first four bytes of every journal file
+    private static final int MAGIC = 0x574F574A;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 40;
+    // the kinds of record
+    private static final int START = 1;
+    private static final int COMMAND = 2;
+    private static final int END = 3;
+    // the length that ends a chunk with no room for the next record
+    private static final int PADDING = -1;
+    // the size of a mapped chunk of a journal file
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 24;
+
+    /**
+     * A chunk of a journal file mapped into memory, and the position in the
+     * journal of its first byte.
+     */
+    private static class Chunk
+    {
+        MappedByteBuffer buffer;
+        long start;
+
+        Chunk(MappedByteBuffer buffer, long start)
+        {
+            this.buffer = buffer;
+            this.start = start;
+        }
+    }
+
+    private Path directory;         // where the journal files are
+    private int chunkSize;
+    // the chunk written to, and the chunks not yet known to be on the disk
+    private Chunk current;
+    private ArrayList<Chunk> unforced;
+    private FileChannel channel;    // the file being written
+    private long chunkOffset;       // where the current chunk is in the file
+    private int offset;             // where the next record goes in the current chunk
+    // the position in the journal after the last record written, and after
+    // the last one known to be on the disk
+    private long written;
+    private volatile long durable;
+    private final Object durableLock = new Object();
+    // the number of records in the current file, and in the file before it
+    // or -1 if there was none
+    private long records;
+    private long previousRecords;
+    // the highest snapshot number of any journal file seen
+    private long lastSequence;
+    private CRC32 crc;
+    private byte[] record;          // a record being put together
+    private boolean flusherWaiting;
+    private boolean closed;
+    private Thread flusher;
+
+    /**
+     * Create a journal in a directory. No file is written until the journal
+     * is given to a game.
+     *
+     * @param directory The directory of the journal files
+     * @throws IOException if the directory cannot be created
+     */
+    public Journal(Path directory) throws IOException
+    {
+        this(directory, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Create a journal in a directory, mapping its files in chunks of the
+     * given size.
+     *
+     * @param directory The directory of the journal files
+     * @param chunkSize The size of a chunk, in bytes
+     * @throws IOException if the directory cannot be created
+     */
+    public Journal(Path directory, int chunkSize) throws IOException
+    {
+        this.directory = Files.createDirectories(directory);
+        this.chunkSize = chunkSize;
+        unforced = new ArrayList<Chunk>();
+        previousRecords = -1;
+        crc = new CRC32();
+        record = new byte[256];
+        flusher = new Thread(this::flush, "journal");
+        flusher.setDaemon(true);
+    }
+
+    /**
+     * Rebuild a game from the journal: replay every command journaled since
+     * the last snapshot restored into the game, in order, starting the
+     * world's random numbers from the seeds they were started from. Journal
+     * files that are left over from before that snapshot, or that come after
+     * a record cut short by a crash, are deleted.
+     *
+     * This must be done before the journal is given to the game.
+     *
+     * @param game The game, with its last checkpoint restored if there is one
+     * @return The number of commands replayed
+     * @throws IOException if the journal cannot be read
+     */
+    public long recover(Game game) throws IOException
+    {
+        TreeMap<Long, Path> files = listFiles();
+        long from = game.getSnapshotSequence();
+        long commands = 0;
+        boolean replaying = true;
+        for (Long sequence : files.keySet()) {
+            Path path = files.get(sequence);
+            lastSequence = Math.max(lastSequence, sequence);
+            if (sequence < from) {
+                continue;   // deleted once the new checkpoint is saved
+            }
+            if (replaying) {
+                long[] result = replay(path, game);
+                if (result == null) {
+                    replaying = false;  // the file never got going
+                } else {
+                    commands += result[0];
+                    previousRecords = result[1];
+                    if (result[2] >= 0) {
+                        // cut the record that was cut short, and everything after it
+                        try (FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                            out.truncate(result[2]);
+                        }
+                        replaying = false;
+                    }
+                    continue;
+                }
+            }
+            Files.delete(path);
+        }
+        game.skipSnapshotSequence(lastSequence);
+        return commands;
+    }
+
+    /**
+     * Start a new journal file, following the snapshot with the given
+     * number. No command may run while this is done.
+     *
+     * @param sequence The number of the snapshot the file follows
+     * @param seed The seed the world's random numbers start from
+     * @throws IOException if the file cannot be created
+     */
+    synchronized void startFile(long sequence, long seed) throws IOException
+    {
+        if (channel != null) {
+            previousRecords = records;
+            channel.close();    // the chunks stay mapped
+        }
+        Path path = directory.resolve("journal-" + sequence + ".log");
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                                   StandardOpenOption.READ, StandardOpenOption.WRITE);
+        chunkOffset = 0;
+        mapChunk(written);
+        current.buffer.putInt(0, MAGIC)
+                      .putInt(4, VERSION)
+                      .putLong(8, sequence)
+                      .putLong(16, seed)
+                      .putInt(24, chunkSize)
+                      .putLong(28, previousRecords);
+        offset = HEADER_SIZE;
+        records = 0;
+        written += HEADER_SIZE;
+        lastSequence = Math.max(lastSequence, sequence);
+        if (!flusher.isAlive()) {
+            flusher.start();
+        }
+    }
+
+    /**
+     * Journal the start of a session.
+     *
+     * @param session The new session
+     * @return The position in the journal after the record
+     */
+    synchronized long startSession(Session session)
+    {
+        return append(START, session.getId(), -1, null);
+    }
+
+    /**
+     * Journal a command, before it is processed.
+     *
+     * @param session The session of the player
+     * @param command The command
+     * @return The position in the journal after the record
+     */
+    synchronized long command(Session session, Command command)
+    {
+        return append(COMMAND, session.getId(), command.getIndex(), command.getSecondWord());
+    }
+
+    /**
+     * Journal the end of a session.
+     *
+     * @param session The session that ended
+     * @return The position in the journal after the record
+     */
+    synchronized long endSession(Session session)
+    {
+        return append(END, session.getId(), -1, null);
+    }
+
+    /**
+     * Returns whether everything up to the given position in the journal is
+     * on the disk, without waiting for it.
+     *
+     * @param position A position returned when a record was journaled
+     * @return true if the records up to the position are on the disk
+     */
+    public boolean isDurable(long position)
+    {
+        return durable >= position;
+    }
+
+    /**
+     * Wait until everything up to the given position in the journal is on
+     * the disk.
+     *
+     * @param position A position returned when a record was journaled
+     */
+    public void awaitDurable(long position)
+    {
+        if (durable >= position) {
+            return;
+        }
+        synchronized (durableLock) {
+            boolean interrupted = false;
+            while (durable < position && !closed) {
+                try {
+                    durableLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Delete the journal files that follow snapshots older than the given
+     * one, once that snapshot is safely in the checkpoint file.
+     *
+     * @param sequence The number of the snapshot
+     * @throws IOException if a file cannot be deleted
+     */
+    void deleteBefore(long sequence) throws IOException
+    {
+        for (Path path : listFiles().headMap(sequence).values()) {
+            Files.delete(path);
+        }
+    }
+
+    /**
+     * Force everything journaled so far to the disk and stop journaling.
+     *
+     * @throws IOException if the journal cannot be closed
+     */
+    public void close() throws IOException
+    {
+        long end;
+        synchronized (this) {
+            end = written;
+        }
+        awaitDurable(end);
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+            if (channel != null) {
+                channel.close();
+            }
+        }
+        synchronized (durableLock) {
+            durableLock.notifyAll();
+        }
+    }
+
+    /**
+     * Write a record into the current chunk, moving on to a new chunk if
+     * there is no room for it.
+     *
+     * @param kind The kind of record
+     * @param session The id of the session
+     * @param index The index of the command word, or -1
+     * @param secondWord The second word of the command, or null
+     * @return The position in the journal after the record
+     */
+    private long append(int kind, int session, int index, String secondWord)
+    {
+        if (current == null || closed) {
+            throw new IllegalStateException("The journal has not been started");
+        }
+        byte[] word = (secondWord == null) ? null : secondWord.getBytes(StandardCharsets.UTF_8);
+        int length = 13 + ((word == null) ? 0 : word.length);
+        if (8 + length > chunkSize - HEADER_SIZE) {
+            throw new IllegalArgumentException("Command too long to journal");
+        }
+        if (record.length < length) {
+            record = new byte[Math.max(length, record.length * 2)];
+        }
+        ByteBuffer r = ByteBuffer.wrap(record);
+        r.put(0, (byte) kind).putInt(1, session).putInt(5, index).putInt(9, (word == null) ? -1 : word.length);
+        if (word != null) {
+            r.put(13, word);
+        }
+        crc.reset();
+        crc.update(record, 0, length);
+
+        if (offset + 8 + length > current.buffer.capacity()) {
+            try {
+                nextChunk();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        current.buffer.put(offset + 8, record, 0, length)
+                      .putInt(offset + 4, (int) crc.getValue())
+                      .putInt(offset, length);
+        offset += 8 + length;
+        records++;
+        written = current.start + offset;
+        if (flusherWaiting) {
+            notifyAll();
+        }
+        return written;
+    }
+
+    /**
+     * End the current chunk and map the next chunk of the file.
+     *
+     * @throws IOException if the chunk cannot be mapped
+     */
+    private void nextChunk() throws IOException
+    {
+        if (offset + 4 <= current.buffer.capacity()) {
+            current.buffer.putInt(offset, PADDING);
+        }
+        written = current.start + current.buffer.capacity();
+        chunkOffset += chunkSize;
+        mapChunk(written);
+        offset = 0;
+    }
+
+    /**
+     * Map the chunk of the current file at chunkOffset.
+     *
+     * @param start The position in the journal of the chunk's first byte
+     * @throws IOException if the chunk cannot be mapped
+     */
+    private void mapChunk(long start) throws IOException
+    {
+        current = new Chunk(channel.map(FileChannel.MapMode.READ_WRITE, chunkOffset, chunkSize), start);
+        unforced.add(current);
+    }
+
+    /**
+     * Force the records written to the disk for as long as the journal is
+     * open, as many at a time as have been written since the last time.
+     */
+    private void flush()
+    {
+        while (true) {
+            long target;
+            List<Chunk> chunks;
+            synchronized (this) {
+                while (written == durable && !closed) {
+                    flusherWaiting = true;
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                flusherWaiting = false;
+                if (closed) {
+                    return;
+                }
+                target = written;
+                chunks = new ArrayList<Chunk>(unforced);
+                unforced.removeIf(c -> c != current && c.start + c.buffer.capacity() <= target);
+            }
+            long from = durable;
+            for (Chunk chunk : chunks) {
+                long start = Math.max(from, chunk.start) - chunk.start;
+                long end = Math.min(target, chunk.start + chunk.buffer.capacity()) - chunk.start;
+                if (end > start) {
+                    chunk.buffer.force((int) start, (int) (end - start));
+                }
+            }
+            synchronized (durableLock) {
+                durable = target;
+                durableLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Replay the records of one journal file into a game.
+     *
+     * @param path The journal file
+     * @param game The game
+     * @return The number of commands replayed, the number of records, and
+     *         where a record cut short starts or -1 if there was none; or null
+     *         if the file does not follow the one before it
+     * @throws IOException if the file cannot be read
+     */
+    private long[] replay(Path path, Game game) throws IOException
+    {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer header = in.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            int fileChunkSize = header.getInt(24);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION || fileChunkSize <= HEADER_SIZE
+                    || (previousRecords >= 0 && header.getLong(28) != previousRecords)) {
+                return null;
+            }
+            game.getWorld().setSeed(header.getLong(16));
+
+            CommandWords words = game.getCommandWords();
+            long commands = 0;
+            long records = 0;
+            for (long chunkStart = 0; chunkStart < size; chunkStart += fileChunkSize) {
+                ByteBuffer chunk = in.map(FileChannel.MapMode.READ_ONLY, chunkStart,
+                                          Math.min(fileChunkSize, size - chunkStart));
+                int at = (chunkStart == 0) ? HEADER_SIZE : 0;
+                while (at + 8 <= chunk.limit()) {
+                    int length = chunk.getInt(at);
+                    if (length == PADDING) {
+                        break;
+                    }
+                    if (length == 0) {
+                        return new long[] { commands, records, -1 };
+                    }
+                    if (length < 13 || at + 8 + length > chunk.limit()) {
+                        return new long[] { commands, records, chunkStart + at };
+                    }
+                    ByteBuffer r = chunk.slice(at + 8, length);
+                    crc.reset();
+                    crc.update(r.duplicate());
+                    if ((int) crc.getValue() != chunk.getInt(at + 4)) {
+                        return new long[] { commands, records, chunkStart + at };
+                    }
+                    records++;
+                    int kind = r.get(0);
+                    Session session = game.getSession(r.getInt(1));
+                    if (kind == START) {
+                        game.openSession(r.getInt(1));
+                    } else if (session == null) {
+                        // the session was not saved, so neither was anything it did
+                    } else if (kind == END) {
+                        game.endSession(session);
+                    } else {
+                        int index = r.getInt(5);
+                        int wordLength = r.getInt(9);
+                        String secondWord = null;
+                        if (wordLength >= 0) {
+                            byte[] word = new byte[wordLength];
+                            r.get(13, word);
+                            secondWord = new String(word, StandardCharsets.UTF_8);
+                        }
+                        game.processCommand(session, new Command(index, words.getWord(index), secondWord));
+                        commands++;
+                    }
+                    at += 8 + length;
+                }
+            }
+            return new long[] { commands, records, -1 };
+        }
+    }
+
+    /**
+     * Returns the journal files in the directory, by the number of the
+     * snapshot they follow.
+     *
+     * @return The journal files
+     * @throws IOException if the directory cannot be read
+     */
+    private TreeMap<Long, Path> listFiles() throws IOException
+    {
+        TreeMap<Long, Path> files = new TreeMap<Long, Path>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "journal-*.log")) {
+            for (Path path : paths) {
+                String name = path.getFileName().toString();
+                try {
+                    files.put(Long.parseLong(name.substring(8, name.length() - 4)), path);
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        return files;
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * The test class JournalTest. It checks that a game rebuilt from its journal,
+ * with or without a checkpoint to start from, ends up where the journaled
+ * game was: the same items in every room, and the same players in the same
+ * rooms carrying the same things.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JournalTest
+{
+    // the commands the players pick from
+    private static final String[] COMMANDS = {
+        "go east", "go west", "go south", "go north", "take cookie", "eat",
+        "take beamer", "charge", "fire", "back", "stackBack", "drop all",
+        "take all", "take chair"
+    };
+
+    private Path directory;     // holds the journal and checkpoint
+
+    /**
+     * Make a directory for the journal.
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("journal");
+    }
+
+    /**
+     * Delete the directory and everything in it.
+     */
+    @After
+    public void tearDown() throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * Have two players play random commands.
+     *
+     * @param game The game
+     * @param players The players
+     * @param random Picks the commands
+     * @param count How many commands to play
+     */
+    private static void play(Game game, Session[] players, Random random, int count)
+    {
+        for (int i = 0; i < count; i++) {
+            String line = COMMANDS[random.nextInt(COMMANDS.length)];
+            Parser parser = new Parser(new StringReader(line + "\n"), null, game.getCommandWords());
+            game.processCommand(players[i % players.length], parser.getCommand());
+        }
+    }
+
+    /**
+     * A game is rebuilt from nothing but its journal, including a player
+     * who left part way through.
+     */
+    @Test
+    public void testRecover() throws IOException
+    {
+        Game game = new Game();
+        Journal journal = new Journal(directory.resolve("journal"), 4096);
+        assertEquals(0, journal.recover(game));
+        game.setJournal(journal);
+        Session[] players = { game.newSession(NullSink.INSTANCE), game.newSession(NullSink.INSTANCE) };
+        play(game, players, new Random(7), 600);
+        game.endSession(players[1]);
+        journal.close();
+
+        Game recovered = new Game();
+        Journal again = new Journal(directory.resolve("journal"), 4096);
+        assertTrue(again.recover(recovered) >= 600);
+        assertEquals(CheckpointerTest.describe(game), CheckpointerTest.describe(recovered));
+        assertEquals(1, recovered.getSessions().size());
+    }
+
+    /**
+     * A game is rebuilt from a checkpoint taken part way through and the
+     * commands journaled after it.
+     */
+    @Test
+    public void testRecoverFromCheckpoint() throws IOException
+    {
+        Path checkpoint = directory.resolve("game.ckpt");
+        Game game = new Game();
+        Journal journal = new Journal(directory.resolve("journal"), 4096);
+        journal.recover(game);
+        game.setJournal(journal);
+        Checkpointer checkpointer = new Checkpointer(game, checkpoint);
+        Session[] players = { game.newSession(NullSink.INSTANCE), game.newSession(NullSink.INSTANCE) };
+        Random random = new Random(11);
+        play(game, players, random, 250);
+        checkpointer.checkpoint();
+        play(game, players, random, 350);
+        journal.close();
+
+        Game recovered = new Game();
+        recovered.restore(checkpoint);
+        Journal again = new Journal(directory.resolve("journal"), 4096);
+        long replayed = again.recover(recovered);
+        assertTrue(replayed >= 350 && replayed < 600);
+        assertEquals(CheckpointerTest.describe(game), CheckpointerTest.describe(recovered));
+    }
+}
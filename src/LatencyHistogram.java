@@ -0,0 +1,137 @@
+/**
+ * This class counts how long something took, such as a command, in the
+ * style of HdrHistogram: times are put in buckets that double in width
+ * every sixteen buckets, so any time from a nanosecond to many minutes is
+ * kept to within about 6%, in under a thousand counters. Recording a time
+ * is one atomic increment, with no lock, so many threads can record at once.
+ *
+ * Reading the histogram while times are being recorded sees most but maybe
+ * not all of the latest times, which is fine for watching a running game.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class LatencyHistogram
+{
+    // the number of buckets in each doubling, as a power of two
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // enough buckets for every positive long
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    // the number of times recorded in each bucket
+    private AtomicLongArray counts;
+
+    /**
+     * Create an empty histogram.
+     */
+    public LatencyHistogram()
+    {
+        counts = new AtomicLongArray(BUCKETS);
+    }
+
+    /**
+     * Record one time.
+     *
+     * @param nanos The time, in nanoseconds
+     */
+    public void record(long nanos)
+    {
+        counts.incrementAndGet(bucket(Math.max(0, nanos)));
+    }
+
+    /**
+     * Returns the number of times recorded.
+     *
+     * @return The number of times
+     */
+    public long getCount()
+    {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Returns the time that the given percentage of the recorded times are
+     * no longer than, such as 50 for the median or 99 for the 99th
+     * percentile.
+     *
+     * @param percentile The percentage, from 0 to 100
+     * @return The time, in nanoseconds, or 0 if no time has been recorded
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, percentile) / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return highest(i);
+            }
+        }
+        return highest(BUCKETS - 1);
+    }
+
+    /**
+     * Returns the longest time recorded, to within the width of its bucket.
+     *
+     * @return The time, in nanoseconds, or 0 if no time has been recorded
+     */
+    public long getMax()
+    {
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) > 0) {
+                return highest(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the bucket a time is counted in.
+     *
+     * @param value The time, not negative
+     * @return The index of the bucket
+     */
+    private static int bucket(long value)
+    {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int top = (int) (value >>> (exponent - SUB_BITS));     // from SUB_BUCKETS to 2 * SUB_BUCKETS - 1
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + top - SUB_BUCKETS;
+    }
+
+    /**
+     * Returns the longest time counted in a bucket.
+     *
+     * @param bucket The index of the bucket
+     * @return The time, in nanoseconds
+     */
+    private static long highest(int bucket)
+    {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long top = SUB_BUCKETS + bucket % SUB_BUCKETS;
+        long lowest = top << (exponent - SUB_BITS);
+        return lowest + (1L << (exponent - SUB_BITS)) - 1;
+    }
+}
@@ -0,0 +1,351 @@
+/**
+ * This class simulates many players at once, to find out how many a game
+ * can take. Each player is a bot with a BotStrategy, running commands
+ * straight into a Game in this process, with no network and no output, as
+ * fast as it can. Bots run on virtual threads when the Java runtime has
+ * them, otherwise as tasks of a fork-join pool. When the game is sharded,
+ * bots have no threads at all: each command is handed to a shard of a
+ * ShardedGame, and once it has run, the bot's next command is picked on the
+ * thread of that shard and handed on in turn.
+ *
+ * When every bot is done, the number of commands per second and the
+ * percentiles of the time each command took are printed, for all bots and
+ * for each strategy, followed by what the game's Metrics counted.
+ *
+ * Usage: java LoadGenerator [bots [commands per bot [campus copies [strategies [shards]]]]]
+ * where strategies is a comma-separated list such as "walk,collect", given
+ * to the bots in turn (all strategies by default), and shards is the number
+ * of shards to run the game on (0, for no shards, by default).
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+public class LoadGenerator
+{
+    private Game game;
+    // the shards the commands run on, or null if the game is not sharded
+    private ShardedGame sharded;
+    private BotStrategy[] strategies;
+    // the times of the commands run with each strategy, and of all of them
+    private LatencyHistogram[] latencies;
+    private LatencyHistogram allLatencies;
+    // the number of commands that failed with an exception
+    private LongAdder failures;
+
+    /**
+     * Create a load generator for a game.
+     *
+     * @param game The game the bots play
+     * @param strategies The strategies given to the bots in turn
+     */
+    public LoadGenerator(Game game, BotStrategy[] strategies)
+    {
+        this(game, null, strategies);
+    }
+
+    /**
+     * Create a load generator for a sharded game.
+     *
+     * @param sharded The shards of the game the bots play
+     * @param strategies The strategies given to the bots in turn
+     */
+    public LoadGenerator(ShardedGame sharded, BotStrategy[] strategies)
+    {
+        this(sharded.getGame(), sharded, strategies);
+    }
+
+    /**
+     * Create a load generator.
+     *
+     * @param game The game the bots play
+     * @param sharded The shards of the game, or null if it is not sharded
+     * @param strategies The strategies given to the bots in turn
+     */
+    private LoadGenerator(Game game, ShardedGame sharded, BotStrategy[] strategies)
+    {
+        this.game = game;
+        this.sharded = sharded;
+        this.strategies = strategies.clone();
+        latencies = new LatencyHistogram[BotStrategy.values().length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        allLatencies = new LatencyHistogram();
+        failures = new LongAdder();
+    }
+
+    /**
+     * Run bots until each has run the given number of commands.
+     *
+     * @param bots The number of bots
+     * @param commands The number of commands each bot runs
+     * @param seed The seed of the bots' random numbers
+     * @return How long the bots took, in nanoseconds
+     * @throws InterruptedException if interrupted while waiting for the bots
+     */
+    public long run(int bots, int commands, long seed) throws InterruptedException
+    {
+        SplittableRandom seeds = new SplittableRandom(seed);
+        if (sharded != null) {
+            CountDownLatch done = new CountDownLatch(bots);
+            List<Bot> all = new ArrayList<Bot>(bots);
+            for (int i = 0; i < bots; i++) {
+                all.add(new Bot(strategies[i % strategies.length], seeds.split(), commands, done));
+            }
+            long start = System.nanoTime();
+            for (Bot bot : all) {
+                bot.next();
+            }
+            done.await();
+            return System.nanoTime() - start;
+        }
+        List<Runnable> tasks = new ArrayList<Runnable>(bots);
+        for (int i = 0; i < bots; i++) {
+            BotStrategy strategy = strategies[i % strategies.length];
+            SplittableRandom random = seeds.split();
+            tasks.add(() -> play(strategy, random, commands));
+        }
+        ExecutorService executor = newBotExecutor();
+        long start = System.nanoTime();
+        for (Runnable task : tasks) {
+            executor.execute(task);
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Returns the times of the commands run by bots with a strategy.
+     *
+     * @param strategy The strategy
+     * @return The histogram of the times
+     */
+    public LatencyHistogram getLatencies(BotStrategy strategy)
+    {
+        return latencies[strategy.ordinal()];
+    }
+
+    /**
+     * Returns the times of every command run by the bots.
+     *
+     * @return The histogram of the times
+     */
+    public LatencyHistogram getLatencies()
+    {
+        return allLatencies;
+    }
+
+    /**
+     * Returns the number of commands that failed with an exception.
+     *
+     * @return The number of failed commands
+     */
+    public long getFailures()
+    {
+        return failures.sum();
+    }
+
+    /**
+     * Play as one bot: start a session, run its commands and end it.
+     *
+     * @param strategy The strategy of the bot
+     * @param random The bot's own random numbers
+     * @param commands The number of commands to run
+     */
+    private void play(BotStrategy strategy, SplittableRandom random, int commands)
+    {
+        Session session = game.newSession(NullSink.INSTANCE);
+        LatencyHistogram histogram = latencies[strategy.ordinal()];
+        for (int i = 0; i < commands; i++) {
+            Command command = strategy.next(session, random);
+            long start = System.nanoTime();
+            try {
+                game.processCommand(session, command);
+            } catch (RuntimeException e) {
+                // count it and play on, so one bug does not stop the whole run
+                failures.increment();
+            }
+            long nanos = System.nanoTime() - start;
+            histogram.record(nanos);
+            allLatencies.record(nanos);
+        }
+        game.endSession(session);
+    }
+
+    /**
+     * This class is a bot playing a sharded game. It has no thread of its
+     * own: it hands a command to a shard, and is told on the thread of that
+     * shard when the command has run, where it hands on its next command.
+     */
+    private class Bot implements BiConsumer<Boolean, Throwable>
+    {
+        private BotStrategy strategy;
+        private SplittableRandom random;
+        private Session session;
+        private LatencyHistogram histogram;
+        // the number of commands still to run
+        private int remaining;
+        // counted down when the bot is done
+        private CountDownLatch done;
+        // when the command being run was handed to its shard
+        private long start;
+
+        /**
+         * Create a bot and start its session.
+         *
+         * @param strategy The strategy of the bot
+         * @param random The bot's own random numbers
+         * @param commands The number of commands to run
+         * @param done Counted down when the bot is done
+         */
+        Bot(BotStrategy strategy, SplittableRandom random, int commands, CountDownLatch done)
+        {
+            this.strategy = strategy;
+            this.random = random;
+            this.remaining = commands;
+            this.done = done;
+            session = game.newSession(NullSink.INSTANCE);
+            histogram = latencies[strategy.ordinal()];
+        }
+
+        /**
+         * Hand the bot's next command to the shard it is in, or end its
+         * session if it has run all of them.
+         */
+        void next()
+        {
+            if (remaining == 0) {
+                game.endSession(session);
+                done.countDown();
+                return;
+            }
+            remaining--;
+            Command command = strategy.next(session, random);
+            start = System.nanoTime();
+            sharded.submit(session, command, this);
+        }
+
+        /**
+         * Count a command that has run, and hand on the next one.
+         *
+         * @param finished Whether the command ended the game
+         * @param failure What the command threw, or null
+         */
+        public void accept(Boolean finished, Throwable failure)
+        {
+            long nanos = System.nanoTime() - start;
+            histogram.record(nanos);
+            allLatencies.record(nanos);
+            if (failure != null) {
+                // count it and play on, so one bug does not stop the whole run
+                failures.increment();
+            }
+            next();
+        }
+    }
+
+    /**
+     * Returns an executor running every bot on a new virtual thread if the
+     * runtime has them, or on a fork-join pool with a thread per processor
+     * otherwise.
+     *
+     * @return The executor for bots
+     */
+    private static ExecutorService newBotExecutor()
+    {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return new ForkJoinPool();
+        }
+    }
+
+    /**
+     * Print a line of the report.
+     *
+     * @param name What the line is about
+     * @param histogram The times of the commands
+     * @param elapsed How long the bots took, in nanoseconds
+     */
+    private static void printLine(String name, LatencyHistogram histogram, long elapsed)
+    {
+        long count = histogram.getCount();
+        System.out.printf("%-10s %12d %12.0f %9d %9d %9d %11d%n", name, count, count * 1e9 / elapsed,
+                          histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(99),
+                          histogram.getValueAtPercentile(99.9), histogram.getMax());
+    }
+
+    /**
+     * Run bots in a world of copies of the university campus, and print how
+     * fast they went.
+     *
+     * @param args The number of bots, the commands per bot, the number of
+     *        campus copies, the strategies and the number of shards, all optional
+     * @throws InterruptedException if interrupted while waiting for the bots
+     */
+    public static void main(String[] args) throws InterruptedException
+    {
+        int bots = (args.length > 0) ? Integer.parseInt(args[0]) : 1000;
+        int commands = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+        int copies = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+        BotStrategy[] strategies = BotStrategy.values();
+        if (args.length > 3) {
+            String[] names = args[3].split(",");
+            strategies = new BotStrategy[names.length];
+            for (int i = 0; i < names.length; i++) {
+                strategies[i] = BotStrategy.forName(names[i].trim());
+            }
+        }
+
+        int shards = (args.length > 4) ? Integer.parseInt(args[4]) : 0;
+
+        Game game = Benchmarks.campusWorld(copies);
+        Metrics metrics = new Metrics(game);
+        ShardedGame sharded = (shards > 0) ? new ShardedGame(game, shards) : null;
+        LoadGenerator generator = new LoadGenerator(game, sharded, strategies);
+        // a short run first, so the times measured are of compiled code
+        generator.run(Math.min(bots, 100), Math.min(commands, 1000), 1);
+        generator = new LoadGenerator(game, sharded, strategies);
+        long elapsed = generator.run(bots, commands, 42);
+
+        System.out.printf("%d bots, %d commands each, %d rooms, %.0f ms%n",
+                          bots, commands, game.getWorld().size(), elapsed / 1e6);
+        System.out.printf("%-10s %12s %12s %9s %9s %9s %11s%n",
+                          "strategy", "commands", "commands/s", "p50 ns", "p99 ns", "p99.9 ns", "max ns");
+        for (BotStrategy strategy : BotStrategy.values()) {
+            if (generator.getLatencies(strategy).getCount() > 0) {
+                printLine(strategy.toString(), generator.getLatencies(strategy), elapsed);
+            }
+        }
+        printLine("all", generator.getLatencies(), elapsed);
+        if (generator.getFailures() > 0) {
+            System.out.println(generator.getFailures() + " commands failed");
+        }
+        if (sharded != null) {
+            WorldPartition partition = sharded.getPartition();
+            System.out.printf("%d shards, %d exits and %d moves between them%n",
+                              shards, partition.getCrossingExits(), sharded.getMigrations());
+            for (int i = 0; i < shards; i++) {
+                System.out.printf("    shard %-3d %8d rooms %12d commands%n",
+                                  i, partition.getSize(i), sharded.getCommands(i));
+            }
+            sharded.close();
+        }
+        System.out.println();
+        System.out.print(metrics.getReport());
+    }
+}
@@ -0,0 +1,358 @@
+/**
+ * This class keeps count of what the players of a game do: how many times
+ * each command word is run and how long it takes, how often each room is
+ * entered, and how often transporters, beamers and items are used. It
+ * listens to a Game, and shows what it has counted through JMX and as a
+ * plain text report.
+ *
+ * Counting is done on the players' own threads without any lock: commands
+ * are counted with a LongAdder each, times with a LatencyHistogram, and
+ * room visits in an array of atomic counters indexed by room id. Every
+ * command is counted, but the times are of a sample of the commands, as
+ * the game only times some of them.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class Metrics implements GameListener, MetricsMXBean
+{
+    // the name the metrics are shown under in JMX
+    public static final String OBJECT_NAME = "WorldOfWander:type=Metrics";
+    // the number of rooms shown as the busiest
+    private static final int BUSIEST_ROOMS = 10;
+
+    private CommandWords commands;
+    private World world;
+    // the number of runs and the times of each command word, by index
+    private LongAdder[] commandCounts;
+    private LatencyHistogram[] latencies;
+    // the number of times each room was entered, by id
+    private AtomicLongArray visits;
+    private LongAdder transports;
+    private LongAdder beamerCharges;
+    private LongAdder beamerFires;
+    private LongAdder itemsTaken;
+    private LongAdder itemsDropped;
+
+    /**
+     * Create the metrics of a game and start listening to it. Command words
+     * registered and rooms added after this are not counted.
+     *
+     * @param game The game
+     */
+    public Metrics(Game game)
+    {
+        commands = game.getCommandWords();
+        world = game.getWorld();
+        commandCounts = new LongAdder[commands.size()];
+        latencies = new LatencyHistogram[commands.size()];
+        for (int i = 0; i < commandCounts.length; i++) {
+            commandCounts[i] = new LongAdder();
+            latencies[i] = new LatencyHistogram();
+        }
+        visits = new AtomicLongArray(world.size());
+        transports = new LongAdder();
+        beamerCharges = new LongAdder();
+        beamerFires = new LongAdder();
+        itemsTaken = new LongAdder();
+        itemsDropped = new LongAdder();
+        game.addListener(this);
+    }
+
+    /**
+     * Show these metrics through the JMX server of this Java runtime.
+     *
+     * @throws JMException if the metrics cannot be registered, such as
+     *         when other metrics already have the same name
+     */
+    public void register() throws JMException
+    {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+    }
+
+    /**
+     * Count a command, and how long it took if it was timed.
+     *
+     * @param session The session of the player
+     * @param command The command
+     * @param nanos How long the command took, in nanoseconds, or -1 if it
+     *        was not timed
+     */
+    public void commandProcessed(Session session, Command command, long nanos)
+    {
+        int index = command.getIndex();
+        if (index < commandCounts.length) {
+            commandCounts[index].increment();
+            if (nanos >= 0) {
+                latencies[index].record(nanos);
+            }
+        }
+    }
+
+    /**
+     * Count a visit to a room.
+     *
+     * @param session The session of the player
+     * @param from The room the player left
+     * @param to The room the player entered
+     */
+    public void roomEntered(Session session, Room from, Room to)
+    {
+        int id = to.getId();
+        if (id < visits.length()) {
+            visits.incrementAndGet(id);
+        }
+    }
+
+    /**
+     * Count a use of a transporter room.
+     *
+     * @param session The session of the player
+     * @param transporter The transporter room
+     * @param to The room the player was sent to
+     */
+    public void transported(Session session, TransporterRoom transporter, Room to)
+    {
+        transports.increment();
+    }
+
+    /**
+     * Count a beamer being charged.
+     *
+     * @param session The session of the player
+     * @param room The room the beamer will take the player back to
+     */
+    public void beamerCharged(Session session, Room room)
+    {
+        beamerCharges.increment();
+    }
+
+    /**
+     * Count a beamer being fired.
+     *
+     * @param session The session of the player
+     * @param from The room the player left
+     * @param to The room the beamer took the player to
+     */
+    public void beamerFired(Session session, Room from, Room to)
+    {
+        beamerFires.increment();
+    }
+
+    /**
+     * Count an item being taken.
+     *
+     * @param session The session of the player
+     * @param room The room
+     * @param item The item
+     */
+    public void itemTaken(Session session, Room room, Item item)
+    {
+        itemsTaken.increment();
+    }
+
+    /**
+     * Count an item being dropped.
+     *
+     * @param session The session of the player
+     * @param room The room
+     * @param item The item
+     */
+    public void itemDropped(Session session, Room room, Item item)
+    {
+        itemsDropped.increment();
+    }
+
+    /**
+     * Returns the number of times a room has been entered.
+     *
+     * @param room The room
+     * @return The number of visits
+     */
+    public long getVisits(Room room)
+    {
+        return (room.getId() < visits.length()) ? visits.get(room.getId()) : 0;
+    }
+
+    /**
+     * Returns the times taken by a command word.
+     *
+     * @param index The index of the command word
+     * @return The histogram of its times
+     */
+    public LatencyHistogram getLatencies(int index)
+    {
+        return latencies[index];
+    }
+
+    /**
+     * Returns how many times each command word has been run.
+     *
+     * @return The number of commands, by command word
+     */
+    public Map<String, Long> getCommandCounts()
+    {
+        Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < commandCounts.length; i++) {
+            counts.put(commands.getWord(i), commandCounts[i].sum());
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the median time each command word took.
+     *
+     * @return The median time, by command word
+     */
+    public Map<String, Long> getMedianLatencies()
+    {
+        return percentiles(50);
+    }
+
+    /**
+     * Returns the time 99% of the runs of each command word took no
+     * longer than.
+     *
+     * @return The 99th percentile time, by command word
+     */
+    public Map<String, Long> getP99Latencies()
+    {
+        return percentiles(99);
+    }
+
+    /**
+     * Returns the rooms players entered most often.
+     *
+     * @return The number of visits, by room name, the busiest first
+     */
+    public Map<String, Long> getBusiestRooms()
+    {
+        // keep the busiest rooms seen so far, the least busy of them on top
+        PriorityQueue<long[]> busiest = new PriorityQueue<long[]>(
+            BUSIEST_ROOMS + 1, (a, b) -> Long.compare(a[1], b[1]));
+        for (int id = 0; id < visits.length(); id++) {
+            long count = visits.get(id);
+            if (count > 0 && (busiest.size() < BUSIEST_ROOMS || count > busiest.peek()[1])) {
+                busiest.add(new long[] { id, count });
+                if (busiest.size() > BUSIEST_ROOMS) {
+                    busiest.poll();
+                }
+            }
+        }
+        long[][] rooms = busiest.toArray(new long[busiest.size()][]);
+        Arrays.sort(rooms, (a, b) -> Long.compare(b[1], a[1]));
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (long[] room : rooms) {
+            result.put(world.getRoom((int) room[0]).getName(), room[1]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns how many times players were sent on by a transporter room.
+     *
+     * @return The number of transports
+     */
+    public long getTransports()
+    {
+        return transports.sum();
+    }
+
+    /**
+     * Returns how many times players charged a beamer.
+     *
+     * @return The number of charges
+     */
+    public long getBeamerCharges()
+    {
+        return beamerCharges.sum();
+    }
+
+    /**
+     * Returns how many times players fired a beamer.
+     *
+     * @return The number of firings
+     */
+    public long getBeamerFires()
+    {
+        return beamerFires.sum();
+    }
+
+    /**
+     * Returns how many items players took.
+     *
+     * @return The number of items taken
+     */
+    public long getItemsTaken()
+    {
+        return itemsTaken.sum();
+    }
+
+    /**
+     * Returns how many items players dropped.
+     *
+     * @return The number of items dropped
+     */
+    public long getItemsDropped()
+    {
+        return itemsDropped.sum();
+    }
+
+    /**
+     * Returns all of the metrics as plain text, one per line.
+     *
+     * @return The report
+     */
+    public String getReport()
+    {
+        StringBuilder s = new StringBuilder();
+        s.append(String.format("%-12s %10s %10s %10s %10s%n", "command", "count", "p50 ns", "p99 ns", "max ns"));
+        for (int i = 0; i < commandCounts.length; i++) {
+            long count = commandCounts[i].sum();
+            if (count > 0 && latencies[i].getCount() == 0) {
+                s.append(String.format("%-12s %10d %10s %10s %10s%n", commands.getWord(i), count, "-", "-", "-"));
+            } else if (count > 0) {
+                s.append(String.format("%-12s %10d %10d %10d %10d%n", commands.getWord(i), count,
+                    latencies[i].getValueAtPercentile(50), latencies[i].getValueAtPercentile(99),
+                    latencies[i].getMax()));
+            }
+        }
+        s.append(String.format("transports %d%n", getTransports()));
+        s.append(String.format("beamer charges %d, fires %d%n", getBeamerCharges(), getBeamerFires()));
+        s.append(String.format("items taken %d, dropped %d%n", getItemsTaken(), getItemsDropped()));
+        s.append(String.format("busiest rooms:%n"));
+        for (Map.Entry<String, Long> room : getBusiestRooms().entrySet()) {
+            s.append(String.format("    %-20s %10d%n", room.getKey(), room.getValue()));
+        }
+        return s.toString();
+    }
+
+    /**
+     * Returns a percentile of the times of every command word that has
+     * been timed.
+     *
+     * @param percentile The percentage, from 0 to 100
+     * @return The time, by command word
+     */
+    private Map<String, Long> percentiles(double percentile)
+    {
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (int i = 0; i < latencies.length; i++) {
+            if (latencies[i].getCount() > 0) {
+                result.put(commands.getWord(i), latencies[i].getValueAtPercentile(percentile));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * This interface is what a running game's Metrics show through JMX, such
+ * as in JConsole or VisualVM, under the name "WorldOfWander:type=Metrics".
+ * Times are in nanoseconds.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.util.Map;
+
+public interface MetricsMXBean
+{
+    /**
+     * Returns how many times each command word has been run.
+     *
+     * @return The number of commands, by command word
+     */
+    Map<String, Long> getCommandCounts();
+
+    /**
+     * Returns the median time each command word took.
+     *
+     * @return The median time, by command word
+     */
+    Map<String, Long> getMedianLatencies();
+
+    /**
+     * Returns the time 99% of the runs of each command word took no
+     * longer than.
+     *
+     * @return The 99th percentile time, by command word
+     */
+    Map<String, Long> getP99Latencies();
+
+    /**
+     * Returns the rooms players entered most often.
+     *
+     * @return The number of visits, by room name, the busiest first
+     */
+    Map<String, Long> getBusiestRooms();
+
+    /**
+     * Returns how many times players were sent on by a transporter room.
+     *
+     * @return The number of transports
+     */
+    long getTransports();
+
+    /**
+     * Returns how many times players charged a beamer.
+     *
+     * @return The number of charges
+     */
+    long getBeamerCharges();
+
+    /**
+     * Returns how many times players fired a beamer.
+     *
+     * @return The number of firings
+     */
+    long getBeamerFires();
+
+    /**
+     * Returns how many items players took.
+     *
+     * @return The number of items taken
+     */
+    long getItemsTaken();
+
+    /**
+     * Returns how many items players dropped.
+     *
+     * @return The number of items dropped
+     */
+    long getItemsDropped();
+
+    /**
+     * Returns all of the metrics as plain text, one per line.
+     *
+     * @return The report
+     */
+    String getReport();
+}
@@ -0,0 +1,45 @@
+/**
+ * This class throws away all the output given to it. It is used when the
+ * output of the game does not matter, such as when measuring how fast the
+ * game processes commands.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+public class NullSink implements OutputSink
+{
+    // the sink shared by everyone who needs one
+    public static final NullSink INSTANCE = new NullSink();
+
+    /**
+     * Ignore some text.
+     *
+     * @param text The text to ignore
+     */
+    public void print(String text)
+    {
+    }
+
+    /**
+     * Ignore a line of output.
+     *
+     * @param line The line to ignore
+     */
+    public void println(String line)
+    {
+    }
+
+    /**
+     * Ignore an empty line.
+     */
+    public void println()
+    {
+    }
+
+    /**
+     * Do nothing, as there is never anything to send.
+     */
+    public void flush()
+    {
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * This interface is implemented by anything that takes the output of the game
+ * for one player. Output may be held back until flush is called, which the
+ * game does once at the end of every command.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+public interface OutputSink
+{
+    /**
+     * Print some text to the player.
+     *
+     * @param text The text to print
+     */
+    void print(String text);
+
+    /**
+     * Print a line of output to the player.
+     *
+     * @param line The line to print
+     */
+    void println(String line);
+
+    /**
+     * Print an empty line to the player.
+     */
+    void println();
+
+    /**
+     * Send any output held back so far to the player.
+     */
+    void flush();
+}
@@ -3,68 +3,290 @@
  * It reads user input, breaks it down into a two word command, and returns
  * a Command object if the input is not one of the known commands.
  *
+ * Once it has warmed up, the parser creates no garbage for each line: input
+ * is read into reused buffers, command words are recognised straight from the
+ * characters, second words are taken from a cache of words already seen, and
+ * the same Command object is returned for every line. A command returned by
+ * getCommand is therefore only valid until the next call. Lines read
+ * elsewhere can be handed to parse, which returns a new Command for each.
+ *
+ * A line longer than MAX_LINE_LENGTH is rejected as an unknown command.
+ * Only that many of its characters are kept while it is read, so input that
+ * never ends a line cannot make the parser hold more than that.
+ *
  * @author Lehem Temesgen
  * @version 03/14/2024
  */
 
-import java.util.Scanner;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 
-public class Parser 
+public class Parser
 {
+    // the longest line taken as a command
+    public static final int MAX_LINE_LENGTH = 1024;
+    // the number of second words remembered by the word cache
+    private static final int WORD_CACHE_SIZE = 1024;
+
     private CommandWords commands;  // holds all valid command words
-    private Scanner reader;         // source of command input
+    private Reader reader;          // source of command input
+    private PrintWriter prompt;     // where the prompt is printed, if anywhere
+
+    // characters read from the input but not yet parsed
+    private char[] buffer;
+    private int position;
+    private int limit;
+
+    // the line being parsed, and whether characters were left out of it
+    private StringBuilder line;
+    private boolean tooLong;
+
+    // second words already seen, placed by the hash of their characters
+    private String[] words;
+
+    // the command returned for every line
+    private Command command;
 
     /**
      * Create a parser to read from the terminal window.
      */
-    public Parser() 
+    public Parser()
+    {
+        this(System.in, new PrintWriter(System.out, true), new CommandWords());
+    }
+
+    /**
+     * Create a parser for lines read elsewhere, which are handed to parse.
+     *
+     * @param commands The command words to recognise
+     */
+    public Parser(CommandWords commands)
+    {
+        this((Reader) null, null, commands);
+    }
+
+    /**
+     * Create a parser to read from the given input, such as a network
+     * connection, printing the prompt to the given output. The input is
+     * read as UTF-8, whatever the platform's default.
+     *
+     * @param input The source of command input
+     * @param prompt Where the prompt is printed
+     * @param commands The command words to recognise
+     */
+    public Parser(InputStream input, PrintWriter prompt, CommandWords commands)
+    {
+        this(new InputStreamReader(input, StandardCharsets.UTF_8), prompt, commands);
+    }
+
+    /**
+     * Create a parser to read from the given reader, such as a file of
+     * recorded commands. If no prompt output is given, no prompt is printed.
+     *
+     * @param reader The source of command input
+     * @param prompt Where the prompt is printed, or null for no prompt
+     * @param commands The command words to recognise
+     */
+    public Parser(Reader reader, PrintWriter prompt, CommandWords commands)
     {
-        commands = new CommandWords();
-        reader = new Scanner(System.in);
+        this.commands = commands;
+        this.reader = reader;
+        this.prompt = prompt;
+        buffer = new char[8192];
+        position = 0;
+        limit = 0;
+        line = new StringBuilder(128);
+        words = new String[WORD_CACHE_SIZE];
+        command = new Command(-1, null, null);
     }
 
     /**
      * Get the command from the user.
-     * 
+     *
      * @return The next command from the user
      */
-    public Command getCommand() 
+    public Command getCommand()
     {
-        String inputLine;   // will hold the full input line
-        String word1 = null;
-        String word2 = null;
+        if(prompt != null) {
+            prompt.print("> ");     // print prompt
+            prompt.flush();
+        }
 
-        System.out.print("> ");     // print prompt
+        if(!readLine()) {
+            // the input has ended, so treat it as quitting
+            command.set(CommandWord.QUIT.ordinal(), CommandWord.QUIT.getWord(), null);
+            return command;
+        }
+        if(tooLong) {
+            command.set(-1, null, null);
+            return command;
+        }
+        return parseLine(command);
+    }
 
-        inputLine = reader.nextLine();
+    /**
+     * Parse one line of input that has already been read, such as a line
+     * framed from a network connection. Unlike getCommand, this returns a
+     * new Command each time, so it stays valid after the next call.
+     *
+     * @param text The line, without its line terminator
+     * @return The command on the line
+     */
+    public Command parse(CharSequence text)
+    {
+        if (text.length() > MAX_LINE_LENGTH) {
+            return new Command(-1, null, null);
+        }
+        line.setLength(0);
+        line.append(text);
+        return parseLine(new Command(-1, null, null));
+    }
 
+    /**
+     * Find the command on the line in the line buffer.
+     *
+     * @param result The command to set to the words found
+     * @return The command
+     */
+    private Command parseLine(Command result)
+    {
         // Find up to two words on the line.
-        Scanner tokenizer = new Scanner(inputLine);
-        if(tokenizer.hasNext()) {
-            word1 = tokenizer.next();      // get first word
-            if(tokenizer.hasNext()) {
-                word2 = tokenizer.next();      // get second word
-                // note: we just ignore the rest of the input line.
-            }
-        }
+        int start1 = skipSpace(0);
+        int end1 = skipWord(start1);
+        int start2 = skipSpace(end1);
+        int end2 = skipWord(start2);
+        // note: we just ignore the rest of the input line.
 
-        // Now check whether this word is known. If so, create a command
-        // with it. If not, create a "null" command (for unknown command).
-        if(commands.isCommand(word1)) {
-            return new Command(word1, word2);
+        // Now check whether this word is known. If so, use it as the command
+        // word. If not, leave it out to mark the command as unknown.
+        int index = -1;
+        if(end1 > start1) {
+            index = commands.lookup(line, start1, end1 - start1);
         }
-        else {
-            return new Command(null, word2); 
+        String word2 = null;
+        if(end2 > start2) {
+            word2 = word(start2, end2 - start2);
         }
+        result.set(index, (index < 0) ? null : commands.getWord(index), word2);
+        return result;
     }
 
     /**
      * Get a list of valid command words.
-     * 
+     *
      * @return A String of the valid commands
      */
     public String getCommands()
     {
         return commands.getCommandList();
     }
+
+    /**
+     * Read the next line of input into the line buffer, without its
+     * line terminator. Characters past the longest line allowed, and one
+     * more for a carriage return, are read but left out.
+     *
+     * @return true if a line was read, false if the input has ended
+     */
+    private boolean readLine()
+    {
+        line.setLength(0);
+        tooLong = false;
+        boolean readAny = false;
+        while (true) {
+            if (position == limit && !fill()) {
+                tooLong |= line.length() > MAX_LINE_LENGTH;
+                return readAny;
+            }
+            readAny = true;
+            char c = buffer[position++];
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                tooLong |= line.length() > MAX_LINE_LENGTH;
+                return true;
+            }
+            if (line.length() <= MAX_LINE_LENGTH) {
+                line.append(c);
+            } else {
+                tooLong = true;
+            }
+        }
+    }
+
+    /**
+     * Read more characters from the input into the buffer.
+     *
+     * @return true if characters were read, false if the input has ended
+     */
+    private boolean fill()
+    {
+        try {
+            int count = reader.read(buffer, 0, buffer.length);
+            if (count <= 0) {
+                return false;
+            }
+            position = 0;
+            limit = count;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the index of the first character at or after the given one
+     * that is not white space.
+     *
+     * @param index Where to start looking
+     * @return The index of the start of the next word, or the line length
+     */
+    private int skipSpace(int index)
+    {
+        while (index < line.length() && Character.isWhitespace(line.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of the first white space character at or after
+     * the given one.
+     *
+     * @param index Where to start looking
+     * @return The index just past the end of the word, or the line length
+     */
+    private int skipWord(int index)
+    {
+        while (index < line.length() && !Character.isWhitespace(line.charAt(index))) {
+            index++;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the String for a word on the line, reusing the String from
+     * an earlier line if the same word was seen before.
+     *
+     * @param start The index of the first character of the word
+     * @param length The number of characters in the word
+     * @return The word
+     */
+    private String word(int start, int length)
+    {
+        int slot = CommandWords.hash(line, start, length) & (words.length - 1);
+        String word = words[slot];
+        if (word == null || !CommandWords.matches(word, line, start, length)) {
+            word = line.substring(start, start + length);
+            words[slot] = word;
+        }
+        return word;
+    }
 }
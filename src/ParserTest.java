@@ -0,0 +1,136 @@
+/**
+ * The test class ParserTest. It checks that the parser finds the two words
+ * of a command, that it turns down lines that are too long without losing
+ * its place in the input, and that it creates no garbage once warmed up.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+import com.sun.management.ThreadMXBean;
+
+public class ParserTest
+{
+    // the commands of a playthrough, including an unknown one
+    private static final String[] SCRIPT = {
+        "look", "go east", "take cookie", "eat", "take beamer", "charge",
+        "go west", "go south", "go east", "fire", "back", "stackBack",
+        "drop", "go west", "go west", "go east", "help", "dance"
+    };
+    // the number of lines read to warm up, and then read while counting
+    private static final int LINES = 100000;
+
+    /**
+     * Make a parser reading the given input.
+     *
+     * @param input The input
+     * @return The parser
+     */
+    private static Parser parser(String input)
+    {
+        return new Parser(new StringReader(input), null, new CommandWords());
+    }
+
+    /**
+     * A command word and a second word are found, and anything after them
+     * is ignored.
+     */
+    @Test
+    public void testTwoWords()
+    {
+        Parser parser = parser("  go   east  and more\r\ntake\n");
+        Command command = parser.getCommand();
+        assertEquals("go", command.getCommandWord());
+        assertEquals("east", command.getSecondWord());
+        command = parser.getCommand();
+        assertEquals("take", command.getCommandWord());
+        assertFalse(command.hasSecondWord());
+    }
+
+    /**
+     * An unknown word makes an unknown command, and the end of the input
+     * is taken as quitting.
+     */
+    @Test
+    public void testUnknownAndEnd()
+    {
+        Parser parser = parser("dance\n");
+        assertTrue(parser.getCommand().isUnknown());
+        assertEquals("quit", parser.getCommand().getCommandWord());
+    }
+
+    /**
+     * A line of the longest length allowed is a command, one character more
+     * is not, and the line after it is read as usual.
+     */
+    @Test
+    public void testLineLength()
+    {
+        String longest = "look" + " ".repeat(Parser.MAX_LINE_LENGTH - 4);
+        String tooLong = "look" + " ".repeat(Parser.MAX_LINE_LENGTH - 3);
+        Parser parser = parser(longest + "\n" + tooLong + "\n" + tooLong + tooLong + "\ngo north\n");
+        assertEquals("look", parser.getCommand().getCommandWord());
+        assertTrue(parser.getCommand().isUnknown());
+        assertTrue(parser.getCommand().isUnknown());
+        Command command = parser.getCommand();
+        assertEquals("go", command.getCommandWord());
+        assertEquals("north", command.getSecondWord());
+    }
+
+    /**
+     * Lines handed to parse are held to the same length, and each gives a
+     * command of its own.
+     */
+    @Test
+    public void testParse()
+    {
+        Parser parser = parser("");
+        Command first = parser.parse("take cookie");
+        Command second = parser.parse("drop");
+        assertEquals("cookie", first.getSecondWord());
+        assertNull(second.getSecondWord());
+        assertTrue(parser.parse("x".repeat(Parser.MAX_LINE_LENGTH + 1)).isUnknown());
+    }
+
+    /**
+     * Once the word cache is filled and the parser compiled, reading lines
+     * allocates nothing, counted by the bytes this thread allocates. The
+     * test is skipped on runtimes that cannot count them.
+     */
+    @Test
+    public void testNoGarbage()
+    {
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 2 * LINES; i++) {
+            input.append(SCRIPT[i % SCRIPT.length]).append('\n');
+        }
+        Parser parser = parser(input.toString());
+        long thread = Thread.currentThread().getId();
+        long total = 0;
+        for (int i = 0; i < LINES; i++) {
+            total += parser.getCommand().getIndex();
+        }
+        // what asking for the count allocates itself
+        long before = threads.getThreadAllocatedBytes(thread);
+        long overhead = threads.getThreadAllocatedBytes(thread) - before;
+        before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < LINES; i++) {
+            total += parser.getCommand().getIndex();
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before - overhead;
+        assertTrue(total != 0);
+        assertEquals("bytes allocated for " + LINES + " lines", 0, allocated);
+    }
+}
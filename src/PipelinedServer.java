@@ -0,0 +1,684 @@
+/**
+ * This class lets many players play one Game over local network connections,
+ * like GameServer, but with a few threads in a pipeline instead of a thread
+ * per connection:
+ *
+ * - a reader thread waits on a Selector for every connection, reads what
+ *   each has sent and cuts it into lines, and sends each player the output
+ *   of the game once it is safely in the journal;
+ * - a parser thread turns the lines into Commands;
+ * - a game thread processes the commands, one after another, for every
+ *   player, and hands the output of each to the reader thread.
+ *
+ * The stages are joined by BoundedQueues. A stage with nothing to do waits
+ * until the stage before hands it something. The reader thread never waits
+ * for anyone: when the parser is behind and its queue is full, the reader
+ * stops reading from the connection whose line did not fit until there is
+ * room. It also stops reading from a connection with too many lines not yet
+ * processed, so one player sending commands as fast as possible cannot fill
+ * the queues for everyone else, and from one that is not reading its output,
+ * so a slow player never holds up the game thread but only themselves.
+ *
+ * The lines of each connection go through the stages in the order they were
+ * read, so each player's commands run in order, as they would on their own
+ * thread. Since the game thread does not wait for the journal, the output of
+ * a command is held by the reader thread until the command is on the disk.
+ *
+ * Usage: java PipelinedServer [port [world.wow|- [checkpoint file [journal directory]]]]
+ * which takes the same arguments as GameServer.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+public class PipelinedServer
+{
+    // the number of requests each queue between stages holds
+    public static final int QUEUE_CAPACITY = 4096;
+    // the most lines of one connection read but not yet processed
+    public static final int MAX_PENDING_LINES = 16;
+    // the most bytes of output waiting for one connection before reading from it stops
+    public static final int MAX_UNSENT_OUTPUT = 1 << 16;
+    // the longest line read; the rest of a longer line is thrown away
+    public static final int MAX_LINE = 1024;
+    // how long the reader thread waits before trying again to hand on a line
+    // that did not fit, or to send output waiting for the journal, in milliseconds
+    private static final long RETRY_MILLIS = 1;
+    // how long the parser thread waits for room in a full queue, in nanoseconds
+    private static final long FULL_WAIT_NANOS = 10000;
+    private static final String PROMPT = "> ";
+
+    // the kinds of request handed along the pipeline
+    private static final int OPEN = 0;
+    private static final int LINE = 1;
+    private static final int END = 2;
+
+    private Game game;
+    private int port;
+    private Selector selector;
+    // the stages after the reader thread
+    private Stage parser;
+    private Stage runner;
+    // connections told of by other threads, with output to send or ready to be read again
+    private ConcurrentLinkedQueue<Connection> ready;
+    // whether the selector has been woken since the reader thread last looked at it
+    private AtomicBoolean woken;
+    // connections the reader thread has to try again soon
+    private List<Connection> retrying;
+    private volatile boolean stopped;
+
+    /**
+     * Create a server for the given game, listening on the given port.
+     *
+     * @param game The game shared by every connection
+     * @param port The local port to listen on
+     */
+    public PipelinedServer(Game game, int port)
+    {
+        this.game = game;
+        this.port = port;
+        ready = new ConcurrentLinkedQueue<Connection>();
+        woken = new AtomicBoolean();
+        retrying = new ArrayList<Connection>();
+        Parser lineParser = new Parser(game.getCommandWords());
+        runner = new Stage("game", this::runCommand);
+        parser = new Stage("parser", request -> parseLine(lineParser, request));
+    }
+
+    /**
+     * Accept connections, and read from and write to them, until the server
+     * is stopped. The parser and game threads run until then too.
+     *
+     * @throws IOException if the server socket cannot be opened
+     */
+    public void run() throws IOException
+    {
+        selector = Selector.open();
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            parser.start();
+            runner.start();
+            while (!stopped) {
+                woken.set(false);
+                if (!ready.isEmpty()) {
+                    selector.selectNow();
+                } else {
+                    selector.select(retrying.isEmpty() ? 0 : RETRY_MILLIS);
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept(server);
+                    } else if (key.isValid()) {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isReadable()) {
+                            connection.read();
+                        }
+                        connection.service();
+                    }
+                }
+                selector.selectedKeys().clear();
+                Connection connection;
+                while ((connection = ready.poll()) != null) {
+                    connection.queued.set(false);
+                    connection.service();
+                }
+                List<Connection> retry = new ArrayList<Connection>(retrying);
+                retrying.clear();
+                for (Connection c : retry) {
+                    c.held = false;
+                    c.service();
+                }
+            }
+        } finally {
+            stopped = true;
+            parser.wake();
+            runner.wake();
+            selector.close();
+        }
+    }
+
+    /**
+     * Stop the server. Players still connected are cut off.
+     */
+    public void stop()
+    {
+        stopped = true;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Accept a new connection, and start a session for it on the game thread.
+     *
+     * @param server The server socket
+     * @throws IOException if the connection cannot be set up
+     */
+    private void accept(ServerSocketChannel server) throws IOException
+    {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        connection.submit(new Request(connection, OPEN, null));
+        connection.service();
+    }
+
+    /**
+     * Parse a line on the parser thread and hand it to the game thread,
+     * waiting for room if the game thread is behind. The end of a
+     * connection's input is taken as quitting, as by Parser.
+     *
+     * @param lineParser The parser of the parser thread
+     * @param request The line read
+     */
+    private void parseLine(Parser lineParser, Request request)
+    {
+        if (request.kind == LINE) {
+            request.command = lineParser.parse(request.text);
+        } else if (request.kind == END) {
+            request.command = new Command(CommandWord.QUIT, null);
+        }
+        while (!runner.offer(request) && !stopped) {
+            LockSupport.parkNanos(FULL_WAIT_NANOS);
+        }
+    }
+
+    /**
+     * Run a request on the game thread: start a new player's session, or
+     * process a command and hand its output to the reader thread. A command
+     * that fails ends the player's session, as it ends the connection in
+     * GameServer, rather than stopping the game thread.
+     *
+     * @param request The request to run
+     */
+    private void runCommand(Request request)
+    {
+        Connection connection = request.connection;
+        if (request.kind == OPEN) {
+            connection.session = game.newSession(connection.sink);
+            game.startPlay(connection.session);
+            connection.sink.print(PROMPT);
+            connection.session.flush();
+            return;
+        }
+        if (!connection.finished) {
+            boolean finished;
+            try {
+                finished = game.processCommand(connection.session, request.command);
+            } catch (RuntimeException e) {
+                System.err.println("Command failed: " + e);
+                finished = true;
+            }
+            if (finished) {
+                game.endPlay(connection.session);
+                connection.finished = true;
+            } else {
+                connection.sink.print(PROMPT);
+            }
+            connection.session.flush();
+            if (finished) {
+                connection.closing = true;
+                connection.wake();
+            }
+        }
+        if (connection.pending.decrementAndGet() == MAX_PENDING_LINES - 1) {
+            // the connection may be read from again
+            connection.wake();
+        }
+    }
+
+    /**
+     * This class is a request handed along the pipeline: a new connection,
+     * a line read from one, or the end of its input.
+     */
+    private static class Request
+    {
+        Connection connection;
+        int kind;
+        String text;
+        Command command;    // set by the parser thread
+
+        Request(Connection connection, int kind, String text)
+        {
+            this.connection = connection;
+            this.kind = kind;
+            this.text = text;
+        }
+    }
+
+    /**
+     * This class is some output of the game for a connection, and the
+     * position in the journal it must wait for.
+     */
+    private static class Output
+    {
+        ByteBuffer bytes;
+        long position;
+
+        Output(ByteBuffer bytes, long position)
+        {
+            this.bytes = bytes;
+            this.position = position;
+        }
+    }
+
+    /**
+     * This class is a stage of the pipeline after the reader thread: a
+     * thread taking requests from a queue and handling them in turn, which
+     * waits without spinning when the queue is empty.
+     */
+    private class Stage implements Runnable
+    {
+        private BoundedQueue<Request> queue;
+        private Consumer<Request> handler;
+        private Thread thread;
+        // whether the thread is waiting, or about to, for the queue to fill
+        private volatile boolean waiting;
+
+        /**
+         * Create a stage.
+         *
+         * @param name The name of its thread
+         * @param handler What handles each request
+         */
+        Stage(String name, Consumer<Request> handler)
+        {
+            queue = new BoundedQueue<Request>(QUEUE_CAPACITY);
+            this.handler = handler;
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        /**
+         * Start the thread of the stage.
+         */
+        void start()
+        {
+            thread.start();
+        }
+
+        /**
+         * Hand a request to the stage, if there is room for it.
+         *
+         * @param request The request
+         * @return true if the request was taken, false if the queue is full
+         */
+        boolean offer(Request request)
+        {
+            if (!queue.offer(request)) {
+                return false;
+            }
+            if (waiting) {
+                LockSupport.unpark(thread);
+            }
+            return true;
+        }
+
+        /**
+         * Wake the thread of the stage, so that it sees the server has stopped.
+         */
+        void wake()
+        {
+            LockSupport.unpark(thread);
+        }
+
+        /**
+         * Handle requests until the server is stopped.
+         */
+        public void run()
+        {
+            while (!stopped) {
+                Request request = queue.poll();
+                if (request == null) {
+                    waiting = true;
+                    // look again, in case a request came before waiting was seen
+                    request = queue.poll();
+                    if (request == null) {
+                        LockSupport.park(this);
+                        waiting = false;
+                        continue;
+                    }
+                    waiting = false;
+                }
+                handler.accept(request);
+            }
+        }
+    }
+
+    /**
+     * This class takes the output of the game for one connection, and hands
+     * it to the reader thread each time it is flushed.
+     */
+    private static class ConnectionSink implements OutputSink
+    {
+        private Connection connection;
+        private StringBuilder buffer;   // output not handed on yet
+
+        /**
+         * Create a sink for a connection.
+         *
+         * @param connection The connection the output is sent to
+         */
+        ConnectionSink(Connection connection)
+        {
+            this.connection = connection;
+            buffer = new StringBuilder(1024);
+        }
+
+        /**
+         * Print some text to the player.
+         *
+         * @param text The text to print
+         */
+        public void print(String text)
+        {
+            buffer.append(text);
+        }
+
+        /**
+         * Print a line of output to the player.
+         *
+         * @param line The line to print
+         */
+        public void println(String line)
+        {
+            buffer.append(line).append(System.lineSeparator());
+        }
+
+        /**
+         * Print an empty line to the player.
+         */
+        public void println()
+        {
+            buffer.append(System.lineSeparator());
+        }
+
+        /**
+         * Hand the output collected so far to the reader thread, with the
+         * player's position in the journal.
+         */
+        public void flush()
+        {
+            if (buffer.length() > 0) {
+                byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+                buffer.setLength(0);
+                connection.send(bytes, connection.session.getJournalPosition());
+            }
+        }
+    }
+
+    /**
+     * This class is one player's connection. Its channel, input buffer and
+     * held line belong to the reader thread, its session to the game thread;
+     * the rest is shared between them.
+     */
+    private class Connection
+    {
+        // used by the reader thread only
+        private SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer input;       // bytes read but not yet cut into lines
+        private boolean dropping;       // throwing away the rest of a line too long
+        private boolean ended;          // whether the input has ended
+        private boolean endSent;        // whether the end of the input has been handed on
+        private Request stalled;        // a request there was no room for in the parser's queue
+        private boolean held;           // whether the connection is to be tried again soon
+        private boolean waitingForDisk; // whether output is waiting for the journal
+
+        // used by the game thread only
+        private Session session;
+        private ConnectionSink sink;
+        private boolean finished;       // whether the player has quit
+
+        // shared
+        private AtomicInteger pending;  // requests read but not yet run
+        private ConcurrentLinkedQueue<Output> output;
+        private AtomicLong unsent;      // bytes of output not yet sent
+        private AtomicBoolean queued;   // whether the connection is in the ready queue
+        private volatile boolean closing;
+
+        /**
+         * Create a connection.
+         *
+         * @param channel The channel to the player
+         */
+        Connection(SocketChannel channel)
+        {
+            this.channel = channel;
+            input = ByteBuffer.allocate(MAX_LINE);
+            sink = new ConnectionSink(this);
+            pending = new AtomicInteger();
+            output = new ConcurrentLinkedQueue<Output>();
+            unsent = new AtomicLong();
+            queued = new AtomicBoolean();
+        }
+
+        /**
+         * Hand some output to the reader thread to send. Called on the game
+         * thread.
+         *
+         * @param bytes The output
+         * @param position The position in the journal it must wait for
+         */
+        void send(byte[] bytes, long position)
+        {
+            unsent.addAndGet(bytes.length);
+            output.add(new Output(ByteBuffer.wrap(bytes), position));
+            wake();
+        }
+
+        /**
+         * Tell the reader thread to look at this connection again. Called on
+         * the game thread. The selector is only woken once however many
+         * connections are told of before the reader thread gets to them.
+         */
+        void wake()
+        {
+            if (queued.compareAndSet(false, true)) {
+                ready.add(this);
+                if (woken.compareAndSet(false, true)) {
+                    selector.wakeup();
+                }
+            }
+        }
+
+        /**
+         * Read what the player has sent. It is cut into lines by service.
+         */
+        void read()
+        {
+            try {
+                if (channel.read(input) < 0) {
+                    ended = true;
+                }
+            } catch (IOException e) {
+                disconnect();
+            }
+        }
+
+        /**
+         * Hand on the complete lines in the input buffer, while there is room
+         * for them, and the end of the input once every line is handed on.
+         */
+        void frame()
+        {
+            input.flip();
+            while (stalled == null && pending.get() < MAX_PENDING_LINES) {
+                int start = input.position();
+                int end = start;
+                while (end < input.limit() && input.get(end) != '\n') {
+                    end++;
+                }
+                if (end == input.limit() && !(ended && end > start)) {
+                    break;
+                }
+                // the last line may end with the input rather than a line end
+                input.position(Math.min(end + 1, input.limit()));
+                int length = end - start;
+                if (length > 0 && input.get(start + length - 1) == '\r') {
+                    length--;
+                }
+                if (dropping) {
+                    dropping = false;
+                } else {
+                    submit(new Request(this, LINE, new String(input.array(), start, length,
+                                                              StandardCharsets.UTF_8)));
+                }
+            }
+            input.compact();
+            if (!input.hasRemaining() && stalled == null && pending.get() < MAX_PENDING_LINES) {
+                // a line longer than the buffer: keep none of it
+                input.clear();
+                dropping = true;
+            }
+            if (ended && !endSent && input.position() == 0 && stalled == null) {
+                endSent = true;
+                submit(new Request(this, END, null));
+            }
+        }
+
+        /**
+         * Hand a request to the parser thread, or hold on to it if the
+         * parser's queue is full.
+         *
+         * @param request The request
+         */
+        void submit(Request request)
+        {
+            if (request.kind != OPEN) {
+                pending.incrementAndGet();
+            }
+            if (!parser.offer(request)) {
+                stalled = request;
+            }
+        }
+
+        /**
+         * Do what the reader thread can for this connection: hand on a held
+         * line if there is room for it now, and the lines read since, send the output that is on the
+         * disk, close the connection once the player has quit and has been
+         * sent everything, and read from it only while nothing is held up.
+         */
+        void service()
+        {
+            if (stalled != null && parser.offer(stalled)) {
+                stalled = null;
+            }
+            if (stalled == null) {
+                frame();
+            }
+            if (channel.isOpen()) {
+                write();
+            }
+            if (!channel.isOpen()) {
+                output.clear();
+            } else {
+                if (closing && output.isEmpty()) {
+                    close();
+                } else {
+                    int ops = 0;
+                    if (!ended && !closing && stalled == null && pending.get() < MAX_PENDING_LINES
+                        && unsent.get() <= MAX_UNSENT_OUTPUT && input.hasRemaining()) {
+                        ops |= SelectionKey.OP_READ;
+                    }
+                    Output next = output.peek();
+                    if (next != null && !waitingForDisk) {
+                        // the player is not taking output as fast as it comes
+                        ops |= SelectionKey.OP_WRITE;
+                    }
+                    if (ops != key.interestOps()) {
+                        key.interestOps(ops);
+                    }
+                }
+            }
+            if ((stalled != null || waitingForDisk) && !held) {
+                held = true;
+                retrying.add(this);
+            }
+        }
+
+        /**
+         * Send the output that is on the disk, as far as the channel takes it.
+         */
+        void write()
+        {
+            waitingForDisk = false;
+            Output next;
+            try {
+                while ((next = output.peek()) != null) {
+                    if (!game.isDurable(next.position)) {
+                        waitingForDisk = true;
+                        return;
+                    }
+                    unsent.addAndGet(-channel.write(next.bytes));
+                    if (next.bytes.hasRemaining()) {
+                        return;
+                    }
+                    output.poll();
+                }
+            } catch (IOException e) {
+                disconnect();
+            }
+        }
+
+        /**
+         * Close a connection that has broken, and end the player's session as
+         * if they had quit.
+         */
+        void disconnect()
+        {
+            close();
+            ended = true;
+            input.clear();
+            dropping = false;
+        }
+
+        /**
+         * Close the channel.
+         */
+        void close()
+        {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing more can be done for this connection
+            }
+        }
+    }
+
+    /**
+     * Start a server for a new game, taking the same arguments as GameServer.
+     *
+     * @param args The command line arguments
+     * @throws IOException if a file cannot be read or written or the server socket cannot be opened
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : GameServer.DEFAULT_PORT;
+        new PipelinedServer(GameServer.createGame(args), port).run();
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * This class replays a file of recorded commands through a new game without
+ * the console, writing the output to a file or to standard output. It is
+ * used to check that a change to the game does not change what the player
+ * sees, and to measure how fast commands are processed. The random numbers
+ * of the world start from a seed, 0 unless another is given, so the same
+ * commands always give the same output.
+ *
+ * Usage: java Replay commands.txt [output.txt [seed]]
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+public class Replay
+{
+    /**
+     * Replay the commands in the file named by the first argument, writing
+     * the output to the file named by the second argument, if given, with
+     * the seed given as the third argument.
+     *
+     * @param args The command line arguments
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1) {
+            System.err.println("Usage: java Replay commands.txt [output.txt [seed]]");
+            return;
+        }
+        long start = System.nanoTime();
+        try (Reader input = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+             Writer output = (args.length > 1)
+                 ? Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8)
+                 : new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) {
+            Game game = new Game();
+            game.getWorld().setSeed((args.length > 2) ? Long.parseLong(args[2]) : 0);
+            game.replay(input, output);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.err.println("Replayed " + args[0] + " in " + (elapsed / 1000000) + " ms");
+    }
+}
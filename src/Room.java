@@ -2,38 +2,92 @@
  * This class represents a room in the game. Each room has a description, exits leading to neighboring rooms,
  * and the items that can be found in it. It allows the player to move and interaction with the environment.
  *
+ * Many players can be in a room at once, so every change to its items, and
+ * every look at them, holds the lock of the room. Taking an item is done as
+ * one step, so two players can never both take the same item.
+ *
+ * The items of a room can be shared with a snapshot without copying them.
+ * Shared items are never changed again: the room copies them before its
+ * next change instead, so a snapshot costs nothing for the many rooms that
+ * do not change before the next one. A room that has never held an item
+ * shares one empty collection with every other such room, so it costs
+ * nothing until its first item is added.
+ *
  * @author Lehem Temesgen
  * @version 03/14/2024
  */
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.HashMap;
-import java.util.ArrayList;
+import java.util.Map;
+import java.util.function.Predicate;
 
 public class Room 
 {
+    private World world;        // the world this room belongs to
+    private int id;             // the id of this room in its world
+    private String name;        // the name of this room in its world
     private String description;
-    private HashMap<String, Room> exits;        // stores exits of this room.
+    private HashMap<String, Room> exits;        // stores exits of this room, or null if it has none yet.
 
-    // the items in this room
-    private ArrayList<Item> items;
+    // the items in this room, indexed by name
+    private ItemIndex items;
+    // whether the items are shared, and must be copied before a change
+    private boolean itemsShared;
     
-    // static ArrayList of Rooms
-    protected static ArrayList<Room> allRooms = new ArrayList<Room>();
+    // the long description, built when first needed and
+    // cleared whenever the exits or items change
+    private volatile String longDescription;
+    // whether the items changed since the world last collected its changed rooms
+    private boolean changed;
+    
+    // the items of every room that has not held an item yet, which are
+    // always shared and so never changed
+    private static final ItemIndex NO_ITEMS = new ItemIndex();
     
     /**
-     * Create a room described "description". Initially, it has
-     * no exits. "description" is something like "a kitchen" or
-     * "an open courtyard".
+     * Create a room named "name" and described "description", and add it
+     * to the given world. Initially, it has no exits. "description" is
+     * something like "a kitchen" or "an open courtyard".
      * 
+     * @param world The world the room belongs to
+     * @param name The room's name, unique within its world
      * @param description The room's description.
      */
-    public Room(String description) 
+    public Room(World world, String name, String description) 
     {
+        this.name = name;
         this.description = description;
         exits = new HashMap<String, Room>();
-        items = new ArrayList<Item>();
-        allRooms.add(this); // add the room to the list of rooms
+        items = NO_ITEMS;
+        itemsShared = true;
+        this.world = world;
+        id = world.addRoom(this); // add the room to its world
+    }
+    
+    /**
+     * Create a room that already has an id in its world, such as a room
+     * loaded from a world file. The room is not added to its world. It has
+     * no table of exits until setExit is first called, as the exits of such
+     * a room are usually kept by its world.
+     * 
+     * @param world The world the room belongs to
+     * @param id The room's id in its world
+     * @param name The room's name, unique within its world
+     * @param description The room's description.
+     */
+    protected Room(World world, int id, String name, String description) 
+    {
+        this.world = world;
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        items = NO_ITEMS;
+        itemsShared = true;
     }
     
     /**
@@ -41,12 +95,42 @@ public class Room
      * 
      * @param item The item to add to the room
      */
-    public void addItem(Item item) 
+    public synchronized void addItem(Item item) 
     {
         if (item!=null) { // not required, but good practice
-            items.add(item);
+            changeItems().add(item);
+            itemsChanged();
         }
     }
+    
+    /**
+     * Add several items to the room as one change, such as everything a
+     * player drops at once.
+     * 
+     * @param added The items to add to the room
+     */
+    public synchronized void addItems(Collection<Item> added) 
+    {
+        if (!added.isEmpty()) {
+            ItemIndex items = changeItems();
+            for (Item item : added) {
+                items.add(item);
+            }
+            itemsChanged();
+        }
+    }
+    
+    /**
+     * Add an item the room starts out with, such as one read from a world
+     * file. Unlike addItem, this is not a change to be saved.
+     * 
+     * @param item The item to add to the room
+     */
+    synchronized void addInitialItem(Item item) 
+    {
+        changeItems().add(item);
+        longDescription = null;
+    }
      
     /**
      * Removes an item from the room.
@@ -54,19 +138,137 @@ public class Room
      * @param item The item to remove from the room
      * @return true if the item was successfully removed, false otherwise
      */
-    public void removeItem(Item item) {
-        if (item!=null){    
-            items.remove(item);
+    public synchronized void removeItem(Item item) {
+        if (item!=null && items.contains(item)){    
+            changeItems().remove(item);
+            itemsChanged();
         }        
     }
     
     /**
-     * Returns the ArrayList of all rooms.
+     * Removes every item from the room.
+     */
+    synchronized void clearItems() 
+    {
+        items = new ItemIndex();
+        itemsShared = false;
+        itemsChanged();
+    }
+    
+    /**
+     * Returns the items in the room, in the order they were added.
+     * 
+     * @return A copy of the list of items
+     */
+    public synchronized List<Item> getItemList() 
+    {
+        List<Item> list = new ArrayList<Item>(items.size());
+        for (Item i : items) {
+            list.add(i);
+        }
+        return list;
+    }
+    
+    /**
+     * Forget the cached description, and tell the world this room has
+     * changed unless it has already been told.
+     */
+    private void itemsChanged() 
+    {
+        longDescription = null;
+        if (!changed) {
+            changed = true;
+            world.roomChanged(this);
+        }
+    }
+    
+    /**
+     * Returns the items, copying them first if they are shared.
+     * 
+     * @return The items, which may be changed
+     */
+    private ItemIndex changeItems() 
+    {
+        if (itemsShared) {
+            items = items.copy();
+            itemsShared = false;
+        }
+        return items;
+    }
+    
+    /**
+     * Returns the items of this room, to be shared with a snapshot. They
+     * are never changed again; the room copies them before its next change.
+     * 
+     * @return The items of the room
+     */
+    synchronized ItemIndex shareItems() 
+    {
+        itemsShared = true;
+        return items;
+    }
+    
+    /**
+     * Marks the room as saved, so the next change is reported to the
+     * world again.
+     * 
+     * @return true if the room had changed since it was last marked as saved
+     */
+    synchronized boolean clearChanged() 
+    {
+        boolean wasChanged = changed;
+        changed = false;
+        return wasChanged;
+    }
+    
+    /**
+     * Returns the items of this room, for a world to keep once the room
+     * itself is thrown away. They must only be used holding the lock of
+     * the room.
+     *
+     * @return The items of the room
+     */
+    ItemIndex getItemIndex() {
+        return items;
+    }
+    
+    /**
+     * Gives a room just read back into its world the items it had when it
+     * was thrown away, instead of those it starts out with.
+     *
+     * @param items The items of the room
+     */
+    synchronized void setItemIndex(ItemIndex items) {
+        this.items = items;
+        itemsShared = true;
+        longDescription = null;
+    }
+    
+    /**
+     * Returns the world this room belongs to.
      *
-     * @return The ArrayList of all rooms
+     * @return The world
      */
-    public static ArrayList<Room> getAllRooms() {
-        return allRooms;
+    World getWorld() {
+        return world;
+    }
+    
+    /**
+     * Returns the id of this room in its world.
+     *
+     * @return The id of the room
+     */
+    public int getId() {
+        return id;
+    }
+    
+    /**
+     * Returns the name of this room in its world.
+     *
+     * @return The name of the room
+     */
+    public String getName() {
+        return name;
     }
     
     /**
@@ -77,7 +279,11 @@ public class Room
      */
     public void setExit(String direction, Room neighbour) 
     {
+        if (exits == null) {
+            exits = new HashMap<String, Room>();
+        }
         exits.put(direction, neighbour);
+        longDescription = null;
     }
 
     /**
@@ -86,13 +292,61 @@ public class Room
      * @param itemSearched the name of the item to be searched
      * @return the item if it's in the room, null otherwise
      */
-    public Item itemInRoom(String itemSearched){
-        for(Item item: items){
-            if(item.getName().equalsIgnoreCase(itemSearched)){
-                return item;
-            }
+    public synchronized Item itemInRoom(String itemSearched){
+        return items.find(itemSearched);
+    }
+    
+    /**
+     * Takes an item out of the room, if there is one with the given name.
+     * Finding the item and removing it are done as one step, so no other
+     * player can take the same item in between.
+     * 
+     * @param itemSearched the name of the item to be taken
+     * @return the item taken, or null if there is no item with that name
+     */
+    public synchronized Item takeItem(String itemSearched){
+        Item item = items.find(itemSearched);
+        if (item != null) {
+            changeItems().remove(item);
+            itemsChanged();
         }
-        return null;
+        return item;
+    }
+    
+    /**
+     * Offers the first item with the given name to a taker, such as a
+     * player's inventory, and takes it out of the room if the taker accepts
+     * it. This is done as one step, so no other player can take the same
+     * item in between.
+     * 
+     * @param itemSearched the name of the item to be taken
+     * @param taker keeps the item and returns true, or returns false to leave it
+     * @return the item found, whether or not it was taken, or null if there
+     *         is no item with that name
+     */
+    public synchronized Item takeItem(String itemSearched, Predicate<Item> taker){
+        Item item = items.find(itemSearched);
+        if (item != null && taker.test(item)) {
+            changeItems().remove(item);
+            itemsChanged();
+        }
+        return item;
+    }
+    
+    /**
+     * Offers every item in the room to a taker, in order, and takes out of
+     * the room the items it accepts. The room's items are gone through once,
+     * as one step.
+     * 
+     * @param taker keeps an item and returns true, or returns false to leave it
+     * @return the items taken, in order
+     */
+    public synchronized List<Item> takeItems(Predicate<Item> taker){
+        List<Item> taken = changeItems().removeIf(taker);
+        if (!taken.isEmpty()) {
+            itemsChanged();
+        }
+        return taken;
     }
     
     /**
@@ -113,13 +367,24 @@ public class Room
      *     Items: 
      *        a chair weighing 5 kgs.
      *        a table weighing 10 kgs.
+     * The description is only rebuilt after the exits or items change.
      *     
      * @return A long description of this room
      */
     public String getLongDescription()
     {
-        return "You are " + description + ".\n" + getExitString()
-            + "\nItems:" + getItems();
+        String result = longDescription;
+        if (result == null) {
+            synchronized (this) {
+                result = longDescription;
+                if (result == null) {
+                    result = "You are " + description + ".\n" + getExitString()
+                        + "\nItems:" + getItems();
+                    longDescription = result;
+                }
+            }
+        }
+        return result;
     }
 
     /**
@@ -128,14 +393,16 @@ public class Room
      * 
      * @return Details of the room's exits
      */
-    private String getExitString()
+    protected String getExitString()
     {
-        String returnString = "Exits:";
-        Set<String> keys = exits.keySet();
-        for(String exit : keys) {
-            returnString += " " + exit;
+        StringBuilder returnString = new StringBuilder("Exits:");
+        if (exits != null) {
+            Set<String> keys = exits.keySet();
+            for(String exit : keys) {
+                returnString.append(' ').append(exit);
+            }
         }
-        return returnString;
+        return returnString.toString();
     }
 
     /**
@@ -147,20 +414,52 @@ public class Room
      */
     public Room getExit(String direction) 
     {
-        return exits.get(direction);
+        return (exits == null) ? null : exits.get(direction);
     }
     
     /**
-     * Return a String representing the items in the room, one per line.
+     * Returns the exits of this room that were added with setExit.
+     * 
+     * @return The exits, by direction, which cannot be changed
+     */
+    public Map<String, Room> getExits() 
+    {
+        if (exits == null) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(exits);
+    }
+    
+    /**
+     * Append the description of a stack of equal items, such as
+     * "5x Cookie: a cookie that weighs 0.1kg.", or just the description of
+     * the item if there is only one.
+     * 
+     * @param s Where the description is appended
+     * @param item The item of the stack
+     * @param count The number of items in the stack
+     */
+    static void appendStack(StringBuilder s, Item item, int count)
+    {
+        if (count > 1) {
+            s.append(count).append("x ");
+        }
+        s.append(item.getDescription());
+    }
+    
+    /**
+     * Return a String representing the items in the room, one per line,
+     * with equal items shown once with their number.
      * 
      * @return A String of the items, one per line
      */
-    public String getItems() 
+    public synchronized String getItems() 
     {
         // let's use a StringBuilder (not required)
         StringBuilder s = new StringBuilder();
-        for (Item i : items) {
-            s.append("\n    " + i.getDescription());
+        for (Item i : items.stacks()) {
+            s.append("\n    ");
+            appendStack(s, i, items.count(i));
         }
         return s.toString(); 
     }
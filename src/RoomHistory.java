@@ -0,0 +1,248 @@
+/**
+ * This class holds the rooms a player has left, most recent last, for
+ * "stackBack" to step back through. It keeps room ids rather than rooms,
+ * in a ring buffer that grows as needed up to a fixed capacity. Once it is
+ * full, every new room pushes out the oldest one, so a player who wanders
+ * for ever never holds more than the capacity.
+ *
+ * It can also collapse oscillations: going from A to B and straight back
+ * to A leaves the history as it was before A was left, instead of adding
+ * both rooms to it, so a player pacing between two rooms adds nothing.
+ *
+ * A history belongs to one session and is not safe to use from several
+ * threads at once. It can be shared with a snapshot without copying: the
+ * shared history is never changed, and this one copies its buffer before
+ * it next writes to it.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.util.Arrays;
+
+public class RoomHistory
+{
+    // the most rooms a history holds, unless told otherwise
+    public static final int DEFAULT_CAPACITY = 1000;
+    // what pop and peek return when there is no room
+    public static final int NONE = -1;
+    // the size of the buffer of a new history
+    private static final int INITIAL_SIZE = 16;
+
+    // the room ids, the oldest at head
+    private int[] ids;
+    private int head;
+    private int size;
+    private int capacity;
+    // whether going straight back to the room just left cancels out
+    private boolean collapse;
+    // whether another history holds the buffer too
+    private boolean shared;
+
+    /**
+     * Create an empty history of the default capacity, which does not
+     * collapse oscillations.
+     */
+    public RoomHistory()
+    {
+        this(DEFAULT_CAPACITY, false);
+    }
+
+    /**
+     * Create an empty history.
+     *
+     * @param capacity The most rooms the history holds
+     * @param collapse Whether going from A to B and straight back to A
+     *        leaves the history as it was
+     * @throws IllegalArgumentException if the capacity is less than one
+     */
+    public RoomHistory(int capacity, boolean collapse)
+    {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Bad history capacity: " + capacity);
+        }
+        this.capacity = capacity;
+        this.collapse = collapse;
+        ids = new int[Math.min(capacity, INITIAL_SIZE)];
+    }
+
+    /**
+     * Returns a history holding the same rooms, which shares the buffer of
+     * this one rather than copying it. The history returned must not be
+     * changed; this one copies the buffer before it next writes to it.
+     *
+     * @return The shared history
+     */
+    RoomHistory share()
+    {
+        RoomHistory copy = new RoomHistory(capacity, collapse);
+        copy.ids = ids;
+        copy.head = head;
+        copy.size = size;
+        copy.shared = true;
+        shared = true;
+        return copy;
+    }
+
+    /**
+     * Note that the player has moved from one room to another, which puts
+     * the room left on the history, or takes it off again if collapsing
+     * and the player went straight back.
+     *
+     * @param from The id of the room left
+     * @param to The id of the room entered
+     */
+    public void moved(int from, int to)
+    {
+        if (collapse && size > 0 && peek() == to) {
+            pop();
+        } else {
+            push(from);
+        }
+    }
+
+    /**
+     * Add a room to the history, pushing out the oldest room if it is full.
+     *
+     * @param id The id of the room
+     */
+    public void push(int id)
+    {
+        if (shared) {
+            ids = ids.clone();
+            shared = false;
+        }
+        if (size == ids.length) {
+            if (ids.length < capacity) {
+                grow();
+            } else {
+                // full: the newest room takes the place of the oldest
+                ids[head] = id;
+                head = next(head);
+                return;
+            }
+        }
+        ids[index(size)] = id;
+        size++;
+    }
+
+    /**
+     * Take the most recent room off the history.
+     *
+     * @return The id of the room, or NONE if the history is empty
+     */
+    public int pop()
+    {
+        if (size == 0) {
+            return NONE;
+        }
+        size--;
+        return ids[index(size)];
+    }
+
+    /**
+     * Returns the most recent room, leaving it on the history.
+     *
+     * @return The id of the room, or NONE if the history is empty
+     */
+    public int peek()
+    {
+        return (size == 0) ? NONE : ids[index(size - 1)];
+    }
+
+    /**
+     * Returns the number of rooms in the history.
+     *
+     * @return The number of rooms
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns whether the history is empty.
+     *
+     * @return true if there are no rooms in the history, false otherwise
+     */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Returns the most rooms the history holds.
+     *
+     * @return The capacity
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Returns whether going straight back to the room just left cancels out.
+     *
+     * @return true if oscillations are collapsed, false otherwise
+     */
+    public boolean isCollapsing()
+    {
+        return collapse;
+    }
+
+    /**
+     * Remove every room from the history.
+     */
+    public void clear()
+    {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Returns the rooms in the history.
+     *
+     * @return The room ids, the oldest first
+     */
+    public int[] toArray()
+    {
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = ids[index(i)];
+        }
+        return result;
+    }
+
+    /**
+     * Double the buffer, up to the capacity, putting the oldest room first.
+     */
+    private void grow()
+    {
+        int[] grown = Arrays.copyOf(toArray(), Math.min(capacity, ids.length * 2));
+        ids = grown;
+        head = 0;
+    }
+
+    /**
+     * Returns where a room is in the buffer.
+     *
+     * @param i The position of the room in the history, 0 for the oldest
+     * @return The index of the room in the buffer
+     */
+    private int index(int i)
+    {
+        int index = head + i;
+        return (index >= ids.length) ? index - ids.length : index;
+    }
+
+    /**
+     * Returns the index after the given one in the buffer.
+     *
+     * @param index An index in the buffer
+     * @return The next index, going round to the start
+     */
+    private int next(int index)
+    {
+        return (index + 1 == ids.length) ? 0 : index + 1;
+    }
+}
@@ -0,0 +1,507 @@
+/**
+ * This class finds the shortest way from one room to another, for the "path"
+ * command and for anything else that needs to find its way around a world,
+ * such as bots. It works on the ExitGraph of a world, using only room ids and
+ * arrays of ints, so it never needs the rooms themselves to be in memory.
+ *
+ * Routes are found with a search from both ends at once. For big worlds a
+ * landmark index can be built first: the distances to and from a few far
+ * apart rooms, which give a lower bound on the distance between any two
+ * rooms and let an A* search head straight for its goal. Landmarks cannot
+ * tell dead ends just off a route from the route itself, so in worlds made
+ * of corridors with rooms hanging off them, like copies of the campus, the
+ * search from both ends is the faster of the two. The same goes for the
+ * worlds of WorldGenerator, whose exits mostly lead to nearby rooms, so the
+ * game does not build landmarks, and they are only measured by Benchmarks.
+ *
+ * Exits out of transporter rooms lead to a random room, so they are never
+ * part of a route: the route finder is told which rooms are transporters,
+ * and leaves their exits out of every search. A charged beamer is a special
+ * step that can be taken from any room to the room it was charged in.
+ *
+ * Any number of threads may find routes with one route finder at once. The
+ * graph and landmarks are only read, and each search works in a set of
+ * arrays of its own, taken from a pool of idle sets, or made if none is
+ * idle, and put back when the route is found. There are only ever as many
+ * sets as searches that ran at the same time. The landmark index must be
+ * built before the route finder is shared.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class RouteFinder
+{
+    // the step that stands for firing a charged beamer in a route
+    public static final int FIRE_BEAMER = -1;
+    // the distance to a room that cannot be reached
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    private ExitGraph graph;
+    private int size;           // the number of rooms
+    // the transporter rooms, whose exits are never taken
+    private BitSet transporters;
+    // the room each exit leaves from
+    private int[] exitSource;
+    // the exits leading into each room: those into room r are
+    // reverseExits[reverseOffsets[r]] to reverseExits[reverseOffsets[r+1] - 1]
+    private int[] reverseOffsets;
+    private int[] reverseExits;
+
+    // the distances from and to each landmark, by landmark and room
+    private int[][] fromLandmark;
+    private int[][] toLandmark;
+
+    // the working arrays of searches not running now
+    private ConcurrentLinkedQueue<Search> idle;
+
+    /**
+     * Create a route finder for the rooms and exits of a graph that has no
+     * transporter rooms.
+     *
+     * @param graph The exits of every room of a world
+     */
+    public RouteFinder(ExitGraph graph)
+    {
+        this(graph, new BitSet());
+    }
+
+    /**
+     * Create a route finder for the rooms and exits of a graph, never
+     * taking the exits of the given transporter rooms.
+     *
+     * @param graph The exits of every room of a world
+     * @param transporters The ids of the transporter rooms, such as from World.getTransporters
+     */
+    public RouteFinder(ExitGraph graph, BitSet transporters)
+    {
+        this.graph = graph;
+        this.transporters = transporters;
+        size = graph.size();
+        int exitCount = graph.getFirstExit(size);
+
+        exitSource = new int[exitCount];
+        reverseOffsets = new int[size + 1];
+        for (int room = 0; room < size; room++) {
+            for (int exit = graph.getFirstExit(room); exit < graph.getEndExit(room); exit++) {
+                exitSource[exit] = room;
+            }
+            for (int exit = graph.getFirstExit(room); exit < getEndExit(room); exit++) {
+                reverseOffsets[graph.getExitTarget(exit) + 1]++;
+            }
+        }
+        for (int room = 0; room < size; room++) {
+            reverseOffsets[room + 1] += reverseOffsets[room];
+        }
+        reverseExits = new int[reverseOffsets[size]];
+        int[] next = Arrays.copyOf(reverseOffsets, size);
+        for (int room = 0; room < size; room++) {
+            for (int exit = graph.getFirstExit(room); exit < getEndExit(room); exit++) {
+                reverseExits[next[graph.getExitTarget(exit)]++] = exit;
+            }
+        }
+        idle = new ConcurrentLinkedQueue<Search>();
+    }
+
+    /**
+     * Returns the exit graph routes are found in.
+     *
+     * @return The exit graph
+     */
+    public ExitGraph getGraph()
+    {
+        return graph;
+    }
+
+    /**
+     * Build the landmark index, so that later routes are found with an A*
+     * search. Each landmark takes two ints for every room.
+     *
+     * @param count The number of landmarks
+     */
+    public void buildLandmarks(int count)
+    {
+        count = Math.min(count, size);
+        fromLandmark = new int[count][];
+        toLandmark = new int[count][];
+        // each landmark is the room furthest from the landmarks chosen so far
+        int[] nearest = new int[size];
+        Arrays.fill(nearest, UNREACHABLE);
+        int landmark = 0;
+        for (int i = 0; i < count; i++) {
+            fromLandmark[i] = distances(landmark, true);
+            toLandmark[i] = distances(landmark, false);
+            int furthest = -1;
+            for (int room = 0; room < size; room++) {
+                int d = fromLandmark[i][room];
+                if (d != UNREACHABLE && d < nearest[room]) {
+                    nearest[room] = d;
+                }
+                if (nearest[room] != UNREACHABLE && nearest[room] > 0
+                        && (furthest < 0 || nearest[room] > nearest[furthest])) {
+                    furthest = room;
+                }
+            }
+            if (furthest < 0) {
+                fromLandmark = Arrays.copyOf(fromLandmark, i + 1);
+                toLandmark = Arrays.copyOf(toLandmark, i + 1);
+                return;
+            }
+            landmark = furthest;
+        }
+    }
+
+    /**
+     * Find the shortest route between two rooms.
+     *
+     * @param from The id of the room the route starts in
+     * @param to The id of the room the route ends in
+     * @return The exits to take, in order, or null if there is no route
+     */
+    public int[] findRoute(int from, int to)
+    {
+        if (from == to) {
+            return new int[0];
+        }
+        Search search = idle.poll();
+        if (search == null) {
+            search = new Search();
+        }
+        try {
+            return (fromLandmark == null) ? search.searchBothWays(from, to) : search.searchAStar(from, to);
+        } finally {
+            idle.offer(search);
+        }
+    }
+
+    /**
+     * Find the shortest route between two rooms for a player carrying a
+     * charged beamer, which can be fired once, from any room, to take the
+     * player to the room it was charged in. In the route, firing the beamer
+     * is the step FIRE_BEAMER.
+     *
+     * @param from The id of the room the route starts in
+     * @param to The id of the room the route ends in
+     * @param beamerRoom The id of the room the beamer was charged in, or -1 if there is no charged beamer
+     * @return The steps to take, in order, or null if there is no route
+     */
+    public int[] findRoute(int from, int to, int beamerRoom)
+    {
+        int[] walk = findRoute(from, to);
+        if (beamerRoom < 0 || beamerRoom == from) {
+            return walk;
+        }
+        int[] rest = findRoute(beamerRoom, to);
+        if (rest == null || (walk != null && walk.length <= rest.length + 1)) {
+            return walk;
+        }
+        int[] route = new int[rest.length + 1];
+        route[0] = FIRE_BEAMER;
+        System.arraycopy(rest, 0, route, 1, rest.length);
+        return route;
+    }
+
+    /**
+     * Returns a lower bound on the number of steps between two rooms,
+     * from the landmark index.
+     *
+     * @param room The id of the room to start from
+     * @param to The id of the room to reach
+     * @return A number of steps no greater than the real distance
+     */
+    private int estimate(int room, int to)
+    {
+        int bound = 0;
+        for (int i = 0; i < fromLandmark.length; i++) {
+            int[] from = fromLandmark[i];
+            int[] towards = toLandmark[i];
+            if (from[to] != UNREACHABLE && from[room] != UNREACHABLE) {
+                bound = Math.max(bound, from[to] - from[room]);
+            }
+            if (towards[room] != UNREACHABLE && towards[to] != UNREACHABLE) {
+                bound = Math.max(bound, towards[room] - towards[to]);
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * Find the distance from one room to every room, or from every room to
+     * one room.
+     *
+     * @param room The id of the room
+     * @param forward true for the distances from the room, false for those to it
+     * @return The distance of each room, or UNREACHABLE
+     */
+    private int[] distances(int room, boolean forward)
+    {
+        int[] distance = new int[size];
+        Arrays.fill(distance, UNREACHABLE);
+        distance[room] = 0;
+        int[] queue = new int[size];
+        queue[0] = room;
+        int head = 0, tail = 1;
+        while (head < tail) {
+            int current = queue[head++];
+            int start = forward ? graph.getFirstExit(current) : reverseOffsets[current];
+            int end = forward ? getEndExit(current) : reverseOffsets[current + 1];
+            for (int i = start; i < end; i++) {
+                int next = forward ? graph.getExitTarget(i) : exitSource[reverseExits[i]];
+                if (distance[next] == UNREACHABLE) {
+                    distance[next] = distance[current] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Returns the end of the exits of a room that a route may take, which
+     * is none for a transporter room.
+     *
+     * @param room The id of the room
+     * @return The index after the last exit of the room that may be taken
+     */
+    private int getEndExit(int room)
+    {
+        return transporters.get(room) ? graph.getFirstExit(room) : graph.getEndExit(room);
+    }
+
+    /**
+     * This class is the working arrays of one search at a time, kept from
+     * one search to the next so that a search costs nothing to start.
+     */
+    private class Search
+    {
+        // a room has been reached by the current search if its mark
+        // equals the number of the search
+        private int search;
+        private int[] markForward;
+        private int[] markBackward;
+        private int[] distanceForward;
+        private int[] distanceBackward;
+        // the exit by which each room was reached
+        private int[] exitForward;
+        private int[] exitBackward;
+        private int[] queueForward;
+        private int[] queueBackward;
+        // the open rooms of the A* search, as a binary heap of rooms and keys;
+        // a key holds the estimated length of the route through the room, and
+        // breaks ties in favour of the room furthest from the start
+        private int[] heapRooms;
+        private long[] heapKeys;
+        private int heapSize;
+
+        /**
+         * Create the working arrays for searching the rooms of this route
+         * finder.
+         */
+        Search()
+        {
+            markForward = new int[size];
+            markBackward = new int[size];
+            distanceForward = new int[size];
+            distanceBackward = new int[size];
+            exitForward = new int[size];
+            exitBackward = new int[size];
+            queueForward = new int[size];
+            queueBackward = new int[size];
+            heapRooms = new int[16];
+            heapKeys = new long[16];
+        }
+
+        /**
+         * Search outwards from both ends at once, one whole level at a time,
+         * always growing the side with fewer rooms to look at.
+         *
+         * @param from The id of the room the route starts in
+         * @param to The id of the room the route ends in
+         * @return The exits to take, or null if there is no route
+         */
+        private int[] searchBothWays(int from, int to)
+        {
+            search++;
+            markForward[from] = search;
+            distanceForward[from] = 0;
+            markBackward[to] = search;
+            distanceBackward[to] = 0;
+            queueForward[0] = from;
+            queueBackward[0] = to;
+            int headForward = 0, tailForward = 1;
+            int headBackward = 0, tailBackward = 1;
+            int best = UNREACHABLE;
+            int meeting = -1;
+
+            while (headForward < tailForward && headBackward < tailBackward) {
+                boolean forward = (tailForward - headForward) <= (tailBackward - headBackward);
+                int levelEnd = forward ? tailForward : tailBackward;
+                int head = forward ? headForward : headBackward;
+                int tail = levelEnd;
+                while (head < levelEnd) {
+                    int room = forward ? queueForward[head++] : queueBackward[head++];
+                    int distance = (forward ? distanceForward[room] : distanceBackward[room]) + 1;
+                    int start = forward ? graph.getFirstExit(room) : reverseOffsets[room];
+                    int end = forward ? getEndExit(room) : reverseOffsets[room + 1];
+                    for (int i = start; i < end; i++) {
+                        int exit = forward ? i : reverseExits[i];
+                        int next = forward ? graph.getExitTarget(exit) : exitSource[exit];
+                        int[] mark = forward ? markForward : markBackward;
+                        if (mark[next] == search) {
+                            continue;
+                        }
+                        mark[next] = search;
+                        if (forward) {
+                            distanceForward[next] = distance;
+                            exitForward[next] = exit;
+                            queueForward[tail++] = next;
+                        } else {
+                            distanceBackward[next] = distance;
+                            exitBackward[next] = exit;
+                            queueBackward[tail++] = next;
+                        }
+                        int[] otherMark = forward ? markBackward : markForward;
+                        if (otherMark[next] == search) {
+                            int total = distanceForward[next] + distanceBackward[next];
+                            if (total < best) {
+                                best = total;
+                                meeting = next;
+                            }
+                        }
+                    }
+                }
+                if (forward) {
+                    headForward = head;
+                    tailForward = tail;
+                } else {
+                    headBackward = head;
+                    tailBackward = tail;
+                }
+                if (meeting >= 0) {
+                    return joinRoute(from, to, meeting);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Search with A*, guided by the landmark index.
+         *
+         * @param from The id of the room the route starts in
+         * @param to The id of the room the route ends in
+         * @return The exits to take, or null if there is no route
+         */
+        private int[] searchAStar(int from, int to)
+        {
+            search++;
+            markForward[from] = search;
+            distanceForward[from] = 0;
+            heapSize = 0;
+            push(from, 0, estimate(from, to));
+            while (heapSize > 0) {
+                int pushedDistance = -(int) heapKeys[0];
+                int room = pop();
+                int distance = distanceForward[room];
+                if (pushedDistance > distance) {
+                    continue; // a shorter way to this room was found after it was pushed
+                }
+                if (room == to) {
+                    markBackward[to] = search;
+                    distanceBackward[to] = 0;
+                    return joinRoute(from, to, to);
+                }
+                for (int exit = graph.getFirstExit(room); exit < getEndExit(room); exit++) {
+                    int next = graph.getExitTarget(exit);
+                    if (markForward[next] != search || distance + 1 < distanceForward[next]) {
+                        markForward[next] = search;
+                        distanceForward[next] = distance + 1;
+                        exitForward[next] = exit;
+                        push(next, distance + 1, estimate(next, to));
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Put together the route found by a search, from the start to the
+         * meeting room along the forward search, and from there to the end
+         * along the backward search.
+         *
+         * @param from The id of the room the route starts in
+         * @param to The id of the room the route ends in
+         * @param meeting The id of a room reached by both searches
+         * @return The exits to take
+         */
+        private int[] joinRoute(int from, int to, int meeting)
+        {
+            int[] route = new int[distanceForward[meeting] + distanceBackward[meeting]];
+            int step = distanceForward[meeting];
+            for (int room = meeting; room != from; room = exitSource[exitForward[room]]) {
+                route[--step] = exitForward[room];
+            }
+            step = distanceForward[meeting];
+            for (int room = meeting; room != to; room = graph.getExitTarget(exitBackward[room])) {
+                route[step++] = exitBackward[room];
+            }
+            return route;
+        }
+
+        /**
+         * Add a room to the heap of open rooms.
+         *
+         * @param room The id of the room
+         * @param distance Its distance from the start so far
+         * @param estimate Its estimated distance to go
+         */
+        private void push(int room, int distance, int estimate)
+        {
+            long key = ((long) (distance + estimate) << 32) - distance;
+            if (heapSize == heapRooms.length) {
+                heapRooms = Arrays.copyOf(heapRooms, heapSize * 2);
+                heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+            }
+            int i = heapSize++;
+            while (i > 0 && heapKeys[(i - 1) / 2] > key) {
+                heapRooms[i] = heapRooms[(i - 1) / 2];
+                heapKeys[i] = heapKeys[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            heapRooms[i] = room;
+            heapKeys[i] = key;
+        }
+
+        /**
+         * Take the room with the smallest key from the heap of open rooms.
+         *
+         * @return The id of the room
+         */
+        private int pop()
+        {
+            int top = heapRooms[0];
+            heapSize--;
+            int room = heapRooms[heapSize];
+            long key = heapKeys[heapSize];
+            int i = 0;
+            while (2 * i + 1 < heapSize) {
+                int child = 2 * i + 1;
+                if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+                    child++;
+                }
+                if (heapKeys[child] >= key) {
+                    break;
+                }
+                heapRooms[i] = heapRooms[child];
+                heapKeys[i] = heapKeys[child];
+                i = child;
+            }
+            heapRooms[i] = room;
+            heapKeys[i] = key;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * The test class RouteFinderTest. It checks that the routes found in a
+ * generated world are as short as they can be, lead where they should, and
+ * never go through the exit of a transporter room, which would send the
+ * player somewhere random, with or without landmarks, and with many threads
+ * finding routes at once.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RouteFinderTest
+{
+    // the number of rooms in the world, and of routes looked for
+    private static final int SIZE = 3000;
+    private static final int ROUTES = 300;
+
+    private Path file;          // the world file
+    private StoredWorld world;
+    private ExitGraph graph;
+    private BitSet transporters;
+
+    /**
+     * Generate a world with many transporter rooms.
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        file = Files.createTempFile("routes", ".wow");
+        WorldGenerator generator = new WorldGenerator(SIZE, 5);
+        generator.setExitDegree(3);
+        generator.setTransporterRatio(0.2);
+        world = generator.generate(file);
+        graph = world.getExitGraph();
+        transporters = world.getTransporters();
+        assertTrue(transporters.cardinality() > SIZE / 10);
+    }
+
+    /**
+     * Delete the world file.
+     */
+    @After
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Find the number of steps from one room to every room without going
+     * through a transporter room, the slow and simple way.
+     *
+     * @param from The id of the room to start from
+     * @return The distance of each room, or -1 if it cannot be reached
+     */
+    private int[] distances(int from)
+    {
+        int[] distance = new int[SIZE];
+        Arrays.fill(distance, -1);
+        distance[from] = 0;
+        int[] queue = new int[SIZE];
+        int head = 0, tail = 0;
+        queue[tail++] = from;
+        while (head < tail) {
+            int room = queue[head++];
+            if (transporters.get(room)) {
+                continue;
+            }
+            for (int exit = graph.getFirstExit(room); exit < graph.getEndExit(room); exit++) {
+                int next = graph.getExitTarget(exit);
+                if (distance[next] < 0) {
+                    distance[next] = distance[room] + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Follow a route, checking that each step is an exit of the room it is
+     * taken from.
+     *
+     * @param from The id of the room the route starts in
+     * @param route The exits to take
+     * @return The id of the room the route ends in, or -1 if it went
+     *         through a transporter room
+     */
+    private int follow(int from, int[] route)
+    {
+        int room = from;
+        for (int exit : route) {
+            if (transporters.get(room)) {
+                return -1;
+            }
+            assertTrue(exit >= graph.getFirstExit(room) && exit < graph.getEndExit(room));
+            room = graph.getExitTarget(exit);
+        }
+        return room;
+    }
+
+    /**
+     * Check the routes found between random rooms against the distances
+     * found the simple way.
+     *
+     * @param finder The route finder
+     */
+    private void checkRoutes(RouteFinder finder)
+    {
+        Random random = new Random(17);
+        int found = 0;
+        for (int i = 0; i < ROUTES; i++) {
+            int from = random.nextInt(SIZE);
+            int to = random.nextInt(SIZE);
+            int distance = distances(from)[to];
+            int[] route = finder.findRoute(from, to);
+            if (distance < 0) {
+                assertNull(route);
+            } else {
+                assertEquals(distance, route.length);
+                assertEquals(to, follow(from, route));
+                found++;
+            }
+        }
+        assertTrue(found > ROUTES / 2);
+    }
+
+    /**
+     * A route finder that is not told about the transporter rooms goes
+     * through them, which is what the game's route finder must not do.
+     */
+    @Test
+    public void testTransportersInTheWay()
+    {
+        RouteFinder unaware = new RouteFinder(graph);
+        Random random = new Random(17);
+        boolean through = false;
+        for (int i = 0; i < ROUTES && !through; i++) {
+            int from = random.nextInt(SIZE);
+            int[] route = unaware.findRoute(from, random.nextInt(SIZE));
+            through = route != null && follow(from, route) < 0;
+        }
+        assertTrue(through);
+    }
+
+    /**
+     * The game's routes are shortest and keep clear of transporter exits.
+     */
+    @Test
+    public void testRoutes()
+    {
+        checkRoutes(new Game(world, world.getStartRoom()).getRouteFinder());
+    }
+
+    /**
+     * Routes found with the landmark index are as good.
+     */
+    @Test
+    public void testLandmarks()
+    {
+        RouteFinder finder = new RouteFinder(graph, transporters);
+        finder.buildLandmarks(4);
+        checkRoutes(finder);
+    }
+
+    /**
+     * Threads finding routes with one route finder at once each get the
+     * shortest route.
+     */
+    @Test
+    public void testManyThreads() throws InterruptedException
+    {
+        RouteFinder finder = new RouteFinder(graph, transporters);
+        int[] from = new int[ROUTES];
+        int[] to = new int[ROUTES];
+        int[] distance = new int[ROUTES];
+        Random random = new Random(23);
+        for (int i = 0; i < ROUTES; i++) {
+            from[i] = random.nextInt(SIZE);
+            to[i] = random.nextInt(SIZE);
+            distance[i] = distances(from[i])[to[i]];
+        }
+        AtomicInteger wrong = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int round = 0; round < 5; round++) {
+                    for (int i = 0; i < ROUTES; i++) {
+                        int[] route = finder.findRoute(from[i], to[i]);
+                        int length = (route == null) ? -1 : route.length;
+                        if (length != distance[i]) {
+                            wrong.incrementAndGet();
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, wrong.get());
+    }
+
+    /**
+     * There is no way out of a transporter room but a random one, though
+     * a route may end in one.
+     */
+    @Test
+    public void testFromTransporter()
+    {
+        RouteFinder finder = new RouteFinder(graph, transporters);
+        int transporter = transporters.nextSetBit(0);
+        assertNull(finder.findRoute(transporter, 0));
+        int distance = distances(0)[transporter];
+        if (distance >= 0) {
+            assertEquals(distance, finder.findRoute(0, transporter).length);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * This class holds the state of a single player: where they are, where they
+ * have been and what they are carrying. Where a charged beamer takes them is
+ * held by the beamer itself. Many sessions can wander the same world at once,
+ * since the world itself is owned by the Game and only the player's own state
+ * lives here.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+public class Session
+{
+    // the number of this session in its game
+    private int id;
+    private Room currentRoom;
+    private Room previousRoom;
+    // the ids of the rooms left, for stackBack
+    private RoomHistory history;
+    // the items the user is carrying
+    private Inventory inventory;
+    // track the user's number of pickups
+    private int numPickup;
+    // where this player's output goes
+    private OutputSink out;
+    // the position in the journal after this player's last record
+    private long journalPosition;
+    // the number of commands this player has run
+    private int commandCount;
+    // this player's own random numbers, and the world seed they started from
+    private SplittableRandom random;
+    private long randomSeed;
+
+    /**
+     * Create a session for a player starting in the given room.
+     *
+     * @param id The number of the session in its game
+     * @param startRoom The room the player starts in
+     * @param out Where the output for this player is written
+     */
+    public Session(int id, Room startRoom, OutputSink out)
+    {
+        this.id = id;
+        currentRoom = startRoom;
+        previousRoom = null;
+        history = new RoomHistory();
+        inventory = new Inventory();
+        numPickup = 0;
+        this.out = out;
+    }
+
+    /**
+     * Returns the number of this session in its game.
+     *
+     * @return The id of the session
+     */
+    public int getId()
+    {
+        return id;
+    }
+
+    /**
+     * Returns the room the player is currently in.
+     *
+     * @return The current room
+     */
+    public Room getCurrentRoom()
+    {
+        return currentRoom;
+    }
+
+    /**
+     * Puts the player in a room without touching the room history.
+     *
+     * @param room The room the player is now in
+     */
+    public void setCurrentRoom(Room room)
+    {
+        currentRoom = room;
+    }
+
+    /**
+     * Returns the room the player was in before, which "back" returns to.
+     *
+     * @return The previous room, or null if there is none
+     */
+    public Room getPreviousRoom()
+    {
+        return previousRoom;
+    }
+
+    /**
+     * Returns the ids of the rooms on the previous room stack, the oldest
+     * first.
+     *
+     * @return A copy of the room history
+     */
+    public int[] getHistory()
+    {
+        return history.toArray();
+    }
+
+    /**
+     * Returns the room history, to be shared with a snapshot. The history
+     * returned is never changed; this session copies its own before it
+     * next changes it.
+     *
+     * @return The shared room history
+     */
+    RoomHistory shareHistory()
+    {
+        return history.share();
+    }
+
+    /**
+     * Change how many rooms the previous room stack holds, and whether
+     * going straight back to the room just left cancels out. The most
+     * recent rooms of the history are kept.
+     *
+     * @param capacity The most rooms the history holds
+     * @param collapse Whether going from A to B and straight back to A
+     *        leaves the history as it was
+     */
+    public void setHistoryLimit(int capacity, boolean collapse)
+    {
+        int[] ids = history.toArray();
+        history = new RoomHistory(capacity, collapse);
+        for (int id : ids) {
+            history.push(id);
+        }
+    }
+
+    /**
+     * Puts the player back where a saved game left them.
+     *
+     * @param current The room the player is in
+     * @param previous The room "back" returns to, or null
+     * @param ids The ids of the rooms on the previous room stack, the oldest first
+     */
+    void restoreRooms(Room current, Room previous, int[] ids)
+    {
+        currentRoom = current;
+        previousRoom = previous;
+        history.clear();
+        for (int id : ids) {
+            history.push(id);
+        }
+    }
+
+    /**
+     * Moves the player into a new room, remembering the room they left in
+     * both the previous room and the previous room stack.
+     *
+     * @param nextRoom The room the player enters
+     */
+    public void enterRoom(Room nextRoom)
+    {
+        previousRoom = currentRoom; // store the previous room
+        history.moved(currentRoom.getId(), nextRoom.getId()); // and add to previous room stack
+        currentRoom = nextRoom;
+    }
+
+    /**
+     * Swaps the current and previous rooms, and puts the room we left on
+     * the previous room stack.
+     *
+     * @return true if the player went back, false if there is no previous room
+     */
+    public boolean back()
+    {
+        if (previousRoom == null) {
+            return false;
+        }
+        Room temp = currentRoom;
+        currentRoom = previousRoom;
+        previousRoom = temp;
+        history.moved(temp.getId(), currentRoom.getId());
+        return true;
+    }
+
+    /**
+     * Steps back one room in the history of rooms. The current room
+     * becomes the previous room.
+     *
+     * @return true if the player stepped back, false if the history is empty
+     */
+    public boolean stackBack()
+    {
+        if (history.isEmpty()) {
+            return false;
+        }
+        previousRoom = currentRoom;
+        currentRoom = currentRoom.getWorld().getRoom(history.pop());
+        return true;
+    }
+
+    /**
+     * Returns the items the player is carrying.
+     *
+     * @return The inventory of the player
+     */
+    public Inventory getInventory()
+    {
+        return inventory;
+    }
+
+    /**
+     * Returns how many non-cookie items the player may still pick up.
+     *
+     * @return The number of pickups left
+     */
+    public int getNumPickup()
+    {
+        return numPickup;
+    }
+
+    /**
+     * Changes the number of pickups left by the given amount.
+     *
+     * @param amount The number of pickups to add, negative to use some up
+     */
+    public void addPickups(int amount)
+    {
+        numPickup += amount;
+    }
+
+    /**
+     * Sends the output for this player somewhere else, such as to a new
+     * connection for a session restored from a saved game.
+     *
+     * @param out Where the output for this player is written
+     */
+    public void setOutput(OutputSink out)
+    {
+        this.out = out;
+    }
+
+    /**
+     * Returns this player's own random numbers, which no other player
+     * draws from. They start from the seed of the world and the id of the
+     * session, and start again whenever the world is given a new seed, so
+     * the same commands always lead to the same random rooms.
+     *
+     * @param worldSeed The seed of the world
+     * @return The random numbers of this player
+     */
+    public RandomGenerator getRandom(long worldSeed)
+    {
+        if (random == null || randomSeed != worldSeed) {
+            random = new SplittableRandom(worldSeed ^ (id * 0x9E3779B97F4A7C15L));
+            randomSeed = worldSeed;
+        }
+        return random;
+    }
+
+    /**
+     * Returns the position in the journal after this player's last record,
+     * which must be on the disk before the player sees any more output.
+     *
+     * @return The position in the journal
+     */
+    long getJournalPosition()
+    {
+        return journalPosition;
+    }
+
+    /**
+     * Sets the position in the journal after this player's last record.
+     *
+     * @param position The position in the journal
+     */
+    void setJournalPosition(long position)
+    {
+        journalPosition = position;
+    }
+
+    /**
+     * Count one more command run by this player.
+     *
+     * @return The number of commands run before this one
+     */
+    int countCommand()
+    {
+        return commandCount++;
+    }
+
+    /**
+     * Print a line of output to this player.
+     *
+     * @param line The line to print
+     */
+    public void println(String line)
+    {
+        out.println(line);
+    }
+
+    /**
+     * Print an empty line to this player.
+     */
+    public void println()
+    {
+        out.println();
+    }
+
+    /**
+     * Send the output held back so far to this player.
+     */
+    public void flush()
+    {
+        out.flush();
+    }
+}
@@ -0,0 +1,251 @@
+/**
+ * This class runs the commands of a Game on a fixed number of shards, each
+ * a single thread that owns a region of the world given by a
+ * WorldPartition. A command is handed to the shard owning the room the
+ * player is in, and runs on that shard's thread after the commands handed
+ * to it before. When a command takes the player into a room of another
+ * shard, by an exit, a transporter room or a beamer, the player's next
+ * command is handed to that shard instead: a session moves from shard to
+ * shard with the messages carrying its commands, and is only ever used by
+ * one thread at a time.
+ *
+ * Every command that changes a room runs on the thread of the shard owning
+ * it, so two shards never change the same room, and shards run side by side
+ * without waiting for each other. Each shard holds a command lock of its
+ * own rather than the lock of the game, which only a snapshot also takes,
+ * and writes its commands to the journal without holding the journal while
+ * they run: the commands of different shards touch different rooms, so the
+ * order the journal puts them in replays the same as the order they ran in.
+ * Rooms keep their own locks, since a player entering a room of another
+ * shard is shown its items; a shard's own rooms are only ever locked by its
+ * thread and such short looks.
+ *
+ * Once a game is split into shards, every command of it must be handed to
+ * the shards. The route finder and the checkpoints are shared by all
+ * shards, as they are by all players of a game.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.BiConsumer;
+
+public class ShardedGame implements AutoCloseable
+{
+    private Game game;
+    private WorldPartition partition;
+    // the single thread of each shard
+    private ExecutorService[] shards;
+    // the command lock each shard holds while it runs a command
+    private StampedLock[] locks;
+    // the number of commands run by each shard
+    private LongAdder[] commandCounts;
+    // the number of commands that took a player into another shard
+    private LongAdder migrations;
+
+    /**
+     * Split the world of a game into shards, each with a thread of its own.
+     * Rooms added to the world after this are spread over the shards by id.
+     *
+     * @param game The game
+     * @param shards The number of shards
+     * @throws IllegalArgumentException if the number of shards is less than one
+     */
+    public ShardedGame(Game game, int shards)
+    {
+        this.game = game;
+        partition = WorldPartition.of(game.getWorld().getExitGraph(), shards);
+        this.shards = new ExecutorService[shards];
+        locks = new StampedLock[shards];
+        commandCounts = new LongAdder[shards];
+        for (int i = 0; i < shards; i++) {
+            String name = "shard-" + i;
+            this.shards[i] = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+            locks[i] = game.newCommandLock();
+            commandCounts[i] = new LongAdder();
+        }
+        migrations = new LongAdder();
+    }
+
+    /**
+     * Hand a command to the shard owning the room the player is in, and be
+     * told when it has run. The player must not have another command
+     * waiting to run. What is told runs on the thread of the shard, so it
+     * may use the session, and may hand the player's next command on.
+     *
+     * @param session The session of the player
+     * @param command The command to be processed
+     * @param then Told the result of the command, true if it ends the game,
+     *        or what the command threw
+     */
+    public void submit(Session session, Command command, BiConsumer<Boolean, Throwable> then)
+    {
+        int shard = getShard(session);
+        shards[shard].execute(() -> {
+            boolean finished;
+            try {
+                finished = run(shard, session, command);
+            } catch (RuntimeException | Error e) {
+                then.accept(null, e);
+                return;
+            }
+            then.accept(finished, null);
+        });
+    }
+
+    /**
+     * Hand a command to the shard owning the room the player is in. The
+     * player must not have another command waiting to run.
+     *
+     * @param session The session of the player
+     * @param command The command to be processed
+     * @return The result of the command, true if it ends the game
+     */
+    public CompletableFuture<Boolean> submit(Session session, Command command)
+    {
+        CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+        submit(session, command, (finished, failure) -> {
+            if (failure == null) {
+                result.complete(finished);
+            } else {
+                result.completeExceptionally(failure);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Given a command, processes the command for a session on the shard
+     * owning the room the player is in, and waits for it to finish.
+     *
+     * @param session The session of the player
+     * @param command The command to be processed
+     * @return true If the command ends the game, false otherwise
+     */
+    public boolean processCommand(Session session, Command command)
+    {
+        try {
+            return submit(session, command).join();
+        } catch (CompletionException e) {
+            // throw what the command threw, as if it had run on this thread
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Play the game for one session, reading its commands from the given
+     * parser and running each on the shard the player is in.
+     *
+     * @param session The session of the player
+     * @param parser The source of the player's commands
+     */
+    public void play(Session session, Parser parser)
+    {
+        game.play(session, parser, this::processCommand);
+    }
+
+    /**
+     * Run a command on the thread of a shard.
+     *
+     * @param shard The shard running the command
+     * @param session The session of the player
+     * @param command The command to be processed
+     * @return true If the command ends the game, false otherwise
+     */
+    private boolean run(int shard, Session session, Command command)
+    {
+        boolean finished = game.processCommand(session, command, locks[shard]);
+        commandCounts[shard].increment();
+        if (getShard(session) != shard) {
+            migrations.increment();
+        }
+        return finished;
+    }
+
+    /**
+     * Returns the shard owning the room a player is in.
+     *
+     * @param session The session of the player
+     * @return The shard
+     */
+    private int getShard(Session session)
+    {
+        return partition.getShard(session.getCurrentRoom().getId());
+    }
+
+    /**
+     * Returns the game whose commands are run.
+     *
+     * @return The game
+     */
+    public Game getGame()
+    {
+        return game;
+    }
+
+    /**
+     * Returns how the rooms are split into shards.
+     *
+     * @return The partition of the world
+     */
+    public WorldPartition getPartition()
+    {
+        return partition;
+    }
+
+    /**
+     * Returns the number of commands a shard has run.
+     *
+     * @param shard The shard
+     * @return The number of commands
+     */
+    public long getCommands(int shard)
+    {
+        return commandCounts[shard].sum();
+    }
+
+    /**
+     * Returns the number of commands that took a player into another shard.
+     *
+     * @return The number of moves between shards
+     */
+    public long getMigrations()
+    {
+        return migrations.sum();
+    }
+
+    /**
+     * Stop the threads of the shards once the commands handed to them have
+     * run.
+     */
+    public void close()
+    {
+        for (ExecutorService shard : shards) {
+            shard.shutdown();
+        }
+        try {
+            for (ExecutorService shard : shards) {
+                shard.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
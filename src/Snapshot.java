@@ -0,0 +1,477 @@
+/**
+ * This class holds the state of a game at one moment: the items in the rooms
+ * that changed since the last snapshot, and the state of every session.
+ * Snapshots are taken by the game while no command is running. Rooms,
+ * inventories and room histories share their contents with a snapshot
+ * rather than copying them, and copy them themselves before their next
+ * change, so taking a snapshot costs a few references per changed room and
+ * per session however many items they hold. Items never change once made,
+ * so the items shared are as they were when the snapshot was taken. Turning
+ * a snapshot into bytes, which goes through every item, is done afterwards,
+ * while the game goes on.
+ *
+ * A snapshot does not hold the rooms and exits themselves. It is restored
+ * into a world built the same way as the one it was taken from, such as a
+ * new Game or the same compiled world file. Items are written a stack at a
+ * time, as their kind, name, description and weight and the number in the
+ * stack, so a room of ten thousand cookies takes no more room than a room
+ * of one. Each string is written once per snapshot, and a charged beamer
+ * is also written with the id of the room it was charged in.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class Snapshot
+{
+    // the kinds of item written
+    private static final int ITEM = 0;
+    private static final int BEAMER = 1;
+    private static final int CHARGED_BEAMER = 2;
+    // the room id written for no room
+    private static final int NO_ROOM = -1;
+
+    // the number of this snapshot, counting up over the life of a game
+    private long sequence;
+    // the ids of the rooms in this snapshot, and the items in each
+    private int[] roomIds;
+    private ItemIndex[] roomItems;
+    private SessionState[] sessions;
+
+    /**
+     * The state of one session.
+     */
+    private static class SessionState
+    {
+        int id;
+        int currentRoom;
+        int previousRoom;
+        RoomHistory history;
+        ItemIndex items;        // the items carried
+        int pickups;
+    }
+
+    /**
+     * Create an empty snapshot, to be filled in by capture or read.
+     */
+    private Snapshot()
+    {
+    }
+
+    /**
+     * Take a snapshot of the rooms that changed since the last snapshot and
+     * of every session. No command may run while this is done.
+     *
+     * @param world The world of the game
+     * @param sessions Every session playing the game
+     * @param sequence The number of the snapshot
+     * @return The snapshot
+     */
+    static Snapshot capture(World world, Iterable<Session> sessions, long sequence)
+    {
+        Snapshot snapshot = new Snapshot();
+        snapshot.sequence = sequence;
+        Map<Integer, ItemIndex> rooms = world.takeChangedItems();
+        snapshot.roomIds = new int[rooms.size()];
+        snapshot.roomItems = new ItemIndex[rooms.size()];
+        int i = 0;
+        for (Map.Entry<Integer, ItemIndex> entry : rooms.entrySet()) {
+            snapshot.roomIds[i] = entry.getKey();
+            snapshot.roomItems[i] = entry.getValue();
+            i++;
+        }
+
+        List<SessionState> states = new ArrayList<SessionState>();
+        for (Session session : sessions) {
+            SessionState state = new SessionState();
+            state.id = session.getId();
+            state.currentRoom = idOf(session.getCurrentRoom());
+            state.previousRoom = idOf(session.getPreviousRoom());
+            state.history = session.shareHistory();
+            state.items = session.getInventory().share();
+            state.pickups = session.getNumPickup();
+            states.add(state);
+        }
+        snapshot.sessions = states.toArray(new SessionState[states.size()]);
+        return snapshot;
+    }
+
+    /**
+     * Merge snapshots taken one after the other into one, as if only the
+     * last had been taken, of every room in any of them. The items of a room
+     * are those of the last snapshot holding it, and the sessions are those
+     * of the last snapshot.
+     *
+     * @param snapshots The snapshots, oldest first
+     * @return The merged snapshot
+     * @throws IllegalArgumentException if there are no snapshots
+     */
+    static Snapshot merge(List<Snapshot> snapshots)
+    {
+        if (snapshots.isEmpty()) {
+            throw new IllegalArgumentException("No snapshots to merge");
+        }
+        LinkedHashMap<Integer, ItemIndex> rooms = new LinkedHashMap<Integer, ItemIndex>();
+        for (Snapshot snapshot : snapshots) {
+            for (int i = 0; i < snapshot.roomIds.length; i++) {
+                rooms.put(snapshot.roomIds[i], snapshot.roomItems[i]);
+            }
+        }
+        Snapshot last = snapshots.get(snapshots.size() - 1);
+        Snapshot merged = new Snapshot();
+        merged.sequence = last.sequence;
+        merged.roomIds = new int[rooms.size()];
+        merged.roomItems = new ItemIndex[rooms.size()];
+        int i = 0;
+        for (Map.Entry<Integer, ItemIndex> entry : rooms.entrySet()) {
+            merged.roomIds[i] = entry.getKey();
+            merged.roomItems[i] = entry.getValue();
+            i++;
+        }
+        merged.sessions = last.sessions;
+        return merged;
+    }
+
+    /**
+     * Returns the number of this snapshot. Every snapshot of a game has a
+     * higher number than the ones before it.
+     *
+     * @return The sequence number of the snapshot
+     */
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * Returns the number of rooms in this snapshot.
+     *
+     * @return The number of rooms that changed since the last snapshot
+     */
+    public int getRoomCount()
+    {
+        return roomIds.length;
+    }
+
+    /**
+     * Returns the number of sessions in this snapshot.
+     *
+     * @return The number of sessions
+     */
+    public int getSessionCount()
+    {
+        return sessions.length;
+    }
+
+    /**
+     * Put the items of the rooms in this snapshot back into a world.
+     *
+     * @param world A world built the same way as the one the snapshot was taken from
+     * @throws IllegalStateException if a room of the snapshot is not in the world
+     */
+    void restoreRooms(World world)
+    {
+        for (int i = 0; i < roomIds.length; i++) {
+            Room room = roomAt(world, roomIds[i]);
+            room.clearItems();
+            for (Item item : roomItems[i]) {
+                room.addItem(item);
+            }
+        }
+    }
+
+    /**
+     * Tell a world that the items of the rooms in this snapshot are safely
+     * saved.
+     *
+     * @param world The world the snapshot was taken from
+     */
+    void itemsSaved(World world)
+    {
+        for (int i = 0; i < roomIds.length; i++) {
+            world.itemsSaved(roomIds[i], roomItems[i]);
+        }
+    }
+
+    /**
+     * Create the sessions of this snapshot in a world. Their output goes
+     * nowhere until it is set.
+     *
+     * @param world A world built the same way as the one the snapshot was taken from
+     * @return The sessions
+     * @throws IllegalStateException if a room of the snapshot is not in the world
+     */
+    List<Session> restoreSessions(World world)
+    {
+        List<Session> restored = new ArrayList<Session>(sessions.length);
+        for (SessionState state : sessions) {
+            Session session = new Session(state.id, null, NullSink.INSTANCE);
+            int[] history = state.history.toArray();
+            for (int id : history) {
+                roomAt(world, id);  // check that every room is in the world
+            }
+            session.restoreRooms(roomAt(world, state.currentRoom),
+                                 roomAt(world, state.previousRoom), history);
+            for (Item item : state.items) {
+                session.getInventory().add(item);
+            }
+            session.addPickups(state.pickups);
+            restored.add(session);
+        }
+        return restored;
+    }
+
+    /**
+     * Write this snapshot.
+     *
+     * @param out Where the snapshot is written
+     * @throws IOException if the snapshot cannot be written
+     */
+    public void write(DataOutputStream out) throws IOException
+    {
+        out.writeLong(sequence);
+
+        // every string is written once, and items refer to it by number
+        HashMap<String, Integer> strings = new HashMap<String, Integer>();
+        List<String> table = new ArrayList<String>();
+        for (ItemIndex items : roomItems) {
+            for (Item item : items.stacks()) {
+                addStrings(item, strings, table);
+            }
+        }
+        for (SessionState state : sessions) {
+            for (Item item : state.items.stacks()) {
+                addStrings(item, strings, table);
+            }
+        }
+        out.writeInt(table.size());
+        for (String s : table) {
+            out.writeUTF(s);
+        }
+
+        out.writeInt(roomIds.length);
+        for (int i = 0; i < roomIds.length; i++) {
+            out.writeInt(roomIds[i]);
+            writeItems(out, roomItems[i], strings);
+        }
+
+        out.writeInt(sessions.length);
+        for (SessionState state : sessions) {
+            out.writeInt(state.id);
+            out.writeInt(state.currentRoom);
+            out.writeInt(state.previousRoom);
+            int[] history = state.history.toArray();
+            out.writeInt(history.length);
+            for (int room : history) {
+                out.writeInt(room);
+            }
+            writeItems(out, state.items, strings);
+            out.writeInt(state.pickups);
+        }
+    }
+
+    /**
+     * Read a snapshot written by write. The items in it are new items, of
+     * the kinds of item of the given world.
+     *
+     * @param in Where the snapshot is read from
+     * @param world The world the items belong to, built the same way as the
+     *        one the snapshot was taken from
+     * @return The snapshot
+     * @throws IOException if the snapshot cannot be read
+     * @throws IllegalStateException if a beamer was charged in a room the world does not have
+     */
+    public static Snapshot read(DataInputStream in, World world) throws IOException
+    {
+        long sequence = in.readLong();
+        String[] table = new String[in.readInt()];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = in.readUTF();
+        }
+
+        Snapshot snapshot = new Snapshot();
+        snapshot.sequence = sequence;
+        int roomCount = in.readInt();
+        snapshot.roomIds = new int[roomCount];
+        snapshot.roomItems = new ItemIndex[roomCount];
+        for (int i = 0; i < roomCount; i++) {
+            snapshot.roomIds[i] = in.readInt();
+            snapshot.roomItems[i] = readItems(in, table, world);
+        }
+
+        snapshot.sessions = new SessionState[in.readInt()];
+        for (int i = 0; i < snapshot.sessions.length; i++) {
+            SessionState state = new SessionState();
+            state.id = in.readInt();
+            state.currentRoom = in.readInt();
+            state.previousRoom = in.readInt();
+            int historySize = in.readInt();
+            state.history = new RoomHistory(Math.max(historySize, 1), false);
+            for (int j = 0; j < historySize; j++) {
+                state.history.push(in.readInt());
+            }
+            state.items = readItems(in, table, world);
+            state.pickups = in.readInt();
+            snapshot.sessions[i] = state;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Add the strings of an item to the string table, if they are not
+     * in it already.
+     *
+     * @param item The item, or null
+     * @param strings The number of each string in the table
+     * @param table The strings, in order
+     */
+    private static void addStrings(Item item, HashMap<String, Integer> strings, List<String> table)
+    {
+        if (item == null) {
+            return;
+        }
+        for (String s : new String[] { item.getName(), item.getShortDescription() }) {
+            if (!strings.containsKey(s)) {
+                strings.put(s, table.size());
+                table.add(s);
+            }
+        }
+    }
+
+    /**
+     * Write a collection of items, as the number of stacks and then the item
+     * of each stack followed by how many items are in it.
+     *
+     * @param out Where the items are written
+     * @param items The items
+     * @param strings The number of each string in the string table
+     * @throws IOException if the items cannot be written
+     */
+    private static void writeItems(DataOutputStream out, ItemIndex items,
+                                   HashMap<String, Integer> strings) throws IOException
+    {
+        out.writeInt(items.stacks().size());
+        for (Item item : items.stacks()) {
+            writeItem(out, item, strings);
+            out.writeInt(items.count(item));
+        }
+    }
+
+    /**
+     * Read a collection of items written by writeItems.
+     *
+     * @param in Where the items are read from
+     * @param table The string table
+     * @param world The world the items belong to
+     * @return The items
+     * @throws IOException if the items cannot be read, or a stack has a bad number of items
+     */
+    private static ItemIndex readItems(DataInputStream in, String[] table, World world) throws IOException
+    {
+        ItemIndex items = new ItemIndex();
+        int stacks = in.readInt();
+        for (int i = 0; i < stacks; i++) {
+            Item item = readItem(in, table, world);
+            int count = in.readInt();
+            try {
+                items.add(item, count);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Bad stack of " + count + " " + item.getName(), e);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Write one item.
+     *
+     * @param out Where the item is written
+     * @param item The item
+     * @param strings The number of each string in the string table
+     * @throws IOException if the item cannot be written
+     */
+    private static void writeItem(DataOutputStream out, Item item,
+                                  HashMap<String, Integer> strings) throws IOException
+    {
+        int kind = ITEM;
+        if (item instanceof Beamer) {
+            kind = ((Beamer) item).isCharged() ? CHARGED_BEAMER : BEAMER;
+        }
+        out.writeByte(kind);
+        out.writeInt(strings.get(item.getName()));
+        out.writeInt(strings.get(item.getShortDescription()));
+        out.writeDouble(item.getWeight());
+        if (kind == CHARGED_BEAMER) {
+            out.writeInt(((Beamer) item).getDestinationId());
+        }
+    }
+
+    /**
+     * Read one item, creating a new item.
+     *
+     * @param in Where the item is read from
+     * @param table The string table
+     * @param world The world the item belongs to
+     * @return The item
+     * @throws IOException if the item cannot be read
+     */
+    private static Item readItem(DataInputStream in, String[] table, World world) throws IOException
+    {
+        int kind = in.readByte();
+        String name = table[in.readInt()];
+        String description = table[in.readInt()];
+        double weight = in.readDouble();
+        ItemType type = world.getItemType(description, weight, name);
+        if (kind == ITEM) {
+            return new Item(type);
+        }
+        if (kind == BEAMER) {
+            return new Beamer(type);
+        }
+        int destination = in.readInt();
+        if (destination < 0 || destination >= world.size()) {
+            throw new IllegalStateException("The saved game has a room the world does not: " + destination);
+        }
+        return new Beamer(type, world, destination);
+    }
+
+    /**
+     * Returns the id of a room.
+     *
+     * @param room The room, or null
+     * @return The id of the room, or NO_ROOM
+     */
+    private static int idOf(Room room)
+    {
+        return (room == null) ? NO_ROOM : room.getId();
+    }
+
+    /**
+     * Returns the room of a world with the given id.
+     *
+     * @param world The world
+     * @param id The id of the room, or NO_ROOM
+     * @return The room, or null for NO_ROOM
+     * @throws IllegalStateException if there is no room with that id
+     */
+    private static Room roomAt(World world, int id)
+    {
+        if (id == NO_ROOM) {
+            return null;
+        }
+        Room room = world.getRoom(id);
+        if (room == null) {
+            throw new IllegalStateException("The saved game has a room the world does not: " + id);
+        }
+        return room;
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * This subclass is a room of a StoredWorld. Its exits are not kept in the
+ * room but looked up in the exit graph of its world when a player leaves it. Exits added
+ * with setExit are kept in the room as usual, and are tried first; until then
+ * the room has no table of exits of its own.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+public class StoredRoom extends Room
+{
+    private StoredWorld world;  // the world whose file holds the exits
+
+    /**
+     * Create a room of a stored world.
+     *
+     * @param world The world the room belongs to
+     * @param id The room's id in its world
+     * @param name The room's name
+     * @param description The room's description
+     */
+    public StoredRoom(StoredWorld world, int id, String name, String description)
+    {
+        super(world, id, name, description);
+        this.world = world;
+    }
+
+    /**
+     * Return the room that is reached if we go from this room in direction
+     * "direction". If there is no room in that direction, return null.
+     *
+     * @param direction The exit's direction
+     * @return The room in the given direction
+     */
+    public Room getExit(String direction)
+    {
+        Room exit = super.getExit(direction);
+        if (exit == null) {
+            exit = world.getExit(getId(), direction);
+        }
+        return exit;
+    }
+
+    /**
+     * Return a string describing the room's exits, for example
+     * "Exits: north west".
+     *
+     * @return Details of the room's exits
+     */
+    protected String getExitString()
+    {
+        StringBuilder s = new StringBuilder(super.getExitString());
+        world.getExitGraph().appendExits(getId(), s);
+        return s.toString();
+    }
+}
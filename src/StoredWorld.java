@@ -0,0 +1,543 @@
+/**
+ * This class is a world whose rooms are kept in a compiled world file rather
+ * than built by code. A room is only read from the file, together with its
+ * items, the first time it is asked for, so a world of millions of rooms can
+ * be opened straight away and only the rooms players actually visit take up
+ * any memory. Exits are not copied into the rooms at all: they stay in the
+ * file as an ExitGraph, which is used whenever a player leaves a room.
+ *
+ * A stored world can also be given a budget: the most rooms it keeps in
+ * memory at once. Once the budget is used up, reading another room pushes
+ * out one that has not been used for a while, picked by the CLOCK method:
+ * the rooms kept sit on a ring, each marked whenever it is asked for, and a
+ * hand goes round the ring unmarking marked rooms until it finds one that
+ * is not marked. Asking for a room kept in memory takes no lock, and marks
+ * it with an opaque write, which the hand is sure to see sooner or later;
+ * reading a room, and pushing another out, is done under the lock of the
+ * world.
+ *
+ * A room pushed out is only held weakly from then on, so if a player is
+ * still in it, it is the same room that is found again, and there are never
+ * two rooms with the same id. Rooms whose items have changed leave their
+ * items with the world when they are thrown away, and get them back when
+ * they are read again, so nothing a player did is lost. Until a checkpoint
+ * has saved the changes, the items are kept as they are. Once they are
+ * saved, they are packed into a few numbers per stack of items, and the
+ * items themselves are let go.
+ *
+ * Rooms cannot be added to a stored world.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class StoredWorld extends World
+{
+    // what a packed item is
+    private static final int PACKED_ITEM = 0;
+    private static final int PACKED_BEAMER = 1;
+    private static final int PACKED_CHARGED_BEAMER = 2;
+
+    private WorldFile file;     // where the rooms are kept
+    // the rooms kept in memory, indexed by their id
+    private AtomicReferenceArray<Room> rooms;
+    // the exits of every room, kept in the file
+    private ExitGraph exits;
+    // the ids of the rooms whose items changed since they were last collected
+    private Set<Integer> changedRooms;
+    // the items of the rooms that changed since they were last saved, by id
+    private ConcurrentHashMap<Integer, ItemIndex> unsavedItems;
+    // the items of the rooms that changed before they were last saved, by id, packed
+    private ConcurrentHashMap<Integer, int[]> savedItems;
+    // the kinds of item packed, numbered in the order they were first packed
+    private ArrayList<ItemType> packedTypes;
+    private HashMap<ItemType, Integer> packedTypeNumbers;
+
+    // the ids of the rooms kept in memory, in the order the hand passes
+    // them, or null if there is no budget
+    private int[] clock;
+    private int hand;
+    private int resident;       // the number of rooms kept in memory
+    // whether each room has been asked for since the hand last passed it, by id
+    private AtomicIntegerArray used;
+    // the rooms pushed out of memory, which may still be in use, by id
+    private HashMap<Integer, RoomReference> evicted;
+    // told when a room pushed out of memory is no longer in use
+    private ReferenceQueue<Room> collected;
+    // the number of rooms read from the file, and pushed out of memory
+    private LongAdder reads;
+    private long evictions;
+
+    /**
+     * Create a world from a compiled world file, keeping every room in
+     * memory once it has been read.
+     *
+     * @param file The compiled world file
+     */
+    public StoredWorld(WorldFile file)
+    {
+        this(file, 0);
+    }
+
+    /**
+     * Create a world from a compiled world file, keeping at most the given
+     * number of rooms in memory.
+     *
+     * @param file The compiled world file
+     * @param budget The most rooms kept in memory, or 0 for no limit
+     * @throws IllegalArgumentException if the budget is negative
+     */
+    public StoredWorld(WorldFile file, int budget)
+    {
+        if (budget < 0) {
+            throw new IllegalArgumentException("Bad room budget: " + budget);
+        }
+        this.file = file;
+        rooms = new AtomicReferenceArray<Room>(file.getRoomCount());
+        exits = file.getExitGraph();
+        changedRooms = ConcurrentHashMap.newKeySet();
+        unsavedItems = new ConcurrentHashMap<Integer, ItemIndex>();
+        savedItems = new ConcurrentHashMap<Integer, int[]>();
+        packedTypes = new ArrayList<ItemType>();
+        packedTypeNumbers = new HashMap<ItemType, Integer>();
+        reads = new LongAdder();
+        if (budget > 0 && budget < file.getRoomCount()) {
+            clock = new int[budget];
+            used = new AtomicIntegerArray(file.getRoomCount());
+            evicted = new HashMap<Integer, RoomReference>();
+            collected = new ReferenceQueue<Room>();
+        }
+    }
+
+    /**
+     * Open a compiled world file as a world.
+     *
+     * @param path The compiled world file
+     * @return The world in the file
+     * @throws IOException if the file cannot be read or is not a compiled world
+     */
+    public static StoredWorld open(Path path) throws IOException
+    {
+        return new StoredWorld(WorldFile.open(path));
+    }
+
+    /**
+     * Open a compiled world file as a world that keeps at most the given
+     * number of rooms in memory.
+     *
+     * @param path The compiled world file
+     * @param budget The most rooms kept in memory, or 0 for no limit
+     * @return The world in the file
+     * @throws IOException if the file cannot be read or is not a compiled world
+     */
+    public static StoredWorld open(Path path, int budget) throws IOException
+    {
+        return new StoredWorld(WorldFile.open(path), budget);
+    }
+
+    /**
+     * Rooms cannot be added to a stored world.
+     *
+     * @param room The room that cannot be added
+     * @return Never returns
+     * @throws UnsupportedOperationException always
+     */
+    public int addRoom(Room room)
+    {
+        throw new UnsupportedOperationException("Rooms cannot be added to a stored world");
+    }
+
+    /**
+     * Returns the room with the given id, reading it from the file if it
+     * is not in memory.
+     *
+     * @param id The id of the room
+     * @return The room, or null if there is no room with that id
+     */
+    public Room getRoom(int id)
+    {
+        if (id < 0 || id >= rooms.length()) {
+            return null;
+        }
+        Room room = rooms.get(id);
+        if (room != null) {
+            if (clock != null && used.getOpaque(id) == 0) {
+                used.setOpaque(id, 1);  // a mark the hand sees late only costs the room its second chance
+            }
+            return room;
+        }
+        if (clock != null) {
+            return admit(id);
+        }
+        room = readRoom(id);
+        if (!rooms.compareAndSet(id, null, room)) {
+            room = rooms.get(id); // someone else read it first
+        }
+        return room;
+    }
+
+    /**
+     * Bring a room back into memory, finding it again if it is still in
+     * use or reading it from the file otherwise, and push out another room
+     * if the budget is used up.
+     *
+     * @param id The id of the room
+     * @return The room
+     */
+    private synchronized Room admit(int id)
+    {
+        Room room = rooms.get(id);
+        if (room != null) {
+            return room; // someone else brought it back first
+        }
+        RoomReference reference;
+        while ((reference = (RoomReference) collected.poll()) != null) {
+            evicted.remove(reference.id, reference);
+        }
+        reference = evicted.remove(id);
+        room = (reference == null) ? null : reference.get();
+        if (room == null) {
+            room = readRoom(id);
+        }
+
+        if (resident < clock.length) {
+            clock[resident++] = id;
+        } else {
+            // unmark rooms until one is found that has not been used since
+            // the hand last passed it, and put the new room in its place
+            while (used.getOpaque(clock[hand]) != 0) {
+                used.setOpaque(clock[hand], 0);
+                hand = (hand + 1) % clock.length;
+            }
+            int out = clock[hand];
+            evicted.put(out, new RoomReference(rooms.get(out), out, collected));
+            rooms.set(out, null);
+            evictions++;
+            clock[hand] = id;
+            hand = (hand + 1) % clock.length;
+        }
+        used.setOpaque(id, 0);
+        rooms.set(id, room);
+        return room;
+    }
+
+    /**
+     * Returns the room with the given name.
+     *
+     * @param name The name of the room
+     * @return The room, or null if there is no room with that name
+     */
+    public Room getRoom(String name)
+    {
+        int id = file.findRoom(name);
+        return (id < 0) ? null : getRoom(id);
+    }
+
+    /**
+     * Returns the number of rooms in this world.
+     *
+     * @return The number of rooms
+     */
+    public int size()
+    {
+        return rooms.length();
+    }
+
+    /**
+     * Returns the room where the game starts.
+     *
+     * @return The start room
+     */
+    public Room getStartRoom()
+    {
+        return getRoom(file.getStartRoom());
+    }
+
+    /**
+     * Returns the exits of every room of this world.
+     *
+     * @return The exit graph of this world
+     */
+    public ExitGraph getExitGraph()
+    {
+        return exits;
+    }
+
+    /**
+     * Returns which rooms of this world are transporter rooms, found from
+     * the file without reading the rooms themselves.
+     *
+     * @return The set of the ids of the transporter rooms
+     */
+    public BitSet getTransporters()
+    {
+        BitSet transporters = new BitSet(size());
+        for (int id = 0; id < size(); id++) {
+            if (file.getRoomKind(id) == WorldFile.TRANSPORTER) {
+                transporters.set(id);
+            }
+        }
+        return transporters;
+    }
+
+    /**
+     * Returns the room reached by leaving a room in the given direction.
+     *
+     * @param id The id of the room being left
+     * @param direction The direction of the exit
+     * @return The room in that direction, or null if there is no exit that way
+     */
+    Room getExit(int id, String direction)
+    {
+        int index = exits.getDirection(direction);
+        if (index < 0) {
+            return null;
+        }
+        int target = exits.getExit(id, index);
+        return (target < 0) ? null : getRoom(target);
+    }
+
+    /**
+     * Returns the number of rooms kept in memory.
+     *
+     * @return The number of rooms in memory
+     */
+    public synchronized int getResidentRooms()
+    {
+        if (clock != null) {
+            return resident;
+        }
+        int count = 0;
+        for (int id = 0; id < rooms.length(); id++) {
+            if (rooms.get(id) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of times a room was read from the file.
+     *
+     * @return The number of rooms read
+     */
+    public long getReads()
+    {
+        return reads.sum();
+    }
+
+    /**
+     * Returns the number of times a room was pushed out of memory.
+     *
+     * @return The number of rooms pushed out
+     */
+    public synchronized long getEvictions()
+    {
+        return evictions;
+    }
+
+    /**
+     * Remember that the items of a room have changed, and keep its items
+     * for when the room is thrown away.
+     *
+     * @param room The room that changed
+     */
+    void roomChanged(Room room)
+    {
+        changedRooms.add(room.getId());
+        unsavedItems.put(room.getId(), room.getItemIndex());
+    }
+
+    /**
+     * Returns the items of the rooms whose items changed since this was
+     * last called, and marks the rooms as saved. The items of a room still
+     * in memory are shared with the room; those of a room thrown away are
+     * the ones it left behind, which nothing changes any more. No room may
+     * change while this is done.
+     *
+     * @return The items of each changed room, by id
+     */
+    Map<Integer, ItemIndex> takeChangedItems()
+    {
+        Map<Integer, ItemIndex> changed = new LinkedHashMap<Integer, ItemIndex>();
+        for (Integer id : changedRooms) {
+            changedRooms.remove(id);
+            Room room = findRoom(id);
+            if (room != null) {
+                room.clearChanged();
+                changed.put(id, room.shareItems());
+            } else {
+                changed.put(id, unsavedItems.get(id));
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Pack the items a room had in a snapshot now that they are saved, and
+     * let go of them unless the room has changed again since.
+     *
+     * @param id The id of the room
+     * @param items The items of the room in the snapshot
+     */
+    void itemsSaved(int id, ItemIndex items)
+    {
+        savedItems.put(id, pack(items));
+        unsavedItems.remove(id, items);
+    }
+
+    /**
+     * Returns a room if it is in memory or still in use, without reading it.
+     *
+     * @param id The id of the room
+     * @return The room, or null if it has been thrown away
+     */
+    private Room findRoom(int id)
+    {
+        Room room = rooms.get(id);
+        if (room == null && evicted != null) {
+            synchronized (this) {
+                RoomReference reference = evicted.get(id);
+                room = (reference == null) ? null : reference.get();
+            }
+        }
+        return room;
+    }
+
+    /**
+     * Pack items into numbers: for every stack of plain items the number of
+     * its kind and how many there are, and for every beamer the number of
+     * its kind, followed by the room it was charged in if it is charged.
+     * The number of a kind is four times its place among the kinds packed,
+     * plus whether it is a plain item, a beamer or a charged beamer.
+     *
+     * @param items The items
+     * @return The packed items
+     */
+    private int[] pack(ItemIndex items)
+    {
+        int[] packed = new int[2 * items.stacks().size()];
+        int length = 0;
+        synchronized (packedTypes) {
+            for (Item item : items.stacks()) {
+                Integer number = packedTypeNumbers.get(item.getType());
+                if (number == null) {
+                    number = packedTypes.size();
+                    packedTypes.add(item.getType());
+                    packedTypeNumbers.put(item.getType(), number);
+                }
+                if (!(item instanceof Beamer)) {
+                    packed[length++] = number * 4 + PACKED_ITEM;
+                    packed[length++] = items.count(item);
+                } else if (((Beamer) item).isCharged()) {
+                    packed[length++] = number * 4 + PACKED_CHARGED_BEAMER;
+                    packed[length++] = ((Beamer) item).getDestinationId();
+                } else {
+                    packed[length++] = number * 4 + PACKED_BEAMER;
+                }
+            }
+        }
+        return Arrays.copyOf(packed, length);
+    }
+
+    /**
+     * Unpack items packed by pack into new items.
+     *
+     * @param packed The packed items
+     * @return The items
+     */
+    private ItemIndex unpack(int[] packed)
+    {
+        ItemIndex items = new ItemIndex();
+        int i = 0;
+        while (i < packed.length) {
+            ItemType type;
+            synchronized (packedTypes) {
+                type = packedTypes.get(packed[i] / 4);
+            }
+            int kind = packed[i++] % 4;
+            if (kind == PACKED_ITEM) {
+                Item item = new Item(type);
+                for (int count = packed[i++]; count > 0; count--) {
+                    items.add(item);
+                }
+            } else if (kind == PACKED_CHARGED_BEAMER) {
+                items.add(new Beamer(type, this, packed[i++]));
+            } else {
+                items.add(new Beamer(type));
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Read a room from the file, with the items it had when it was last
+     * thrown away if they have changed, or those in the file otherwise.
+     *
+     * @param id The id of the room
+     * @return The new room
+     */
+    private Room readRoom(int id)
+    {
+        String name = file.getRoomName(id);
+        String description = file.getRoomDescription(id);
+        Room room;
+        if (file.getRoomKind(id) == WorldFile.TRANSPORTER) {
+            TransporterRoom transporter = new TransporterRoom(this, id, name, description);
+            transporter.setDestinations(file.getDestinations(id));
+            room = transporter;
+        } else {
+            room = new StoredRoom(this, id, name, description);
+        }
+        ItemIndex items = unsavedItems.get(id);
+        int[] packed = savedItems.get(id);
+        if (items != null) {
+            room.setItemIndex(items);
+        } else if (packed != null) {
+            room.setItemIndex(unpack(packed));
+        } else {
+            for (int item = file.getFirstItem(id); item < file.getFirstItem(id + 1); item++) {
+                room.addInitialItem(file.createItem(item, this));
+            }
+        }
+        reads.increment();
+        return room;
+    }
+
+    /**
+     * This class holds a room pushed out of memory, as long as it is in use.
+     */
+    private static class RoomReference extends WeakReference<Room>
+    {
+        private int id;     // the id of the room
+
+        /**
+         * Create a weak reference to a room.
+         *
+         * @param room The room
+         * @param id The id of the room
+         * @param queue Told when the room is no longer in use
+         */
+        RoomReference(Room room, int id, ReferenceQueue<Room> queue)
+        {
+            super(room, queue);
+            this.id = id;
+        }
+    }
+}
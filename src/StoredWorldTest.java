@@ -0,0 +1,188 @@
+/**
+ * The test class StoredWorldTest. It checks that a stored world with a room
+ * budget keeps no more rooms than that in memory, never makes two rooms of
+ * the same id, and loses no item a player moved, whether the room was pushed
+ * out before or after a checkpoint saved it. It also checks that a stored
+ * room with no exits or items of its own works without tables for them.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StoredWorldTest
+{
+    // the number of rooms in the world, and the most kept in memory
+    private static final int SIZE = 5000;
+    private static final int BUDGET = 50;
+
+    private Path directory;     // holds the world and checkpoint files
+    private Path worldFile;
+
+    /**
+     * Write a world to a file.
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        directory = Files.createTempDirectory("world");
+        worldFile = directory.resolve("test.wow");
+        new WorldGenerator(SIZE, 3).write(worldFile);
+    }
+
+    /**
+     * Delete the directory and everything in it.
+     */
+    @After
+    public void tearDown() throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    /**
+     * Ask for many rooms, and give the garbage collector a chance to throw
+     * away those pushed out.
+     *
+     * @param world The world
+     * @param from The id of the first room
+     * @param to The id after the last room
+     */
+    private static void visit(StoredWorld world, int from, int to) throws InterruptedException
+    {
+        for (int id = from; id < to; id++) {
+            world.getRoom(id);
+        }
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        for (int id = from; id < to; id++) {
+            world.getRoom(id);
+        }
+    }
+
+    /**
+     * No more rooms than the budget are kept, and a room still held after
+     * being pushed out is the one found again.
+     */
+    @Test
+    public void testBudget() throws IOException, InterruptedException
+    {
+        StoredWorld world = StoredWorld.open(worldFile, BUDGET);
+        Room held = world.getRoom(10);
+        visit(world, 1000, 2000);
+        assertTrue(world.getEvictions() > 0);
+        assertEquals(BUDGET, world.getResidentRooms());
+        assertSame(held, world.getRoom(10));
+        assertEquals(world.getRoom(10).getName(), StoredWorld.open(worldFile).getRoom(10).getName());
+    }
+
+    /**
+     * A room used over and over is kept while rooms used once are pushed
+     * out in its place.
+     */
+    @Test
+    public void testSecondChance() throws IOException
+    {
+        StoredWorld world = StoredWorld.open(worldFile, BUDGET);
+        world.getRoom(0);
+        for (int id = 1; id < 10 * BUDGET; id++) {
+            world.getRoom(0);
+            world.getRoom(id);
+        }
+        long reads = world.getReads();
+        world.getRoom(0);
+        assertEquals(reads, world.getReads());
+    }
+
+    /**
+     * Items added to a room are still there after the room is pushed out and
+     * read again, before and after a checkpoint, and after a restore.
+     */
+    @Test
+    public void testItemsKept() throws IOException, InterruptedException
+    {
+        StoredWorld world = StoredWorld.open(worldFile, BUDGET);
+        Game game = new Game(world, world.getStartRoom());
+        Path checkpoint = directory.resolve("game.ckpt");
+        Checkpointer checkpointer = new Checkpointer(game, checkpoint);
+
+        Room room = world.getRoom(7);
+        room.addItem(new Item(world.getItemType("a pebble", 0.01, "Pebble")));
+        String items = room.getItems();
+        room = null;
+        visit(world, 1000, 2000);
+        assertNotNull(world.getRoom(7).itemInRoom("Pebble"));
+        assertEquals(items, world.getRoom(7).getItems());
+
+        checkpointer.checkpoint();
+        visit(world, 2000, 3000);
+        assertEquals(items, world.getRoom(7).getItems());
+        checkpointer.close();
+
+        StoredWorld restored = StoredWorld.open(worldFile, BUDGET);
+        new Game(restored, restored.getStartRoom()).restore(checkpoint);
+        visit(restored, 3000, 4000);
+        assertEquals(items, restored.getRoom(7).getItems());
+    }
+
+    /**
+     * Returns the id of the first room from the given one that starts out
+     * with no items.
+     *
+     * @param world The world
+     * @param from The id of the room to start looking from
+     * @return The id of the room
+     */
+    private static int emptyRoom(StoredWorld world, int from)
+    {
+        int id = from;
+        while (!world.getRoom(id).getItemList().isEmpty()) {
+            id++;
+        }
+        return id;
+    }
+
+    /**
+     * A room with no exits or items of its own still finds its exits in
+     * the file, and takes an exit or an item added later without any other
+     * empty room getting it too.
+     */
+    @Test
+    public void testRoomWithoutTables() throws IOException
+    {
+        StoredWorld world = StoredWorld.open(worldFile, BUDGET);
+        Room room = world.getRoom(emptyRoom(world, 0));
+        Room other = world.getRoom(emptyRoom(world, room.getId() + 1));
+        assertTrue(room.getExits().isEmpty());
+        assertNull(room.getExit("up"));
+        String description = room.getLongDescription();
+        assertTrue(description.contains("Exits: "));
+
+        room.setExit("up", other);
+        assertSame(other, room.getExit("up"));
+        assertEquals(1, room.getExits().size());
+        assertEquals(description.replace("Exits:", "Exits: up"), room.getLongDescription());
+
+        room.addItem(new Item(world.getItemType("a pebble", 0.01, "Pebble")));
+        assertNotNull(room.itemInRoom("Pebble"));
+        assertTrue(other.getItemList().isEmpty());
+        assertEquals("", other.getItems());
+    }
+}
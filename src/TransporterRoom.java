@@ -2,26 +2,65 @@
  * This subclass creates a special room that transports the player into a
  * random room upon exiting, adding an element of surprise to the game.
  *
+ * By default every room of the world is as likely as any other. The rooms
+ * can instead be given weights, or some left out, with an AliasSampler,
+ * which still picks a room in the same time however big the world is. The
+ * transporter of the campus only sends the player to the other rooms of its
+ * own campus, and a world file can list the destinations of each transporter.
+ *
  * @author Lehem Temesgen
  * @version 03/14/2024
  */
 
-import java.util.ArrayList;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 public class TransporterRoom extends Room {
-    private Random randRoom;
+    // picks the room to transport to, or null to pick any room of the world
+    private volatile AliasSampler destinations;
     
     /**
      * Constructs a transporter room.
      * 
+     * @param world The world the transporter room belongs to.
+     * @param name The name of the transporter room.
+     * @param description The description of the transporter room.
+     */
+    public TransporterRoom(World world, String name, String description) {
+        super(world, name, description);
+    }
+    
+    /**
+     * Constructs a transporter room that already has an id in its world,
+     * such as one loaded from a world file.
+     * 
+     * @param world The world the transporter room belongs to.
+     * @param id The id of the transporter room in its world.
+     * @param name The name of the transporter room.
      * @param description The description of the transporter room.
      */
-    public TransporterRoom(String description) {
-        super(description);
-        randRoom = new Random();
+    protected TransporterRoom(World world, int id, String name, String description) {
+        super(world, id, name, description);
+    }
+
+    /**
+     * Sets the rooms this room can transport to, and how likely each is.
+     * 
+     * @param destinations Picks the room to transport to, or null for any room of the world
+     */
+    public void setDestinations(AliasSampler destinations) {
+        this.destinations = destinations;
     }
 
+    /**
+     * Returns what picks the room to transport to.
+     * 
+     * @return The sampler over the destinations, or null for any room of the world
+     */
+    public AliasSampler getDestinations() {
+        return destinations;
+    }
+    
     /**
     * Returns a random room, independent of the direction parameter.
     *
@@ -29,9 +68,23 @@ public class TransporterRoom extends Room {
     * @return A randomly selected room.
     */
     public Room getExit(String direction) {
-        ArrayList<Room> allRooms = Room.getAllRooms();
-        int randomIndex = randRoom.nextInt(allRooms.size());
-        return allRooms.get(randomIndex);
+        return getExit(direction, ThreadLocalRandom.current());
+    }
+    
+    /**
+    * Returns a random room, independent of the direction parameter, picked
+    * with the given random numbers. A player's own random numbers, started
+    * from the seed of the world, always lead to the same rooms.
+    *
+    * @param direction to be ignored.
+    * @param random Where the random numbers come from
+    * @return A randomly selected room.
+    */
+    public Room getExit(String direction, RandomGenerator random) {
+        World world = getWorld();
+        AliasSampler sampler = destinations;
+        int randomId = (sampler == null) ? random.nextInt(world.size()) : sampler.sample(random);
+        return world.getRoom(randomId);
     }
 
 }
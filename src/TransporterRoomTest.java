@@ -0,0 +1,144 @@
+/**
+ * The test class TransporterRoomTest. It checks that a transporter room sends
+ * the player only to its own destinations, each as often as its weight says,
+ * whether the destinations come from a world file or from the campus.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TransporterRoomTest
+{
+    // the number of times the player is transported
+    private static final int TRIPS = 60000;
+
+    // a world whose transporter favours some rooms and leaves others out
+    private static final String WORLD =
+        "room | hall | in a hall\n" +
+        "room | kitchen | in a kitchen\n" +
+        "room | garden | in a garden\n" +
+        "room | cellar | in a cellar\n" +
+        "transporter | transporter | in a mysterious transporter room\n" +
+        "transporter | booth | in a transporter booth\n" +
+        "exit | hall | east | transporter\n" +
+        "destination | transporter | hall | 1\n" +
+        "destination | transporter | kitchen | 2\n" +
+        "destination | transporter | garden | 3\n";
+
+    private Path file;          // the compiled world file
+
+    /**
+     * Find a place for the compiled world.
+     */
+    @Before
+    public void setUp() throws IOException
+    {
+        file = Files.createTempFile("transporter", ".wow");
+    }
+
+    /**
+     * Delete the compiled world.
+     */
+    @After
+    public void tearDown() throws IOException
+    {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Leave a transporter room many times with random numbers from a fixed
+     * seed, and count where the player ends up.
+     *
+     * @param transporter The transporter room
+     * @return How many times the player ended up in each room, by id
+     */
+    private static int[] transport(TransporterRoom transporter)
+    {
+        int[] counts = new int[transporter.getWorld().size()];
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < TRIPS; i++) {
+            counts[transporter.getExit("east", random).getId()]++;
+        }
+        return counts;
+    }
+
+    /**
+     * Check that a room was reached about as often as expected.
+     *
+     * @param expected The share of the trips expected to end in the room
+     * @param count How many trips ended in the room
+     */
+    private static void assertShare(double expected, int count)
+    {
+        assertEquals(expected * TRIPS, count, 0.02 * TRIPS);
+    }
+
+    /**
+     * The destinations of a world file are reached in proportion to their
+     * weights, and no other room is ever reached.
+     */
+    @Test
+    public void testWorldFileDestinations() throws IOException
+    {
+        WorldFile.compile(new StringReader(WORLD), file);
+        StoredWorld world = StoredWorld.open(file);
+        int[] counts = transport((TransporterRoom) world.getRoom("transporter"));
+        assertShare(1 / 6.0, counts[world.getRoom("hall").getId()]);
+        assertShare(2 / 6.0, counts[world.getRoom("kitchen").getId()]);
+        assertShare(3 / 6.0, counts[world.getRoom("garden").getId()]);
+        assertEquals(0, counts[world.getRoom("cellar").getId()]);
+        assertEquals(0, counts[world.getRoom("transporter").getId()]);
+        assertEquals(0, counts[world.getRoom("booth").getId()]);
+        assertNull(((TransporterRoom) world.getRoom("booth")).getDestinations());
+    }
+
+    /**
+     * Only a transporter room can have destinations, and only with a weight
+     * above nothing.
+     */
+    @Test
+    public void testBadDestinations()
+    {
+        String[] bad = {
+            "destination | hall | kitchen | 1\n",
+            "destination | transporter | kitchen | -1\n",
+            "destination | transporter | kitchen | 0\n"
+        };
+        for (String entry : bad) {
+            try {
+                WorldFile.compile(new StringReader(WORLD + entry), file);
+                fail("compiled " + entry);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * The transporter of the campus sends the player to each of the other
+     * rooms of its campus as often, and never back into itself.
+     */
+    @Test
+    public void testCampusDestinations()
+    {
+        World world = new Game().getWorld();
+        int[] counts = transport((TransporterRoom) world.getRoom("transporter"));
+        for (String name : new String[] { "outside", "theatre", "pub", "lab", "office" }) {
+            assertShare(1 / 5.0, counts[world.getRoom(name).getId()]);
+        }
+        assertEquals(0, counts[world.getRoom("transporter").getId()]);
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * This class keeps track of all the rooms that make up one world. Every room
+ * is given an id when it is added, and can be looked up by that id or by its
+ * name. Rooms only ever belong to the world they were created in, so a world
+ * and all of its rooms can be thrown away together once it is no longer used.
+ *
+ * A world also keeps the kinds of item found in it, so every item of the same
+ * kind shares one ItemType, and the kinds go when the world does.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+
+public class World
+{
+    // the rooms of this world, indexed by their id
+    private ArrayList<Room> rooms;
+    // the rooms of this world, indexed by their name
+    private HashMap<String, Room> roomsByName;
+    // the exits of every room, built when first needed
+    private volatile ExitGraph exitGraph;
+    // the kinds of item in this world, by name
+    private ConcurrentHashMap<String, ItemType[]> itemTypes;
+    // the ids of the rooms whose items changed since they were last collected
+    private ConcurrentLinkedQueue<Integer> changedRooms;
+    // the seed every player's random numbers, such as for transporting,
+    // are started from
+    private volatile long seed;
+
+    /**
+     * Create an empty world.
+     */
+    public World()
+    {
+        rooms = new ArrayList<Room>();
+        roomsByName = new HashMap<String, Room>();
+        itemTypes = new ConcurrentHashMap<String, ItemType[]>();
+        changedRooms = new ConcurrentLinkedQueue<Integer>();
+        seed = ThreadLocalRandom.current().nextLong();
+    }
+
+    /**
+     * Add a room to this world, giving it the next free id.
+     *
+     * @param room The room to add
+     * @return The id of the room
+     * @throws IllegalArgumentException if a room with the same name is already in this world
+     */
+    public int addRoom(Room room)
+    {
+        if (roomsByName.containsKey(room.getName())) {
+            throw new IllegalArgumentException("Duplicate room name: " + room.getName());
+        }
+        roomsByName.put(room.getName(), room);
+        rooms.add(room);
+        return rooms.size() - 1;
+    }
+
+    /**
+     * Returns the room with the given id.
+     *
+     * @param id The id of the room
+     * @return The room, or null if there is no room with that id
+     */
+    public Room getRoom(int id)
+    {
+        if (id < 0 || id >= rooms.size()) {
+            return null;
+        }
+        return rooms.get(id);
+    }
+
+    /**
+     * Returns the room with the given name.
+     *
+     * @param name The name of the room
+     * @return The room, or null if there is no room with that name
+     */
+    public Room getRoom(String name)
+    {
+        return roomsByName.get(name);
+    }
+
+    /**
+     * Returns the kind of item with the given name, description and weight,
+     * creating it the first time it is asked for. Asking for a kind that
+     * already exists creates nothing.
+     *
+     * @param description The description of the item
+     * @param weight The weight of the item
+     * @param name The name of the item
+     * @return The item type shared by every item of that kind in this world
+     */
+    public ItemType getItemType(String description, double weight, String name)
+    {
+        ItemType type = findItemType(itemTypes.get(name), description, weight, name);
+        if (type != null) {
+            return type;
+        }
+        synchronized (itemTypes) {
+            ItemType[] named = itemTypes.get(name);
+            type = findItemType(named, description, weight, name);
+            if (type == null) {
+                type = new ItemType(description, weight, name);
+                named = (named == null) ? new ItemType[1] : Arrays.copyOf(named, named.length + 1);
+                named[named.length - 1] = type;
+                itemTypes.put(name, named);
+            }
+            return type;
+        }
+    }
+
+    /**
+     * Returns the exits of every room of this world as an exit graph. The
+     * graph is built the first time it is needed, so exits added after that
+     * are not part of it.
+     *
+     * @return The exit graph of this world
+     */
+    public ExitGraph getExitGraph()
+    {
+        ExitGraph graph = exitGraph;
+        if (graph == null) {
+            synchronized (this) {
+                graph = exitGraph;
+                if (graph == null) {
+                    graph = ExitGraph.of(this);
+                    exitGraph = graph;
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Returns which rooms of this world are transporter rooms, whose exits
+     * lead to a random room rather than where they say.
+     *
+     * @return The set of the ids of the transporter rooms
+     */
+    public BitSet getTransporters()
+    {
+        BitSet transporters = new BitSet(size());
+        for (int id = 0; id < size(); id++) {
+            if (getRoom(id) instanceof TransporterRoom) {
+                transporters.set(id);
+            }
+        }
+        return transporters;
+    }
+
+    /**
+     * Returns the seed every player's random numbers are started from.
+     *
+     * @return The seed of this world
+     */
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * Start every player's random numbers again from a new seed, so that
+     * the same commands lead to the same rooms when they are replayed.
+     *
+     * @param seed The seed
+     */
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+    }
+
+    /**
+     * Remember that the items of a room have changed.
+     *
+     * @param room The room that changed
+     */
+    void roomChanged(Room room)
+    {
+        changedRooms.add(room.getId());
+    }
+
+    /**
+     * Returns the items of the rooms whose items changed since this was
+     * last called, and marks the rooms as saved. The items are shared with
+     * the rooms rather than copied, and never change again. No room may
+     * change while this is done.
+     *
+     * @return The items of each changed room, by id
+     */
+    Map<Integer, ItemIndex> takeChangedItems()
+    {
+        Map<Integer, ItemIndex> changed = new LinkedHashMap<Integer, ItemIndex>();
+        Integer id;
+        while ((id = changedRooms.poll()) != null) {
+            Room room = getRoom(id);
+            if (room.clearChanged()) {
+                changed.put(id, room.shareItems());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Called once the items a room had in a snapshot are safely saved. A
+     * world that keeps the items of rooms it throws away, such as a stored
+     * world, can then keep them more compactly.
+     *
+     * @param id The id of the room
+     * @param items The items of the room in the snapshot
+     */
+    void itemsSaved(int id, ItemIndex items)
+    {
+    }
+
+    /**
+     * Find a kind of item among the kinds with the same name.
+     *
+     * @param named The kinds of item with the name, or null if there are none
+     * @param description The description of the item
+     * @param weight The weight of the item
+     * @param name The name of the item
+     * @return The item type, or null if it is not among them
+     */
+    private static ItemType findItemType(ItemType[] named, String description, double weight, String name)
+    {
+        if (named != null) {
+            for (ItemType type : named) {
+                if (type.is(description, weight, name)) {
+                    return type;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of rooms in this world. Room ids run from
+     * 0 up to one less than this number.
+     *
+     * @return The number of rooms
+     */
+    public int size()
+    {
+        return rooms.size();
+    }
+}
@@ -0,0 +1,609 @@
+/**
+ * This class reads and writes worlds stored in files, so that big worlds do
+ * not have to be built by code like the campus in Game.createRooms.
+ *
+ * Worlds are written by hand in a text format, one entry per line, with the
+ * fields of an entry separated by '|':
+ *
+ *     start | outside
+ *     room | outside | outside the main entrance of the university
+ *     transporter | transporter | in a mysterious transporter room
+ *     item | outside | Tree | a fir tree | 500.5
+ *     beamer | theatre | Beamer | a beamer | 1.0
+ *     exit | outside | east | theatre
+ *     destination | transporter | outside | 2.0
+ *
+ * Blank lines and lines starting with '#' are ignored. A room must be
+ * declared before it is used by an item, an exit or a destination.
+ *
+ * A transporter room with destinations sends the player to one of them, each
+ * with a probability in proportion to its weight. A transporter room without
+ * any sends the player to any room of the world.
+ *
+ * The text is compiled once into a compact binary file, which holds a table
+ * of every distinct string, a table of rooms, the items of all rooms in an
+ * array ordered by room, and the exits of all rooms in the layout of an
+ * ExitGraph, followed by the destinations of the transporter rooms. A
+ * compiled file is opened by mapping it into memory, so opening
+ * it costs almost nothing however big the world is, and each room is only
+ * read from the file when it is first needed.
+ *
+ * A compiled file must be smaller than 2GB.
+ *
+ * Usage: java WorldFile world.txt world.wow
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class WorldFile
+{
+    // the first four bytes of every compiled world file, "WOW1"
+    static final int MAGIC = 0x574f5731;
+    static final int VERSION = 4;
+
+    // the kinds of rooms and items
+    public static final int ROOM = 0;
+    public static final int TRANSPORTER = 1;
+    public static final int ITEM = 0;
+    public static final int BEAMER = 1;
+
+    // the sizes of the records, in bytes
+    static final int HEADER_SIZE = 10 * 4;
+    static final int ROOM_SIZE = 4 * 4;
+    static final int EXIT_SIZE = 2 * 4;
+    static final int ITEM_SIZE = 3 * 4 + 8;
+    static final int DESTINATION_SIZE = 2 * 4 + 8;
+
+    // the mapped contents of the file
+    private ByteBuffer buffer;
+
+    private int roomCount;
+    private int exitCount;
+    private int itemCount;
+    private int stringCount;
+    private int directionCount;
+    private int hashSize;
+    private int startRoom;
+    private int destinationCount;
+
+    // where each section of the file starts
+    private int stringOffsets;
+    private int directions;
+    private int rooms;
+    private int exitOffsets;
+    private int exits;
+    private int items;
+    private int nameHash;
+    private int strings;
+    private int destinations;
+
+    /**
+     * Read a world from the contents of a compiled world file.
+     *
+     * @param buffer The contents of the file
+     * @throws IOException if the contents are not a compiled world
+     */
+    public WorldFile(ByteBuffer buffer) throws IOException
+    {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a compiled world file");
+        }
+        roomCount = buffer.getInt(8);
+        exitCount = buffer.getInt(12);
+        itemCount = buffer.getInt(16);
+        stringCount = buffer.getInt(20);
+        directionCount = buffer.getInt(24);
+        hashSize = buffer.getInt(28);
+        startRoom = buffer.getInt(32);
+        destinationCount = buffer.getInt(36);
+
+        stringOffsets = HEADER_SIZE;
+        directions = stringOffsets + (stringCount + 1) * 4;
+        rooms = directions + directionCount * 4;
+        exitOffsets = rooms + (roomCount + 1) * ROOM_SIZE;
+        exits = exitOffsets + (roomCount + 1) * 4;
+        items = exits + exitCount * EXIT_SIZE;
+        nameHash = items + itemCount * ITEM_SIZE;
+        strings = nameHash + hashSize * 4;
+        // the destinations follow the last string
+        destinations = strings + buffer.getInt(stringOffsets + stringCount * 4);
+    }
+
+    /**
+     * Open a compiled world file by mapping it into memory.
+     *
+     * @param file The compiled world file
+     * @return The world in the file
+     * @throws IOException if the file cannot be read or is not a compiled world
+     */
+    public static WorldFile open(Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new WorldFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Returns the number of rooms in the world.
+     *
+     * @return The number of rooms
+     */
+    public int getRoomCount()
+    {
+        return roomCount;
+    }
+
+    /**
+     * Returns the id of the room where the game starts.
+     *
+     * @return The id of the start room
+     */
+    public int getStartRoom()
+    {
+        return startRoom;
+    }
+
+    /**
+     * Returns the name of a room.
+     *
+     * @param room The id of the room
+     * @return The name of the room
+     */
+    public String getRoomName(int room)
+    {
+        return getString(buffer.getInt(rooms + room * ROOM_SIZE));
+    }
+
+    /**
+     * Returns the description of a room.
+     *
+     * @param room The id of the room
+     * @return The description of the room
+     */
+    public String getRoomDescription(int room)
+    {
+        return getString(buffer.getInt(rooms + room * ROOM_SIZE + 4));
+    }
+
+    /**
+     * Returns the kind of a room, either ROOM or TRANSPORTER.
+     *
+     * @param room The id of the room
+     * @return The kind of the room
+     */
+    public int getRoomKind(int room)
+    {
+        return buffer.getInt(rooms + room * ROOM_SIZE + 8);
+    }
+
+    /**
+     * Returns the exits of every room, as a graph kept in the mapped file.
+     *
+     * @return The exit graph of the world
+     */
+    public ExitGraph getExitGraph()
+    {
+        String[] names = new String[directionCount];
+        for (int i = 0; i < directionCount; i++) {
+            names[i] = getString(buffer.getInt(directions + i * 4));
+        }
+        return new ExitGraph(names,
+            buffer.slice(exitOffsets, (roomCount + 1) * 4).asIntBuffer(),
+            buffer.slice(exits, exitCount * EXIT_SIZE).asIntBuffer());
+    }
+
+    /**
+     * Returns the index of the first item of a room. The items of a room
+     * run up to the first item of the next room.
+     *
+     * @param room The id of the room, or the number of rooms for the end of the last room
+     * @return The index of the first item
+     */
+    public int getFirstItem(int room)
+    {
+        return buffer.getInt(rooms + room * ROOM_SIZE + 12);
+    }
+
+    /**
+     * Create the item with the given index.
+     *
+     * @param item The index of the item
+     * @param world The world whose kinds of item the item shares
+     * @return A new Item, or Beamer, as described in the file
+     */
+    public Item createItem(int item, World world)
+    {
+        int at = items + item * ITEM_SIZE;
+        String name = getString(buffer.getInt(at + 4));
+        String description = getString(buffer.getInt(at + 8));
+        double weight = buffer.getDouble(at + 12);
+        ItemType type = world.getItemType(description, weight, name);
+        if (buffer.getInt(at) == BEAMER) {
+            return new Beamer(type);
+        }
+        return new Item(type);
+    }
+
+    /**
+     * Returns the rooms a transporter room sends the player to, and how
+     * likely each is. The destinations are ordered by transporter room, so
+     * those of one room are found by a binary search.
+     *
+     * @param room The id of the transporter room
+     * @return A sampler over the destinations, or null if the room has none
+     */
+    public AliasSampler getDestinations(int room)
+    {
+        int low = 0;
+        int high = destinationCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (buffer.getInt(destinations + middle * DESTINATION_SIZE) < room) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int end = low;
+        while (end < destinationCount && buffer.getInt(destinations + end * DESTINATION_SIZE) == room) {
+            end++;
+        }
+        if (end == low) {
+            return null;
+        }
+        int[] rooms = new int[end - low];
+        double[] weights = new double[end - low];
+        for (int i = 0; i < rooms.length; i++) {
+            int at = destinations + (low + i) * DESTINATION_SIZE;
+            rooms[i] = buffer.getInt(at + 4);
+            weights[i] = buffer.getDouble(at + 8);
+        }
+        return new AliasSampler(rooms, weights);
+    }
+
+    /**
+     * Find the room with the given name.
+     *
+     * @param name The name of the room
+     * @return The id of the room, or -1 if there is no room with that name
+     */
+    public int findRoom(String name)
+    {
+        if (hashSize == 0) {
+            return -1;
+        }
+        int slot = slot(name, hashSize);
+        int entry;
+        while ((entry = buffer.getInt(nameHash + slot * 4)) != 0) {
+            if (getRoomName(entry - 1).equals(name)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) % hashSize;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a string of the string table.
+     *
+     * @param index The index of the string
+     * @return The string
+     */
+    private String getString(int index)
+    {
+        int start = buffer.getInt(stringOffsets + index * 4);
+        int end = buffer.getInt(stringOffsets + index * 4 + 4);
+        byte[] bytes = new byte[end - start];
+        buffer.get(strings + start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the slot of a room name in the name hash table.
+     *
+     * @param name The name of the room
+     * @param size The number of slots in the table
+     * @return The slot where the search for the name starts
+     */
+    private static int slot(String name, int size)
+    {
+        return slot(name.hashCode(), size);
+    }
+
+    /**
+     * Returns the slot of a room name in the name hash table, from the hash
+     * code of the name.
+     *
+     * @param hash The hash code of the name, as given by String.hashCode
+     * @param size The number of slots in the table
+     * @return The slot where the search for the name starts
+     */
+    static int slot(int hash, int size)
+    {
+        // names such as "room17" and "room18" have hash codes next to each
+        // other, so they are spread out before taking the slot
+        int h = hash * 0x9e3779b9;
+        return ((h ^ (h >>> 16)) & 0x7fffffff) % size;
+    }
+
+    /**
+     * Compile a world from the text format into a binary world file.
+     *
+     * @param text The world in the text format
+     * @param file Where the compiled world is written
+     * @throws IOException if the text cannot be read, is not valid, or the file cannot be written
+     */
+    public static void compile(Reader text, Path file) throws IOException
+    {
+        Compiler compiler = new Compiler();
+        BufferedReader reader = new BufferedReader(text);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            try {
+                compiler.add(line.split("\\|"));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+            }
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            compiler.write(out);
+        }
+    }
+
+    /**
+     * Compile the world text file named by the first argument into the
+     * binary world file named by the second.
+     *
+     * @param args The command line arguments
+     * @throws IOException if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2) {
+            System.err.println("Usage: java WorldFile world.txt world.wow");
+            return;
+        }
+        try (Reader text = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            compile(text, Paths.get(args[1]));
+        }
+    }
+
+    /**
+     * This class collects the entries of a world in the text format and
+     * writes them out as a compiled world file.
+     */
+    private static class Compiler
+    {
+        // every distinct string, and the index of each in the table
+        private ArrayList<String> strings = new ArrayList<String>();
+        private HashMap<String, Integer> stringIndex = new HashMap<String, Integer>();
+        // every distinct direction, and the index of each
+        private ArrayList<Integer> directions = new ArrayList<Integer>();
+        private HashMap<String, Integer> directionIndex = new HashMap<String, Integer>();
+
+        // the rooms: name, description and kind, and the id of each name
+        private ArrayList<int[]> rooms = new ArrayList<int[]>();
+        private HashMap<String, Integer> roomIndex = new HashMap<String, Integer>();
+        // the exits of each room: direction and target pairs
+        private ArrayList<ArrayList<int[]>> exits = new ArrayList<ArrayList<int[]>>();
+        // the items of each room
+        private ArrayList<ArrayList<Object[]>> items = new ArrayList<ArrayList<Object[]>>();
+        // the destinations of each room: room and weight pairs
+        private ArrayList<ArrayList<Object[]>> destinations = new ArrayList<ArrayList<Object[]>>();
+        private String start;
+        private int exitCount;
+        private int itemCount;
+        private int destinationCount;
+
+        /**
+         * Add one entry of the text format.
+         *
+         * @param fields The fields of the entry
+         */
+        void add(String[] fields)
+        {
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = fields[i].trim();
+            }
+            String keyword = fields[0];
+            if (keyword.equals("start") && fields.length == 2) {
+                start = fields[1];
+            } else if ((keyword.equals("room") || keyword.equals("transporter")) && fields.length == 3) {
+                if (roomIndex.containsKey(fields[1])) {
+                    throw new IllegalArgumentException("Duplicate room name: " + fields[1]);
+                }
+                int kind = keyword.equals("room") ? ROOM : TRANSPORTER;
+                roomIndex.put(fields[1], rooms.size());
+                rooms.add(new int[] { string(fields[1]), string(fields[2]), kind });
+                exits.add(new ArrayList<int[]>());
+                items.add(new ArrayList<Object[]>());
+                destinations.add(new ArrayList<Object[]>());
+            } else if ((keyword.equals("item") || keyword.equals("beamer")) && fields.length == 5) {
+                int kind = keyword.equals("item") ? ITEM : BEAMER;
+                double weight = Double.parseDouble(fields[4]);
+                items.get(room(fields[1])).add(new Object[] {
+                    kind, string(fields[2]), string(fields[3]), weight });
+                itemCount++;
+            } else if (keyword.equals("exit") && fields.length == 4) {
+                Integer direction = directionIndex.get(fields[2]);
+                if (direction == null) {
+                    direction = directions.size();
+                    directionIndex.put(fields[2], direction);
+                    directions.add(string(fields[2]));
+                }
+                exits.get(room(fields[1])).add(new int[] { direction, room(fields[3]) });
+                exitCount++;
+            } else if (keyword.equals("destination") && fields.length == 4) {
+                int transporter = room(fields[1]);
+                if (rooms.get(transporter)[2] != TRANSPORTER) {
+                    throw new IllegalArgumentException("Not a transporter room: " + fields[1]);
+                }
+                double weight = Double.parseDouble(fields[3]);
+                if (!(weight > 0) || Double.isInfinite(weight)) {
+                    throw new IllegalArgumentException("Bad weight: " + fields[3]);
+                }
+                destinations.get(transporter).add(new Object[] { room(fields[2]), weight });
+                destinationCount++;
+            } else {
+                throw new IllegalArgumentException("Not a valid entry: " + String.join(" | ", fields));
+            }
+        }
+
+        /**
+         * Write the compiled world.
+         *
+         * @param out Where the compiled world is written
+         * @throws IOException if the world cannot be written
+         */
+        void write(DataOutputStream out) throws IOException
+        {
+            if (rooms.isEmpty()) {
+                throw new IOException("The world has no rooms");
+            }
+            int startRoom = (start == null) ? 0 : room(start);
+            int hashSize = rooms.size() * 2;
+            byte[][] bytes = new byte[strings.size()][];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            }
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rooms.size());
+            out.writeInt(exitCount);
+            out.writeInt(itemCount);
+            out.writeInt(strings.size());
+            out.writeInt(directions.size());
+            out.writeInt(hashSize);
+            out.writeInt(startRoom);
+            out.writeInt(destinationCount);
+
+            int offset = 0;
+            for (byte[] b : bytes) {
+                out.writeInt(offset);
+                offset += b.length;
+            }
+            out.writeInt(offset);
+            for (int direction : directions) {
+                out.writeInt(direction);
+            }
+
+            int firstItem = 0;
+            for (int i = 0; i < rooms.size(); i++) {
+                int[] room = rooms.get(i);
+                out.writeInt(room[0]);
+                out.writeInt(room[1]);
+                out.writeInt(room[2]);
+                out.writeInt(firstItem);
+                firstItem += items.get(i).size();
+            }
+            // an extra room marks the end of the items of the last room
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeInt(firstItem);
+
+            int firstExit = 0;
+            for (ArrayList<int[]> roomExits : exits) {
+                out.writeInt(firstExit);
+                firstExit += roomExits.size();
+            }
+            out.writeInt(firstExit);
+            for (ArrayList<int[]> roomExits : exits) {
+                for (int[] exit : roomExits) {
+                    out.writeInt(exit[0]);
+                    out.writeInt(exit[1]);
+                }
+            }
+            for (ArrayList<Object[]> roomItems : items) {
+                for (Object[] item : roomItems) {
+                    out.writeInt((Integer) item[0]);
+                    out.writeInt((Integer) item[1]);
+                    out.writeInt((Integer) item[2]);
+                    out.writeDouble((Double) item[3]);
+                }
+            }
+
+            int[] table = new int[hashSize];
+            for (int i = 0; i < rooms.size(); i++) {
+                int slot = slot(strings.get(rooms.get(i)[0]), hashSize);
+                while (table[slot] != 0) {
+                    slot = (slot + 1) % hashSize;
+                }
+                table[slot] = i + 1;
+            }
+            for (int entry : table) {
+                out.writeInt(entry);
+            }
+
+            for (byte[] b : bytes) {
+                out.write(b);
+            }
+
+            for (int i = 0; i < rooms.size(); i++) {
+                for (Object[] destination : destinations.get(i)) {
+                    out.writeInt(i);
+                    out.writeInt((Integer) destination[0]);
+                    out.writeDouble((Double) destination[1]);
+                }
+            }
+        }
+
+        /**
+         * Returns the index of a string in the string table, adding it if
+         * it is not there yet.
+         *
+         * @param s The string
+         * @return The index of the string
+         */
+        private int string(String s)
+        {
+            Integer index = stringIndex.get(s);
+            if (index == null) {
+                index = strings.size();
+                stringIndex.put(s, index);
+                strings.add(s);
+            }
+            return index;
+        }
+
+        /**
+         * Returns the id of a room that has been declared.
+         *
+         * @param name The name of the room
+         * @return The id of the room
+         */
+        private int room(String name)
+        {
+            Integer id = roomIndex.get(name);
+            if (id == null) {
+                throw new IllegalArgumentException("Unknown room: " + name);
+            }
+            return id;
+        }
+    }
+}
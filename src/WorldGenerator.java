@@ -0,0 +1,650 @@
+/**
+ * This class makes up worlds of any number of rooms, for finding out how the
+ * game copes with big worlds. The same settings and seed always make the
+ * same world.
+ *
+ * Rooms are called "room0", "room1" and so on, and the game starts in room0.
+ * Every room has the same number of exits: the first leads east to the next
+ * room and the second west to the one before, so every room can be reached
+ * from every other, and the rest lead in other directions to rooms a short
+ * way off. A share of the rooms are transporter rooms, and the rooms hold
+ * the same kinds of items as the campus, cookies and beamers among them,
+ * as many on average as asked for.
+ *
+ * The world is written straight into a compiled world file, in the layout
+ * WorldFile reads, and opened from there as a StoredWorld. The file is
+ * mapped into memory and filled in in parallel, a chunk of rooms at a time,
+ * by the tasks of a fork-join pool. Everything about a room is drawn from
+ * random numbers of its own, started from the seed and its id, and the file
+ * offsets of its name, exits and items are worked out from its id, so no
+ * chunk has to wait for another and no room's strings are ever made: names
+ * are written into the file as bytes, and their hash codes worked out from
+ * the same digits. Only the items of each chunk are counted beforehand, as
+ * their number varies from room to room. The names are put in the name
+ * hash table afterwards, sorted by the region of the table they belong in
+ * and a region at a time, so each task works on a small part of the table
+ * rather than on slots all over it.
+ *
+ * Usage: java WorldGenerator rooms world.wow [exits [items per room [transporter ratio [seed]]]]
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntConsumer;
+
+public class WorldGenerator
+{
+    // the directions of the exits of every room, in order
+    private static final String[] DIRECTIONS = {
+        "east", "west", "north", "south", "up", "down",
+        "northeast", "northwest", "southeast", "southwest" };
+    // what the rooms look like
+    private static final String[] DESCRIPTIONS = {
+        "outside the main entrance of the university", "in a lecture theatre",
+        "in the campus pub", "in a computing lab", "in the computing admin office",
+        "in a long corridor", "in a quiet library", "in a dusty storeroom" };
+    private static final String TRANSPORTER_DESCRIPTION = "in a mysterious transporter room";
+    // the kinds of items, and how many of each there are for every cookie
+    private static final int[] ITEM_KINDS = {
+        WorldFile.ITEM, WorldFile.ITEM, WorldFile.ITEM, WorldFile.ITEM,
+        WorldFile.ITEM, WorldFile.ITEM, WorldFile.BEAMER };
+    private static final String[] ITEM_NAMES = {
+        "Cookie", "Chair", "Computer", "Computer", "Tree", "Bar", "Beamer" };
+    private static final String[] ITEM_DESCRIPTIONS = {
+        "a cookie", "a wooden chair", "a PC", "a Mac", "a fir tree",
+        "a long bar with stools", "a beamer" };
+    private static final double[] ITEM_WEIGHTS = { 0.1, 5.0, 10.0, 5.0, 500.5, 95.67, 1.0 };
+    private static final double[] ITEM_ODDS = { 5, 4, 2, 1, 2, 1, 2 };
+    // the start of the name of every room
+    private static final byte[] NAME_PREFIX = "room".getBytes(StandardCharsets.US_ASCII);
+    // how far, in room ids, the exits after the first two may lead
+    private static final int REACH = 1000;
+    // the number of rooms filled in by one task
+    private static final int CHUNK_SIZE = 4096;
+    // the name hash table is filled in by regions of 2^REGION_BITS slots
+    private static final int REGION_BITS = 12;
+
+    private int size;           // the number of rooms
+    private long seed;
+    private int exitDegree;
+    private double itemDensity;
+    private double transporterRatio;
+
+    // the strings every world has, and the index of each in the string table
+    private ArrayList<String> pool;
+    private HashMap<String, Integer> poolIndex;
+    // the odds of each kind of item, added up
+    private double[] itemOdds;
+
+    /**
+     * Create a generator of worlds with four exits a room, half an item a
+     * room, and one transporter room in a hundred.
+     *
+     * @param size The number of rooms
+     * @param seed The seed the world is made from
+     * @throws IllegalArgumentException if the number of rooms is less than one
+     */
+    public WorldGenerator(int size, long seed)
+    {
+        if (size < 1) {
+            throw new IllegalArgumentException("Bad number of rooms: " + size);
+        }
+        this.size = size;
+        this.seed = seed;
+        exitDegree = 4;
+        itemDensity = 0.5;
+        transporterRatio = 0.01;
+
+        pool = new ArrayList<String>();
+        poolIndex = new HashMap<String, Integer>();
+        for (String s : DIRECTIONS) {
+            string(s);
+        }
+        for (String s : DESCRIPTIONS) {
+            string(s);
+        }
+        string(TRANSPORTER_DESCRIPTION);
+        for (int i = 0; i < ITEM_NAMES.length; i++) {
+            string(ITEM_NAMES[i]);
+            string(ITEM_DESCRIPTIONS[i]);
+        }
+        itemOdds = new double[ITEM_ODDS.length];
+        double total = 0;
+        for (int i = 0; i < ITEM_ODDS.length; i++) {
+            total += ITEM_ODDS[i];
+            itemOdds[i] = total;
+        }
+    }
+
+    /**
+     * Set the number of exits of every room.
+     *
+     * @param exitDegree The number of exits, from 1 to 10
+     * @throws IllegalArgumentException if the number is out of range
+     */
+    public void setExitDegree(int exitDegree)
+    {
+        if (exitDegree < 1 || exitDegree > DIRECTIONS.length) {
+            throw new IllegalArgumentException("Bad number of exits: " + exitDegree);
+        }
+        this.exitDegree = exitDegree;
+    }
+
+    /**
+     * Set the number of items in a room, on average.
+     *
+     * @param itemDensity The average number of items in a room
+     * @throws IllegalArgumentException if the number is negative
+     */
+    public void setItemDensity(double itemDensity)
+    {
+        if (!(itemDensity >= 0) || Double.isInfinite(itemDensity)) {
+            throw new IllegalArgumentException("Bad number of items: " + itemDensity);
+        }
+        this.itemDensity = itemDensity;
+    }
+
+    /**
+     * Set the share of rooms that are transporter rooms. The start room
+     * never is.
+     *
+     * @param transporterRatio The share, from 0 to 1
+     * @throws IllegalArgumentException if the share is out of range
+     */
+    public void setTransporterRatio(double transporterRatio)
+    {
+        if (!(transporterRatio >= 0 && transporterRatio <= 1)) {
+            throw new IllegalArgumentException("Bad share of transporter rooms: " + transporterRatio);
+        }
+        this.transporterRatio = transporterRatio;
+    }
+
+    /**
+     * Make a world, write it to a compiled world file and open it.
+     *
+     * @param file Where the world is written
+     * @return The world
+     * @throws IOException if the file cannot be written, or the world is too
+     *         big for one compiled world file
+     */
+    public StoredWorld generate(Path file) throws IOException
+    {
+        write(file);
+        return StoredWorld.open(file);
+    }
+
+    /**
+     * Make a world and write it to a compiled world file.
+     *
+     * @param file Where the world is written
+     * @throws IOException if the file cannot be written, or the world is too
+     *         big for one compiled world file
+     */
+    public void write(Path file) throws IOException
+    {
+        int chunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        // the items of each chunk first, as every later chunk needs to know
+        // where its items start
+        long[] firstItems = new long[chunks + 1];
+        forEachChunk(chunks, chunk -> {
+            int items = 0;
+            for (int id = chunk * CHUNK_SIZE; id < Math.min(size, (chunk + 1) * CHUNK_SIZE); id++) {
+                items += itemCount(random(id));
+            }
+            firstItems[chunk + 1] = items;
+        });
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            firstItems[chunk + 1] += firstItems[chunk];
+        }
+
+        Layout layout = new Layout(firstItems[chunks]);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, layout.end);
+            layout.writeHeader(buffer);
+            int[] slots = new int[size];
+            forEachChunk(chunks, chunk -> writeChunk(buffer, layout, slots, chunk,
+                                                     (int) firstItems[chunk]));
+            AtomicIntegerArray table = fillHashTable(slots, layout.hashSize);
+            forEachChunk((layout.hashSize + CHUNK_SIZE - 1) / CHUNK_SIZE, chunk -> {
+                int end = Math.min(layout.hashSize, (chunk + 1) * CHUNK_SIZE);
+                for (int slot = chunk * CHUNK_SIZE; slot < end; slot++) {
+                    buffer.putInt(layout.nameHash + slot * 4, table.get(slot));
+                }
+            });
+        }
+    }
+
+    /**
+     * Write the rooms of one chunk, their exits, items and names, and work
+     * out the slot in the name hash table where the search for each name
+     * starts.
+     *
+     * @param buffer The mapped file
+     * @param layout Where everything goes in the file
+     * @param slots Where the slot of each room is put, by id
+     * @param chunk The chunk
+     * @param item The index of the first item of the chunk
+     */
+    private void writeChunk(ByteBuffer buffer, Layout layout, int[] slots, int chunk, int item)
+    {
+        int start = chunk * CHUNK_SIZE;
+        int end = Math.min(size, start + CHUNK_SIZE);
+        int nameOffset = layout.nameStart(start);
+        byte[] digits = new byte[10];
+        for (int id = start; id < end; id++) {
+            SplittableRandom random = random(id);
+            int items = itemCount(random);
+            boolean transporter = id != 0 && random.nextDouble() < transporterRatio;
+            int description = transporter ? poolIndex.get(TRANSPORTER_DESCRIPTION)
+                : poolIndex.get(DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)]);
+
+            int at = layout.rooms + id * WorldFile.ROOM_SIZE;
+            buffer.putInt(at, pool.size() + id);
+            buffer.putInt(at + 4, description);
+            buffer.putInt(at + 8, transporter ? WorldFile.TRANSPORTER : WorldFile.ROOM);
+            buffer.putInt(at + 12, item);
+
+            buffer.putInt(layout.exitOffsets + id * 4, id * exitDegree);
+            at = layout.exits + id * exitDegree * WorldFile.EXIT_SIZE;
+            for (int exit = 0; exit < exitDegree; exit++) {
+                buffer.putInt(at, exit);
+                buffer.putInt(at + 4, exitTarget(id, exit, random));
+                at += WorldFile.EXIT_SIZE;
+            }
+
+            for (int i = 0; i < items; i++) {
+                int kind = itemKind(random);
+                at = layout.items + item * WorldFile.ITEM_SIZE;
+                buffer.putInt(at, ITEM_KINDS[kind]);
+                buffer.putInt(at + 4, poolIndex.get(ITEM_NAMES[kind]));
+                buffer.putInt(at + 8, poolIndex.get(ITEM_DESCRIPTIONS[kind]));
+                buffer.putDouble(at + 12, ITEM_WEIGHTS[kind]);
+                item++;
+            }
+
+            // the name, "room" and the id, and the hash code String would give it
+            buffer.putInt(layout.stringOffsets + (pool.size() + id) * 4, nameOffset);
+            int hash = 0;
+            for (byte b : NAME_PREFIX) {
+                buffer.put(layout.strings + nameOffset++, b);
+                hash = 31 * hash + b;
+            }
+            int length = 0;
+            for (int rest = id; length == 0 || rest > 0; rest /= 10) {
+                digits[length++] = (byte) ('0' + rest % 10);
+            }
+            while (length > 0) {
+                byte b = digits[--length];
+                buffer.put(layout.strings + nameOffset++, b);
+                hash = 31 * hash + b;
+            }
+            slots[id] = WorldFile.slot(hash, layout.hashSize);
+        }
+    }
+
+    /**
+     * Fill in the name hash table. The rooms are sorted by the region of
+     * the table their slot is in, and the regions filled in in parallel;
+     * a name that runs past the end of its region into the next one is
+     * still put in a free slot, as every slot is claimed by compare and set.
+     *
+     * @param slots The slot where the search for the name of each room starts
+     * @param hashSize The number of slots in the table
+     * @return The table, holding one more than the id of the room in each
+     *         slot taken, and 0 in each free slot
+     */
+    private static AtomicIntegerArray fillHashTable(int[] slots, int hashSize)
+    {
+        int regions = (hashSize >>> REGION_BITS) + 1;
+        int[] starts = new int[regions + 1];
+        for (int slot : slots) {
+            starts[(slot >>> REGION_BITS) + 1]++;
+        }
+        for (int region = 0; region < regions; region++) {
+            starts[region + 1] += starts[region];
+        }
+        int[] next = Arrays.copyOf(starts, regions);
+        int[] sorted = new int[slots.length];
+        for (int id = 0; id < slots.length; id++) {
+            sorted[next[slots[id] >>> REGION_BITS]++] = id;
+        }
+
+        AtomicIntegerArray table = new AtomicIntegerArray(hashSize);
+        forEachChunk(regions, region -> {
+            for (int i = starts[region]; i < starts[region + 1]; i++) {
+                int id = sorted[i];
+                int slot = slots[id];
+                while (!table.compareAndSet(slot, 0, id + 1)) {
+                    slot = (slot + 1) % hashSize;
+                }
+            }
+        });
+        return table;
+    }
+
+    /**
+     * Returns the random numbers everything about a room is drawn from.
+     *
+     * @param id The id of the room
+     * @return The random numbers of the room
+     */
+    private SplittableRandom random(int id)
+    {
+        // mix the id in, so rooms next to each other have unrelated numbers
+        long z = seed + (id + 1) * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return new SplittableRandom(z ^ (z >>> 31));
+    }
+
+    /**
+     * Draw the number of items in a room, the first thing drawn for it.
+     *
+     * @param random The random numbers of the room
+     * @return The number of items
+     */
+    private int itemCount(SplittableRandom random)
+    {
+        int whole = (int) itemDensity;
+        return (random.nextDouble() < itemDensity - whole) ? whole + 1 : whole;
+    }
+
+    /**
+     * Draw the kind of an item.
+     *
+     * @param random The random numbers of the room
+     * @return The index of the kind of item
+     */
+    private int itemKind(SplittableRandom random)
+    {
+        double odds = random.nextDouble(itemOdds[itemOdds.length - 1]);
+        int kind = 0;
+        while (odds >= itemOdds[kind]) {
+            kind++;
+        }
+        return kind;
+    }
+
+    /**
+     * Returns the room an exit of a room leads to: the next room east, the
+     * one before west, and a room at most REACH away for the others.
+     *
+     * @param id The id of the room
+     * @param exit The index of the exit, which is also that of its direction
+     * @param random The random numbers of the room
+     * @return The id of the room the exit leads to
+     */
+    private int exitTarget(int id, int exit, SplittableRandom random)
+    {
+        long target;
+        if (exit == 0) {
+            target = id + 1;
+        } else if (exit == 1) {
+            target = id - 1;
+        } else {
+            int offset = 1 + random.nextInt(REACH);
+            target = random.nextBoolean() ? id + offset : id - offset;
+        }
+        return (int) Math.floorMod(target, (long) size);
+    }
+
+    /**
+     * Returns the index of a string in the string table, adding it if it
+     * is not there yet.
+     *
+     * @param s The string
+     * @return The index of the string
+     */
+    private int string(String s)
+    {
+        Integer index = poolIndex.get(s);
+        if (index == null) {
+            index = pool.size();
+            poolIndex.put(s, index);
+            pool.add(s);
+        }
+        return index;
+    }
+
+    /**
+     * Run some work on every chunk, in parallel, and wait for all of it to
+     * finish.
+     *
+     * @param chunks The number of chunks
+     * @param work The work to do for each chunk
+     */
+    private static void forEachChunk(int chunks, IntConsumer work)
+    {
+        new ChunkTask(0, chunks, work).invoke();
+    }
+
+    /**
+     * This class is the task of working on a range of chunks, which it
+     * splits in two until there is only one chunk left.
+     */
+    private static class ChunkTask extends RecursiveAction
+    {
+        // tasks are never serialized, but RecursiveAction is Serializable
+        private static final long serialVersionUID = 1L;
+
+        private int from;
+        private int to;
+        private IntConsumer work;
+
+        /**
+         * Create the task of working on a range of chunks.
+         *
+         * @param from The first chunk
+         * @param to The chunk after the last one
+         * @param work The work to do for each chunk
+         */
+        ChunkTask(int from, int to, IntConsumer work)
+        {
+            this.from = from;
+            this.to = to;
+            this.work = work;
+        }
+
+        /**
+         * Work on the chunks, splitting them between two tasks if there is
+         * more than one.
+         */
+        protected void compute()
+        {
+            if (to - from == 1) {
+                work.accept(from);
+            } else if (to > from) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(from, middle, work), new ChunkTask(middle, to, work));
+            }
+        }
+    }
+
+    /**
+     * This class works out where each section of a compiled world file
+     * starts, as WorldFile does when it reads one.
+     */
+    private class Layout
+    {
+        private int itemCount;
+        private int hashSize;
+        private int poolBytes;      // the bytes of the strings every world has
+
+        private int stringOffsets;
+        private int directions;
+        private int rooms;
+        private int exitOffsets;
+        private int exits;
+        private int items;
+        private int nameHash;
+        private int strings;
+        private int end;
+
+        /**
+         * Work out the layout of a world with the given number of items.
+         *
+         * @param itemCount The number of items
+         * @throws IOException if the world is too big for one compiled world file
+         */
+        Layout(long itemCount) throws IOException
+        {
+            hashSize = size * 2;
+            for (String s : pool) {
+                poolBytes += s.getBytes(StandardCharsets.UTF_8).length;
+            }
+            long at = WorldFile.HEADER_SIZE;
+            stringOffsets = (int) at;
+            at += (pool.size() + size + 1L) * 4;
+            directions = check(at);
+            at += exitDegree * 4L;
+            rooms = check(at);
+            at += (size + 1L) * WorldFile.ROOM_SIZE;
+            exitOffsets = check(at);
+            at += (size + 1L) * 4;
+            exits = check(at);
+            at += (long) size * exitDegree * WorldFile.EXIT_SIZE;
+            items = check(at);
+            at += itemCount * WorldFile.ITEM_SIZE;
+            nameHash = check(at);
+            at += hashSize * 4L;
+            strings = check(at);
+            at += nameStart((long) size);
+            end = check(at);
+            this.itemCount = (int) itemCount;
+        }
+
+        /**
+         * Returns where the name of a room starts, from the start of the
+         * names of the rooms: after the prefix and digits of every room
+         * before it.
+         *
+         * @param id The id of the room, or the number of rooms for the end
+         *        of the last name
+         * @return The offset of the name in the strings
+         */
+        long nameStart(long id)
+        {
+            long length = id * NAME_PREFIX.length;
+            long low = 0;           // the first number with this many digits,
+            long high = 10;         // and the first with more
+            for (int digits = 1; low < id; digits++) {
+                length += (Math.min(id, high) - low) * digits;
+                low = high;
+                high *= 10;
+            }
+            return poolBytes + length;
+        }
+
+        /**
+         * Returns where the name of a room starts, as an offset that fits in
+         * the file.
+         *
+         * @param id The id of the room
+         * @return The offset of the name in the strings
+         */
+        int nameStart(int id)
+        {
+            return (int) nameStart((long) id);
+        }
+
+        /**
+         * Write the header, the strings every world has and the directions.
+         * The rest is written by the chunks.
+         *
+         * @param buffer The mapped file
+         */
+        void writeHeader(ByteBuffer buffer)
+        {
+            buffer.putInt(0, WorldFile.MAGIC);
+            buffer.putInt(4, WorldFile.VERSION);
+            buffer.putInt(8, size);
+            buffer.putInt(12, size * exitDegree);
+            buffer.putInt(16, itemCount);
+            buffer.putInt(20, pool.size() + size);
+            buffer.putInt(24, exitDegree);
+            buffer.putInt(28, hashSize);
+            buffer.putInt(32, 0);       // the start room
+            buffer.putInt(36, 0);       // the transporters go anywhere
+
+            int offset = 0;
+            for (int i = 0; i < pool.size(); i++) {
+                byte[] bytes = pool.get(i).getBytes(StandardCharsets.UTF_8);
+                buffer.putInt(stringOffsets + i * 4, offset);
+                buffer.put(strings + offset, bytes);
+                offset += bytes.length;
+            }
+            buffer.putInt(stringOffsets + (pool.size() + size) * 4, nameStart(size));
+            for (int i = 0; i < exitDegree; i++) {
+                buffer.putInt(directions + i * 4, poolIndex.get(DIRECTIONS[i]));
+            }
+            // an extra room marks the end of the items of the last room,
+            // and an extra offset the end of the exits
+            buffer.putInt(rooms + size * WorldFile.ROOM_SIZE + 12, itemCount);
+            buffer.putInt(exitOffsets + size * 4, size * exitDegree);
+        }
+
+        /**
+         * Check that an offset fits in a compiled world file.
+         *
+         * @param at The offset
+         * @return The offset
+         * @throws IOException if the world is too big for one compiled world file
+         */
+        private int check(long at) throws IOException
+        {
+            if (at > Integer.MAX_VALUE) {
+                throw new IOException("The world is too big for one compiled world file");
+            }
+            return (int) at;
+        }
+    }
+
+    /**
+     * Make a world and write it to a compiled world file, taking the number
+     * of rooms and the file from the command line, and optionally the
+     * number of exits of each room, the items per room, the share of
+     * transporter rooms and the seed.
+     *
+     * @param args The command line arguments
+     * @throws IOException if the file cannot be written
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2) {
+            System.err.println("Usage: java WorldGenerator rooms world.wow "
+                               + "[exits [items per room [transporter ratio [seed]]]]");
+            return;
+        }
+        WorldGenerator generator = new WorldGenerator(Integer.parseInt(args[0]),
+            (args.length > 5) ? Long.parseLong(args[5]) : 42);
+        if (args.length > 2) {
+            generator.setExitDegree(Integer.parseInt(args[2]));
+        }
+        if (args.length > 3) {
+            generator.setItemDensity(Double.parseDouble(args[3]));
+        }
+        if (args.length > 4) {
+            generator.setTransporterRatio(Double.parseDouble(args[4]));
+        }
+        Path file = Paths.get(args[1]);
+        long start = System.nanoTime();
+        generator.write(file);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%s rooms written to %s in %d ms%n", args[0], file, elapsed / 1000000);
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * This class splits the rooms of a world into a number of shards of about
+ * the same size, each a region of rooms joined by exits, so that a player
+ * walking from room to room mostly stays in one shard and only now and
+ * then crosses into another. It is worked out from the ExitGraph of the
+ * world, using room ids alone.
+ *
+ * Shards are grown one at a time, going through the exits of the rooms
+ * already in the shard, breadth first, until the shard has its share of
+ * the rooms; the next shard then carries on from the rooms the search had
+ * reached but not yet placed, so it borders the one before. When there is
+ * no exit left to follow, the search goes on from the lowest room not yet
+ * reached.
+ *
+ * @author Lehem Temesgen
+ * @version 03/14/2024
+ */
+
+import java.util.Arrays;
+
+public class WorldPartition
+{
+    // the shard of a room not yet reached, and of one waiting in the queue
+    private static final int UNPLACED = -1;
+    private static final int QUEUED = -2;
+
+    // the shard of each room, by id
+    private int[] shardOf;
+    // the number of rooms in each shard
+    private int[] sizes;
+    // the number of exits leading from one shard to another
+    private int crossingExits;
+
+    /**
+     * Create a partition from the shard of each room.
+     *
+     * @param shardOf The shard of each room, by id
+     * @param shards The number of shards
+     * @param crossingExits The number of exits leading from one shard to another
+     */
+    private WorldPartition(int[] shardOf, int shards, int crossingExits)
+    {
+        this.shardOf = shardOf;
+        this.crossingExits = crossingExits;
+        sizes = new int[shards];
+        for (int shard : shardOf) {
+            sizes[shard]++;
+        }
+    }
+
+    /**
+     * Split the rooms of an exit graph into shards.
+     *
+     * @param graph The exits of every room
+     * @param shards The number of shards
+     * @return The partition
+     * @throws IllegalArgumentException if the number of shards is less than one
+     */
+    public static WorldPartition of(ExitGraph graph, int shards)
+    {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Bad number of shards: " + shards);
+        }
+        int size = graph.size();
+        int[] shardOf = new int[size];
+        Arrays.fill(shardOf, UNPLACED);
+        int[] queue = new int[size];
+        int head = 0;
+        int tail = 0;
+        int seed = 0;           // every room below this has been queued or placed
+        int shard = 0;
+        int filled = 0;         // the rooms put in the current shard so far
+        for (int placed = 0; placed < size; placed++) {
+            // the rooms left over after the last full share go in the last shard
+            if (filled == (size + shards - 1) / shards && shard < shards - 1) {
+                shard++;
+                filled = 0;
+            }
+            int room;
+            if (head < tail) {
+                room = queue[head++];
+            } else {
+                while (shardOf[seed] != UNPLACED) {
+                    seed++;
+                }
+                room = seed;
+            }
+            shardOf[room] = shard;
+            filled++;
+            for (int exit = graph.getFirstExit(room); exit < graph.getEndExit(room); exit++) {
+                int target = graph.getExitTarget(exit);
+                if (shardOf[target] == UNPLACED) {
+                    shardOf[target] = QUEUED;
+                    queue[tail++] = target;
+                }
+            }
+        }
+        return new WorldPartition(shardOf, shards, countCrossingExits(graph, shardOf));
+    }
+
+    /**
+     * Returns the number of exits leading from a room in one shard to a room
+     * in another.
+     *
+     * @param graph The exits of every room
+     * @param shardOf The shard of each room, by id
+     * @return The number of such exits
+     */
+    private static int countCrossingExits(ExitGraph graph, int[] shardOf)
+    {
+        int count = 0;
+        for (int room = 0; room < shardOf.length; room++) {
+            for (int exit = graph.getFirstExit(room); exit < graph.getEndExit(room); exit++) {
+                if (shardOf[graph.getExitTarget(exit)] != shardOf[room]) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the shard a room is in. Rooms added to the world after the
+     * partition was made are spread over the shards by id.
+     *
+     * @param room The id of the room
+     * @return The shard of the room
+     */
+    public int getShard(int room)
+    {
+        return (room < shardOf.length) ? shardOf[room] : room % sizes.length;
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return The number of shards
+     */
+    public int getShardCount()
+    {
+        return sizes.length;
+    }
+
+    /**
+     * Returns the number of rooms in a shard.
+     *
+     * @param shard The shard
+     * @return The number of rooms in it
+     */
+    public int getSize(int shard)
+    {
+        return sizes[shard];
+    }
+
+    /**
+     * Returns the number of exits leading from a room in one shard to a room
+     * in another, each of which moves a player to another shard.
+     *
+     * @return The number of exits between shards
+     */
+    public int getCrossingExits()
+    {
+        return crossingExits;
+    }
+}